@@ -1,7 +1,33 @@
 package io.akka.health;
 
 import akka.javasdk.http.HttpClientProvider;
+import akka.javasdk.timer.TimerScheduler;
+import io.akka.health.digest.application.DailyDigestScheduler;
+import io.akka.health.account.application.FitbitAccountTokens;
+import io.akka.health.sync.application.FitbitSyncScheduler;
+import io.akka.health.agent.application.AdmissionControl;
+import io.akka.health.agent.application.AnswerCache;
+import io.akka.health.agent.application.ConversationMemory;
+import io.akka.health.agent.application.MedicalRecordRAG;
+import io.akka.health.agent.application.MetricFastPath;
+import io.akka.health.agent.application.QuestionRouter;
+import io.akka.health.common.BlockingIo;
+import io.akka.health.common.RequestUsage;
+import io.akka.health.common.mock.MockChatModel;
+import io.akka.health.common.mock.MockEmbeddingModel;
+import akka.javasdk.agent.ModelProvider;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.akka.health.common.MongoDbUtils;
+import io.akka.health.common.OpenAiUtils;
+import io.akka.health.fitbit.FitbitCache;
 import io.akka.health.fitbit.FitbitClient;
+import io.akka.health.fitbit.FitbitRateLimiter;
+import io.akka.health.fitbit.FitbitTokenStore;
+import io.akka.health.ingest.domain.Index;
+import io.akka.health.usage.application.DailyUsage;
 import io.akka.health.common.KeyUtils;
 import akka.javasdk.DependencyProvider;
 import akka.javasdk.ServiceSetup;
@@ -9,27 +35,199 @@ import akka.javasdk.annotations.Setup;
 import akka.javasdk.client.ComponentClient;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
 @Setup
 public class Bootstrap implements ServiceSetup {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final MongoClient mongoClient;
   private final FitbitClient fitbitClient;
+  private final AnswerCache answerCache;
+  private final AdmissionControl admissionControl;
+  private final ConversationMemory conversationMemory;
+  private final OpenAiTokenCountEstimator tokenCountEstimator;
+  private final MedicalRecordRAG medicalRecordRAG;
+  private final Index medicalRecordIndex;
+  private final QuestionRouter questionRouter;
+  private final MetricFastPath metricFastPath;
+  private final ComponentClient componentClient;
+  private final TimerScheduler timerScheduler;
+  private final List<String> digestUserIds;
+  private final List<String> syncUserIds;
+  private final ExecutorService blockingIo;
+
+  public Bootstrap(ComponentClient componentClient, HttpClientProvider httpClientProvider, TimerScheduler timerScheduler, com.typesafe.config.Config config) {
+    this.componentClient = componentClient;
+    this.timerScheduler = timerScheduler;
+    this.digestUserIds = config.getStringList("health.digest.user-ids");
+    this.syncUserIds = config.getStringList("health.sync.user-ids");
 
-  public Bootstrap(ComponentClient componentClient, HttpClientProvider httpClientProvider, com.typesafe.config.Config config) {
+    // load tests replace OpenAI and MongoDB Atlas with local stand-ins, see health.mock in application.conf
+    var mockConfig = config.getConfig("health.mock");
+    boolean mock = mockConfig.getBoolean("enabled");
 
-    if (!KeyUtils.hasValidKeys()) {
+    if (!mock && !KeyUtils.hasValidKeys()) {
       throw new IllegalStateException(
         "No API keys found. When running locally, make sure you have a " + ".env file located under " +
           "src/main/resources/ (see src/main/resources/.env.example). When running in production, " +
           "make sure you have OPENAI_API_KEY and MONGODB_ATLAS_URI defined as environment variable.");
     }
 
-    this.mongoClient = MongoClients.create(KeyUtils.readMongoDbUri());
-    this.fitbitClient = new FitbitClient(httpClientProvider.httpClientFor("https://api.fitbit.com"));
+    this.blockingIo = BlockingIo.executor(config.getInt("health.blocking-io.threads"));
+
+    var fitbitCacheConfig = config.getConfig("health.fitbit.cache");
+    var fitbitCache = new FitbitCache(new FitbitCache.Settings(
+      fitbitCacheConfig.getInt("max-entries"),
+      fitbitCacheConfig.getDuration("recent-ttl")));
+    var rateLimitConfig = config.getConfig("health.fitbit.rate-limit");
+    var fitbitRateLimiter = new FitbitRateLimiter(new FitbitRateLimiter.Settings(
+      rateLimitConfig.getInt("hourly-quota"),
+      rateLimitConfig.getInt("background-reserve"),
+      rateLimitConfig.getDuration("interactive-max-delay"),
+      rateLimitConfig.getDuration("background-max-delay")));
+    // the tokens of the users are stored in their FitbitAccountEntity
+    var sharedTokenUsers = Set.copyOf(config.getStringList("health.fitbit.shared-token-user-ids"));
+    var fitbitTokens = new FitbitTokenStore(new FitbitAccountTokens(componentClient),
+      userId -> mock || sharedTokenUsers.contains(userId),
+      config.getDuration("health.fitbit.token-reload-after"));
+    this.fitbitClient = new FitbitClient(httpClientProvider.httpClientFor(config.getString("health.fitbit.base-url")), fitbitCache, fitbitRateLimiter, fitbitTokens);
+
+    EmbeddingModel embeddingModel;
+    ChatModel summaryModel;
+    ModelProvider fullModel;
+    ModelProvider simpleModel;
+    var modelName = config.getString("akka.javasdk.agent.openai.model-name");
+    int embeddingDimensions = config.getInt("health.embedding.dimensions");
+    if (mock) {
+      logger.warn("Running with mock models and an in-memory medical record store");
+      var mockChatModel = new MockChatModel(new MockChatModel.Settings(
+        mockConfig.getDuration("model.first-token-latency"),
+        mockConfig.getDuration("model.token-latency"),
+        mockConfig.getInt("model.answer-tokens")));
+      this.mongoClient = null;
+      embeddingModel = new MockEmbeddingModel(embeddingDimensions, mockConfig.getDuration("embedding-latency"));
+      summaryModel = mockChatModel;
+      fullModel = ModelProvider.custom(new ModelProvider.Custom() {
+        @Override
+        public Object createChatModel() {
+          return mockChatModel;
+        }
+
+        @Override
+        public Object createStreamingChatModel() {
+          return mockChatModel.streaming();
+        }
+      });
+      simpleModel = fullModel;
+      // medical records ingested in this mode are only kept in memory
+      var medicalRecordStore = new InMemoryEmbeddingStore<TextSegment>();
+      this.medicalRecordRAG = new MedicalRecordRAG(embeddingModel, medicalRecordStore, blockingIo);
+      this.medicalRecordIndex = new Index(embeddingModel, medicalRecordStore, blockingIo);
+    } else {
+      this.mongoClient = MongoClients.create(KeyUtils.readMongoDbUri());
+      embeddingModel = OpenAiUtils.embeddingModel();
+      summaryModel = OpenAiUtils.chatModel(modelName);
+      fullModel = ModelProvider.fromConfig();
+      simpleModel = ModelProvider.fromConfig("health.agent.routing.simple-model");
+      this.medicalRecordRAG = new MedicalRecordRAG(mongoClient, embeddingDimensions, blockingIo);
+      this.medicalRecordIndex = new Index(MongoDbUtils.medicalRecordConfig(mongoClient, embeddingDimensions), blockingIo);
+    }
+
+    var cacheConfig = config.getConfig("health.agent.answer-cache");
+    var dailyUsage = new DailyUsage(componentClient);
+    this.answerCache = new AnswerCache(
+      new AnswerCache.Settings(
+        cacheConfig.getBoolean("enabled"),
+        cacheConfig.getDuration("ttl"),
+        cacheConfig.getDouble("similarity-threshold"),
+        cacheConfig.getInt("max-entries-per-user"),
+        cacheConfig.getInt("min-question-words")),
+      (userId, question) -> {
+        var embedded = embeddingModel.embed(question);
+        if (embedded.tokenUsage() != null) {
+          long tokens = embedded.tokenUsage().inputTokenCount();
+          RequestUsage.record(null, "embedding.answer-cache", tokens);
+          dailyUsage.add(userId, Map.of("embedding.answer-cache", tokens), false);
+        }
+        return embedded.content();
+      },
+      blockingIo);
+
+    var routingConfig = config.getConfig("health.agent.routing");
+    this.questionRouter = new QuestionRouter(
+      new QuestionRouter.Settings(
+        routingConfig.getBoolean("enabled"),
+        routingConfig.getInt("max-simple-words"),
+        routingConfig.getStringList("simple-keywords"),
+        routingConfig.getStringList("full-keywords")),
+      fullModel,
+      simpleModel);
+
+    this.metricFastPath = new MetricFastPath(config.getBoolean("health.agent.fast-path.enabled"), fitbitClient,
+      blockingIo, Clock.systemDefaultZone());
+
+    var admissionConfig = config.getConfig("health.agent.admission");
+    this.admissionControl = new AdmissionControl(new AdmissionControl.Settings(
+      admissionConfig.getInt("max-concurrent"),
+      admissionConfig.getInt("max-concurrent-per-user"),
+      admissionConfig.getInt("max-queued"),
+      admissionConfig.getInt("max-queued-per-user"),
+      admissionConfig.getDuration("queue-timeout")),
+      blockingIo);
+
+    var memoryConfig = config.getConfig("health.agent.memory");
+    this.tokenCountEstimator = OpenAiUtils.tokenCountEstimator(modelName);
+    this.conversationMemory = new ConversationMemory(
+      componentClient,
+      new ConversationMemory.Settings(
+        memoryConfig.getInt("recent-token-budget"),
+        memoryConfig.getInt("summary-token-budget"),
+        memoryConfig.getInt("summarize-batch-tokens")),
+      tokenCountEstimator::estimateTokenCountInText,
+      (previousSummary, transcript, maxTokens) -> summaryModel.chat("""
+        Update the summary of a conversation between a user and their personal health assistant.
+        Keep facts about the user's health, their questions and the answers they got. Use at most %d tokens.
+        Reply with the updated summary only.
+
+        Summary so far:
+        %s
+
+        New messages:
+        %s
+        """.formatted(maxTokens, previousSummary.isEmpty() ? "(none)" : previousSummary, transcript)),
+      blockingIo);
+  }
+
+  @Override
+  public void onStartup() {
+    // the first run backfills the digest and then reschedules itself once per day
+    for (String userId : digestUserIds) {
+      timerScheduler.createSingleTimer(
+        DailyDigestScheduler.timerName(userId),
+        Duration.ZERO,
+        componentClient.forTimedAction()
+          .method(DailyDigestScheduler::refresh)
+          .deferred(userId));
+    }
+    // the sync continues from its persisted cursor and then reschedules itself every interval
+    for (String userId : syncUserIds) {
+      timerScheduler.createSingleTimer(
+        FitbitSyncScheduler.timerName(userId),
+        Duration.ZERO,
+        componentClient.forTimedAction()
+          .method(FitbitSyncScheduler::sync)
+          .deferred(userId));
+    }
   }
 
   @Override
@@ -45,6 +243,38 @@ public class Bootstrap implements ServiceSetup {
         if (cls.equals(FitbitClient.class)) {
             return (T) fitbitClient;
         }
+
+        if (cls.equals(AnswerCache.class)) {
+          return (T) answerCache;
+        }
+
+        if (cls.equals(AdmissionControl.class)) {
+          return (T) admissionControl;
+        }
+
+        if (cls.equals(ConversationMemory.class)) {
+          return (T) conversationMemory;
+        }
+
+        if (cls.equals(OpenAiTokenCountEstimator.class)) {
+          return (T) tokenCountEstimator;
+        }
+
+        if (cls.equals(MedicalRecordRAG.class)) {
+          return (T) medicalRecordRAG;
+        }
+
+        if (cls.equals(Index.class)) {
+          return (T) medicalRecordIndex;
+        }
+
+        if (cls.equals(MetricFastPath.class)) {
+          return (T) metricFastPath;
+        }
+
+        if (cls.equals(QuestionRouter.class)) {
+          return (T) questionRouter;
+        }
         return null;
       }
     };
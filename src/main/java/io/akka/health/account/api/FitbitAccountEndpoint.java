@@ -0,0 +1,93 @@
+package io.akka.health.account.api;
+
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.annotations.http.Post;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.HttpException;
+import com.typesafe.config.Config;
+import io.akka.health.account.application.FitbitAuthorizationEntity;
+import io.akka.health.fitbit.FitbitClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Connects the Fitbit account of a user with the OAuth 2.0 authorization code flow (with PKCE): the user opens the
+ * authorization url, grants access and the authorization code Fitbit redirects to is posted back here, with the
+ * state Fitbit passes along. From then on all Fitbit requests for the user are sent with the user's own tokens.
+ * <p>
+ * The state and the PKCE code verifier are generated here and kept in a {@link FitbitAuthorizationEntity}, so the
+ * code can be posted to any node. A code is only accepted with the state of an authorization that the same user
+ * started within {@link #AUTHORIZATION_TIMEOUT}, and only once.
+ */
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint("/fitbit/accounts")
+public class FitbitAccountEndpoint {
+
+  public record Authorization(String url) {}
+
+  public record ConnectRequest(String code, String state) {}
+
+  public record Connected(String userId, String fitbitUserId, String scope) {}
+
+  // Fitbit authorization codes expire after 10 minutes as well
+  static final Duration AUTHORIZATION_TIMEOUT = Duration.ofMinutes(10);
+
+  private static final Logger logger = LoggerFactory.getLogger(FitbitAccountEndpoint.class);
+
+  private final ComponentClient componentClient;
+  private final FitbitClient fitbitClient;
+  private final boolean subscribe;
+
+  public FitbitAccountEndpoint(ComponentClient componentClient, FitbitClient fitbitClient, Config config) {
+    this.componentClient = componentClient;
+    this.fitbitClient = fitbitClient;
+    this.subscribe = config.getBoolean("health.sync.subscriptions.enabled");
+  }
+
+  @Get("/{userId}/authorize")
+  public Authorization authorize(String userId) {
+    var authorization = fitbitClient.forUser(userId).authorize();
+    componentClient.forKeyValueEntity(authorization.state())
+            .method(FitbitAuthorizationEntity::start)
+            .invoke(new FitbitAuthorizationEntity.Start(userId, authorization.codeVerifier(),
+                    Instant.now().plus(AUTHORIZATION_TIMEOUT)));
+    return new Authorization(authorization.url());
+  }
+
+  /**
+   * Responds once the tokens of the user are stored, so that a connected account is also connected after a restart
+   * and on the other nodes.
+   */
+  @Post("/{userId}/token")
+  public CompletionStage<Connected> connect(String userId, ConnectRequest request) {
+    if (request.code() == null || request.state() == null) {
+      throw HttpException.badRequest("The code and the state of the authorization are required");
+    }
+    var userClient = fitbitClient.forUser(userId);
+    return componentClient.forKeyValueEntity(request.state())
+            .method(FitbitAuthorizationEntity::complete)
+            .invokeAsync(userId)
+            .thenCompose(authorization -> {
+              if (!authorization.isPending()) {
+                throw HttpException.badRequest("Unknown or expired authorization, start again at /fitbit/accounts/" + userId + "/authorize");
+              }
+              return userClient.exchangeCodeForAccessToken(request.code(), authorization.codeVerifier());
+            })
+            .thenApply(response -> {
+              if (subscribe) {
+                // the account works without notifications, the regular sync still picks up the changes
+                userClient.subscribe().exceptionally(error -> {
+                  logger.warn("Could not subscribe to the Fitbit notifications of user {}", userId, error);
+                  return null;
+                });
+              }
+              return new Connected(userId, response.getUserId(), response.getScope());
+            });
+  }
+}
@@ -0,0 +1,61 @@
+package io.akka.health.account.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import akka.javasdk.keyvalueentity.KeyValueEntityContext;
+import io.akka.health.account.domain.FitbitAccount;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Holds the Fitbit tokens of one user, and which node refreshes them. The entity id is the user id.
+ */
+@ComponentId("fitbit-account")
+public class FitbitAccountEntity extends KeyValueEntity<FitbitAccount> {
+
+  public record UpdateTokens(String accessToken, String refreshToken, long expiresAt, long refreshAt) {}
+
+  public record ClaimRefresh(String refreshToken, Duration lease) {}
+
+  private final String entityId;
+
+  public FitbitAccountEntity(KeyValueEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public FitbitAccount emptyState() {
+    return FitbitAccount.empty(entityId);
+  }
+
+  public Effect<Done> updateTokens(UpdateTokens command) {
+    // a refresh that was started before the last one may finish after it, the token that expires last wins
+    if (currentState().isConnected() && command.expiresAt() < currentState().expiresAt()) {
+      return effects().reply(Done.getInstance());
+    }
+    return effects()
+            .updateState(currentState().withTokens(command.accessToken(), command.refreshToken(), command.expiresAt(),
+                    command.refreshAt(), Instant.now()))
+            .thenReply(Done.getInstance());
+  }
+
+  /**
+   * Replies whether the caller may refresh the tokens with the refresh token, see {@link FitbitAccount#canClaimRefresh}.
+   * The claim holds for the lease or until the tokens are updated.
+   */
+  public Effect<Boolean> claimRefresh(ClaimRefresh command) {
+    var now = Instant.now();
+    if (!currentState().canClaimRefresh(command.refreshToken(), now)) {
+      return effects().reply(false);
+    }
+    return effects()
+            .updateState(currentState().withRefreshClaimedUntil(now.plus(command.lease())))
+            .thenReply(true);
+  }
+
+  public ReadOnlyEffect<FitbitAccount> getAccount() {
+    return effects().reply(currentState());
+  }
+}
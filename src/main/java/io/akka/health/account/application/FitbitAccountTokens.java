@@ -0,0 +1,47 @@
+package io.akka.health.account.application;
+
+import akka.javasdk.client.ComponentClient;
+import io.akka.health.fitbit.FitbitTokenStore;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Persists the tokens of the {@link FitbitTokenStore} in the {@link FitbitAccountEntity} of each user.
+ */
+public class FitbitAccountTokens implements FitbitTokenStore.Persistence {
+
+  private final ComponentClient componentClient;
+
+  public FitbitAccountTokens(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @Override
+  public CompletionStage<Optional<FitbitTokenStore.Token>> load(String userId) {
+    return componentClient.forKeyValueEntity(userId)
+            .method(FitbitAccountEntity::getAccount)
+            .invokeAsync()
+            .thenApply(account -> account.isConnected()
+                    ? Optional.of(new FitbitTokenStore.Token(userId, account.accessToken(), account.refreshToken(),
+                            account.expiresAt(), account.refreshAt()))
+                    : Optional.empty());
+  }
+
+  @Override
+  public CompletionStage<Void> save(FitbitTokenStore.Token token) {
+    return componentClient.forKeyValueEntity(token.userId())
+            .method(FitbitAccountEntity::updateTokens)
+            .invokeAsync(new FitbitAccountEntity.UpdateTokens(token.accessToken(), token.refreshToken(),
+                    token.expiresAt(), token.refreshAt()))
+            .thenApply(__ -> null);
+  }
+
+  @Override
+  public CompletionStage<Boolean> claimRefresh(FitbitTokenStore.Token token, Duration lease) {
+    return componentClient.forKeyValueEntity(token.userId())
+            .method(FitbitAccountEntity::claimRefresh)
+            .invokeAsync(new FitbitAccountEntity.ClaimRefresh(token.refreshToken(), lease));
+  }
+}
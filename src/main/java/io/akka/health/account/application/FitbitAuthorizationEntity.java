@@ -0,0 +1,47 @@
+package io.akka.health.account.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import akka.javasdk.keyvalueentity.KeyValueEntityContext;
+import io.akka.health.account.domain.FitbitAuthorization;
+
+import java.time.Instant;
+
+/**
+ * Holds a started Fitbit authorization until its code comes back, on whichever node that is. The entity id is the
+ * state of the authorization.
+ */
+@ComponentId("fitbit-authorization")
+public class FitbitAuthorizationEntity extends KeyValueEntity<FitbitAuthorization> {
+
+  public record Start(String userId, String codeVerifier, Instant expiresAt) {}
+
+  private final String entityId;
+
+  public FitbitAuthorizationEntity(KeyValueEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public FitbitAuthorization emptyState() {
+    return FitbitAuthorization.empty(entityId);
+  }
+
+  public Effect<Done> start(Start command) {
+    return effects()
+            .updateState(new FitbitAuthorization(entityId, command.userId(), command.codeVerifier(), command.expiresAt()))
+            .thenReply(Done.getInstance());
+  }
+
+  /**
+   * Completes the authorization for the user: replies with it and deletes it, so that its code verifier is used
+   * once. Replies with an empty authorization if the user can't complete it.
+   */
+  public Effect<FitbitAuthorization> complete(String userId) {
+    if (!currentState().canBeCompletedBy(userId, Instant.now())) {
+      return effects().reply(FitbitAuthorization.empty(entityId));
+    }
+    return effects().deleteEntity().thenReply(currentState());
+  }
+}
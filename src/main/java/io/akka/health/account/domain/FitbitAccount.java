@@ -0,0 +1,44 @@
+package io.akka.health.account.domain;
+
+import java.time.Instant;
+
+/**
+ * The Fitbit account a user connected to the service.
+ *
+ * @param userId       The unique identifier for the user.
+ * @param accessToken  Bearer token of the Fitbit Web API, null before the account is connected.
+ * @param refreshToken Token to get a new access token with.
+ * @param expiresAt    When the access token expires, in epoch milliseconds.
+ * @param refreshAt    When the access token should be refreshed, in epoch milliseconds.
+ * @param updatedAt    When the tokens were last updated, null before the account is connected.
+ * @param refreshClaimedUntil Until when a node that claimed the refresh of the tokens may refresh them, null if
+ *                     no node claimed it.
+ */
+public record FitbitAccount(String userId, String accessToken, String refreshToken, long expiresAt, long refreshAt,
+                            Instant updatedAt, Instant refreshClaimedUntil) {
+
+  public static FitbitAccount empty(String userId) {
+    return new FitbitAccount(userId, null, null, 0, 0, null, null);
+  }
+
+  public boolean isConnected() {
+    return accessToken != null;
+  }
+
+  public FitbitAccount withTokens(String accessToken, String refreshToken, long expiresAt, long refreshAt, Instant updatedAt) {
+    return new FitbitAccount(userId, accessToken, refreshToken, expiresAt, refreshAt, updatedAt, null);
+  }
+
+  /**
+   * Whether a node may refresh the tokens now: the refresh token is still the stored one, and no other node holds
+   * a claim. Refresh tokens can be used only once.
+   */
+  public boolean canClaimRefresh(String refreshToken, Instant now) {
+    return isConnected() && this.refreshToken != null && this.refreshToken.equals(refreshToken)
+        && (refreshClaimedUntil == null || !now.isBefore(refreshClaimedUntil));
+  }
+
+  public FitbitAccount withRefreshClaimedUntil(Instant refreshClaimedUntil) {
+    return new FitbitAccount(userId, accessToken, refreshToken, expiresAt, refreshAt, updatedAt, refreshClaimedUntil);
+  }
+}
@@ -0,0 +1,29 @@
+package io.akka.health.account.domain;
+
+import java.time.Instant;
+
+/**
+ * An authorization of a Fitbit account that was started and waits for the authorization code.
+ *
+ * @param state        The random state Fitbit passes back with the code, identifies the authorization.
+ * @param userId       The user who connects the account, null if there is no such authorization.
+ * @param codeVerifier The PKCE code verifier the code is exchanged with.
+ * @param expiresAt    When the authorization can no longer be completed.
+ */
+public record FitbitAuthorization(String state, String userId, String codeVerifier, Instant expiresAt) {
+
+  public static FitbitAuthorization empty(String state) {
+    return new FitbitAuthorization(state, null, null, null);
+  }
+
+  public boolean isPending() {
+    return userId != null;
+  }
+
+  /**
+   * Whether the user can complete the authorization now. Only the user who started it can.
+   */
+  public boolean canBeCompletedBy(String userId, Instant now) {
+    return isPending() && this.userId.equals(userId) && now.isBefore(expiresAt);
+  }
+}
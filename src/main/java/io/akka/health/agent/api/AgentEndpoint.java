@@ -1,41 +1,251 @@
 package io.akka.health.agent.api;
 
+import akka.NotUsed;
 import akka.http.javadsl.model.*;
 import akka.javasdk.client.ComponentClient;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import akka.http.javadsl.model.headers.RawHeader;
+import io.akka.health.agent.application.AdmissionControl;
+import io.akka.health.agent.application.AnswerCache;
+import akka.javasdk.agent.SessionMemoryEntity;
+import akka.javasdk.agent.SessionMessage;
 import io.akka.health.agent.application.HealthAgent;
+import io.akka.health.agent.application.MetricFastPath;
+import io.akka.health.agent.application.QuestionRouter;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.HttpEndpoint;
 import akka.javasdk.annotations.http.Post;
 import akka.javasdk.http.HttpResponses;
 import io.akka.health.agent.model.HealthAgentRequest;
+import io.akka.health.common.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.ALL))
 @HttpEndpoint("/agent")
 public class AgentEndpoint {
 
     private static final Logger log = LoggerFactory.getLogger(AgentEndpoint.class);
+    // messages written by the endpoint are attributed to the agent that would otherwise have answered
+    private static final String HEALTH_AGENT = "health-agent";
     private final ComponentClient componentClient;
+    private final AnswerCache answerCache;
+    private final AdmissionControl admissionControl;
+    private final QuestionRouter questionRouter;
+    private final MetricFastPath metricFastPath;
 
-    public record AskRequest(String userId, String sessionId, String question) {}
+    /**
+     * @param timeZone The IANA time zone of the user, e.g. "Europe/Berlin", for questions about "today" or
+     *                 "yesterday". Optional, the server's zone is used when it is missing or unknown.
+     */
+    public record AskRequest(String userId, String sessionId, String question, String timeZone) {}
 
-    public AgentEndpoint(ComponentClient componentClient) {
+    public AgentEndpoint(ComponentClient componentClient, AnswerCache answerCache, AdmissionControl admissionControl,
+                         QuestionRouter questionRouter, MetricFastPath metricFastPath) {
         this.componentClient = componentClient;
+        this.answerCache = answerCache;
+        this.admissionControl = admissionControl;
+        this.questionRouter = questionRouter;
+        this.metricFastPath = metricFastPath;
     }
 
     @Post("/ask")
-    public HttpResponse ask(AskRequest request) {
+    public CompletionStage<HttpResponse> ask(AskRequest request) {
         log.info("Request: {}", request);
         var sessionId = request.userId + "-" + request.sessionId;
-        var response = componentClient
+        return metricFastPath.tryAnswer(request.userId, request.question, zone(request)).thenCompose(fastAnswer -> {
+            if (fastAnswer.isPresent()) {
+                log.info("Fast path response: {}", fastAnswer.get());
+                remember(sessionId, request.question, fastAnswer.get());
+                return CompletableFuture.completedFuture(HttpResponses.ok(fastAnswer.get()));
+            }
+            return askAgent(request, sessionId);
+        }).exceptionally(AgentEndpoint::rejected);
+    }
+
+    private CompletionStage<HttpResponse> askAgent(AskRequest request, String sessionId) {
+        return answerCache.lookup(request.userId, request.question).thenCompose(lookup -> {
+            if (lookup.answer().isPresent()) {
+                log.info("Cached response: {}", lookup.answer().get());
+                remember(sessionId, request.question, lookup.answer().get());
+                return CompletableFuture.completedFuture(HttpResponses.ok(lookup.answer().get()));
+            }
+
+            var agentRequest = route(request);
+            return admissionControl.acquire(request.userId).thenCompose(permit -> {
+                long start = System.nanoTime();
+                return componentClient
+                        .forAgent()
+                        .inSession(sessionId)
+                        .method(HealthAgent::ask)
+                        .invokeAsync(agentRequest)
+                        .whenComplete((response, error) -> {
+                            permit.release();
+                            recordLatency(agentRequest, start);
+                        })
+                        .thenApply(response -> {
+                            log.info("Response: {}", response);
+                            lookup.store(response);
+                            return HttpResponses.ok(response);
+                        });
+            });
+        });
+    }
+
+    /**
+     * Same as {@link #ask(AskRequest)}, but forwards the tokens as server-sent events while the model is
+     * generating them. Each event contains one token encoded as a JSON string.
+     */
+    @Post("/ask-stream")
+    public CompletionStage<HttpResponse> askStream(AskRequest request) {
+        log.info("Streaming request: {}", request);
+        var sessionId = request.userId + "-" + request.sessionId;
+        return metricFastPath.tryAnswer(request.userId, request.question, zone(request)).thenCompose(fastAnswer -> {
+            if (fastAnswer.isPresent()) {
+                remember(sessionId, request.question, fastAnswer.get());
+                return CompletableFuture.completedFuture(HttpResponses.serverSentEvents(Source.single(fastAnswer.get())));
+            }
+            return answerCache.lookup(request.userId, request.question).thenCompose(lookup -> {
+                if (lookup.answer().isPresent()) {
+                    remember(sessionId, request.question, lookup.answer().get());
+                    return CompletableFuture.completedFuture(HttpResponses.serverSentEvents(Source.single(lookup.answer().get())));
+                }
+                var agentRequest = route(request);
+                return admissionControl.acquire(request.userId)
+                        .thenApply(permit -> streamAnswer(agentRequest, sessionId, lookup, permit));
+            });
+        }).exceptionally(AgentEndpoint::rejected);
+    }
+
+    private HttpResponse streamAnswer(HealthAgentRequest request, String sessionId, AnswerCache.Lookup lookup, AdmissionControl.Permit permit) {
+        // the request starts when the client consumes the response, which may never happen; the permit is then
+        // released after the queue timeout
+        permit.releaseUnlessClaimed();
+        var tokens = Source.lazySource(() -> {
+            if (!permit.claim()) {
+                return Source.<String>failed(new IllegalStateException("The response wasn't consumed in time"));
+            }
+            try {
+                return agentTokens(request, sessionId, lookup, permit);
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+        }).mapMaterializedValue(__ -> NotUsed.getInstance());
+
+        return HttpResponses.serverSentEvents(tokens);
+    }
+
+    private Source<String, NotUsed> agentTokens(HealthAgentRequest request, String sessionId, AnswerCache.Lookup lookup, AdmissionControl.Permit permit) {
+        var start = System.nanoTime();
+        var firstToken = new AtomicBoolean(true);
+        var complete = new AtomicBoolean();
+        return componentClient
                 .forAgent()
                 .inSession(sessionId)
-                .method(HealthAgent::ask)
-                .invoke(new HealthAgentRequest(request.question, request.userId));
+                .tokenStream(HealthAgent::ask)
+                .source(request)
+                .map(token -> {
+                    if (firstToken.compareAndSet(true, false)) {
+                        Metrics.histogram("latency.first-token").record(System.nanoTime() - start);
+                    }
+                    return token;
+                })
+                // only reached when the agent finished the answer; a client that goes away cancels the stream before,
+                // and the fold below then completes with the partial answer
+                .concatLazy(Source.lazySource(() -> {
+                    complete.set(true);
+                    return Source.<String>empty();
+                }))
+                .alsoToMat(Sink.fold("", String::concat), Keep.right())
+                .mapMaterializedValue(answer -> {
+                    answer.whenComplete((result, error) -> {
+                        permit.release();
+                        recordLatency(request, start);
+                    });
+                    answer.thenAccept(result -> {
+                        if (complete.get()) lookup.store(result);
+                    });
+                    return NotUsed.getInstance();
+                });
+    }
+
+    /**
+     * Adds a question answered without the agent (by the fast path or from the answer cache) to the session,
+     * so that follow-up questions have the context.
+     */
+    private void remember(String sessionId, String question, String answer) {
+        var now = Instant.now();
+        componentClient.forEventSourcedEntity(sessionId)
+                .method(SessionMemoryEntity::addInteraction)
+                .invokeAsync(new SessionMemoryEntity.AddInteractionCmd(
+                        new SessionMessage.UserMessage(now, question, HEALTH_AGENT),
+                        List.of(new SessionMessage.AiMessage(now, answer, HEALTH_AGENT))))
+                .exceptionally(error -> {
+                    log.warn("Could not add the answer to session {}", sessionId, error);
+                    return null;
+                });
+    }
+
+    private static Optional<ZoneId> zone(AskRequest request) {
+        if (request.timeZone == null) return Optional.empty();
+        try {
+            return Optional.of(ZoneId.of(request.timeZone));
+        } catch (DateTimeException e) {
+            log.debug("Unknown time zone {} of user {}", request.timeZone, request.userId);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Picks the model configuration for the question, see {@link QuestionRouter}.
+     */
+    private HealthAgentRequest route(AskRequest request) {
+        var decision = questionRouter.route(request.question);
+        log.info("Routing question of user {} to the {} model: {}", request.userId, decision.route(), decision.reason());
+        return new HealthAgentRequest(request.question, request.userId, decision.route(),
+                zone(request).map(ZoneId::getId).orElse(null));
+    }
+
+    /**
+     * 429 when the user has too many requests in flight, 503 when the agent as a whole is over capacity.
+     * Other errors are passed on.
+     */
+    private static HttpResponse rejected(Throwable error) {
+        var cause = error instanceof CompletionException ? error.getCause() : error;
+        if (!(cause instanceof AdmissionControl.Rejected rejected)) throw new CompletionException(cause);
+
+        log.info("Rejected request: {}", rejected.getMessage());
+        // whole seconds, rounded up
+        long retryAfterSeconds = (rejected.retryAfter().toMillis() + 999) / 1000;
+        var status = rejected.reason() == AdmissionControl.Rejected.Reason.USER_LIMIT
+                ? StatusCodes.TOO_MANY_REQUESTS
+                : StatusCodes.SERVICE_UNAVAILABLE;
+        return HttpResponse.create()
+                .withStatus(status)
+                .addHeader(RawHeader.create("Retry-After", String.valueOf(retryAfterSeconds)))
+                .withEntity(rejected.getMessage());
+    }
 
-        log.info("Response: {}", response);
-        return HttpResponses.ok(response);
+    /**
+     * Records the total latency as seen by the client per route. The breakdown and the token usage are recorded by
+     * the agent, see {@link HealthAgent}.
+     */
+    private static void recordLatency(HealthAgentRequest request, long startNanos) {
+        var route = request.route().name().toLowerCase();
+        Metrics.histogram("latency.route." + route).record(System.nanoTime() - startNanos);
     }
 }
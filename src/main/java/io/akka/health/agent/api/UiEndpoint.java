@@ -4,15 +4,23 @@ import akka.http.javadsl.model.HttpResponse;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.Get;
 import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.AbstractHttpEndpoint;
 import akka.javasdk.http.HttpResponses;
 import io.akka.health.agent.application.ConversationHistoryView;
 
+import java.util.concurrent.CompletionStage;
+
 /**
  * This Http endpoint return the static UI page located under src/main/resources/static-resources/
+ * and the conversation history shown by it. Both history lists are paginated: pass the returned
+ * nextPageToken as pageToken query parameter to get the next page.
  */
 @akka.javasdk.annotations.http.HttpEndpoint
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.ALL))
-public class UiEndpoint {
+public class UiEndpoint extends AbstractHttpEndpoint {
+
+  private static final int DEFAULT_PAGE_SIZE = 20;
+  private static final int MAX_PAGE_SIZE = 100;
 
   private final ComponentClient componentClient;
 
@@ -26,9 +34,26 @@ public class UiEndpoint {
   }
 
   @Get("/users/{userId}/sessions/")
-  public ConversationHistoryView.ConversationHistory getSession(String userId) {
+  public CompletionStage<ConversationHistoryView.SessionPage> getSessions(String userId) {
     return componentClient.forView()
             .method(ConversationHistoryView::getSessionsByUser)
-            .invoke(userId);
+            .invokeAsync(new ConversationHistoryView.SessionsRequest(userId, pageToken(), pageSize()));
+  }
+
+  @Get("/users/{userId}/sessions/{sessionId}/messages")
+  public CompletionStage<ConversationHistoryView.MessagePage> getMessages(String userId, String sessionId) {
+    return componentClient.forView()
+            .method(ConversationHistoryView::getMessagesBySession)
+            .invokeAsync(new ConversationHistoryView.MessagesRequest(userId, sessionId, pageToken(), pageSize()));
+  }
+
+  private String pageToken() {
+    return requestContext().queryParams().getString("pageToken").orElse("");
+  }
+
+  private int pageSize() {
+    return requestContext().queryParams().getInteger("pageSize")
+            .map(size -> Math.max(1, Math.min(size, MAX_PAGE_SIZE)))
+            .orElse(DEFAULT_PAGE_SIZE);
   }
 }
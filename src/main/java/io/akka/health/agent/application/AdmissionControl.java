@@ -0,0 +1,242 @@
+package io.akka.health.agent.application;
+
+import io.akka.health.common.Metrics;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits how many agent requests run at the same time, in total and per user.
+ * <p>
+ * A request that can't start right away waits in the queue of its user. Free slots are handed to the users
+ * round robin, so a user with many queued requests doesn't delay the others. A request is rejected when its
+ * user already has {@code maxQueuedPerUser} requests waiting ({@link Rejected.Reason#USER_LIMIT}) or when the
+ * whole queue is full ({@link Rejected.Reason#OVERLOADED}). A request that waited longer than
+ * {@code queueTimeout} is dropped ({@link Rejected.Reason#DEADLINE}), its caller would rather get an error
+ * than a late answer. The limits apply per node.
+ * <p>
+ * Rejections carry a {@link Rejected#retryAfter() retry delay} estimated from the queue ahead of the caller and
+ * the average time a request holds its permit.
+ */
+public class AdmissionControl {
+
+  public record Settings(
+          int maxConcurrent,
+          int maxConcurrentPerUser,
+          int maxQueued,
+          int maxQueuedPerUser,
+          Duration queueTimeout) {
+  }
+
+  public static class Rejected extends RuntimeException {
+    public enum Reason {USER_LIMIT, OVERLOADED, DEADLINE}
+
+    private final Reason reason;
+    private final Duration retryAfter;
+
+    Rejected(Reason reason, String message, Duration retryAfter) {
+      super(message, null, false, false);
+      this.reason = reason;
+      this.retryAfter = retryAfter;
+    }
+
+    public Reason reason() {
+      return reason;
+    }
+
+    /**
+     * When a retry is likely to be admitted, at least one second.
+     */
+    public Duration retryAfter() {
+      return retryAfter;
+    }
+  }
+
+  /**
+   * A running request. Must be released when the request has finished, releasing more than once has no effect.
+   */
+  public class Permit {
+    private final String userId;
+    private final long startedAt = System.nanoTime();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(String userId) {
+      this.userId = userId;
+    }
+
+    public void release() {
+      if (released.compareAndSet(false, true)) AdmissionControl.this.release(userId, System.nanoTime() - startedAt);
+    }
+
+    /**
+     * For a request that only starts when the client asks for it, like a streamed response that may never be
+     * consumed: releases the permit after the queue timeout unless it was {@link #claim() claimed} before.
+     */
+    public Permit releaseUnlessClaimed() {
+      CompletableFuture.delayedExecutor(settings.queueTimeout().toMillis(), TimeUnit.MILLISECONDS, executor).execute(() -> {
+        if (claimed.compareAndSet(false, true)) {
+          Metrics.counter(UNCLAIMED).increment();
+          release();
+        }
+      });
+      return this;
+    }
+
+    /**
+     * Marks the permit as used by a started request. False when it was already released as unclaimed, the
+     * request must not start then.
+     */
+    public boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+  }
+
+  private record Waiting(String userId, CompletableFuture<Permit> permit, long enqueuedAt) {}
+
+  static final String REJECTED_USER_LIMIT = "agent.admission.rejected.user-limit";
+  static final String REJECTED_OVERLOADED = "agent.admission.rejected.overloaded";
+  static final String SHED_DEADLINE = "agent.admission.shed.deadline";
+  static final String UNCLAIMED = "agent.admission.unclaimed";
+  private static final Duration MIN_RETRY_AFTER = Duration.ofSeconds(1);
+
+  private final Settings settings;
+  private final Executor executor;
+  private final Map<String, Integer> runningByUser = new HashMap<>();
+  private final Map<String, Deque<Waiting>> waitingByUser = new HashMap<>();
+  // users with waiting requests, in the order they get the next free slot
+  private final LinkedHashSet<String> turns = new LinkedHashSet<>();
+  private int running;
+  private int queued;
+  // moving average of how long a request holds its permit
+  private double meanHoldNanos = MIN_RETRY_AFTER.toNanos();
+
+  /**
+   * @param executor completes the permits of waiting requests, so that the callers don't continue within the lock,
+   *                 and runs the queue timeouts
+   */
+  public AdmissionControl(Settings settings, Executor executor) {
+    this.settings = settings;
+    this.executor = executor;
+    Metrics.gauge("agent.admission.running", () -> { synchronized (this) { return running; } });
+    Metrics.gauge("agent.admission.queued", () -> { synchronized (this) { return queued; } });
+  }
+
+  /**
+   * Completes with a permit as soon as the request may run, or fails with {@link Rejected}.
+   */
+  public CompletionStage<Permit> acquire(String userId) {
+    Waiting waiting;
+    synchronized (this) {
+      if (queued == 0 && running < settings.maxConcurrent() && runningOf(userId) < settings.maxConcurrentPerUser()) {
+        return CompletableFuture.completedFuture(start(userId));
+      }
+      var userQueue = waitingByUser.get(userId);
+      if (userQueue != null && userQueue.size() >= settings.maxQueuedPerUser()) {
+        Metrics.counter(REJECTED_USER_LIMIT).increment();
+        return CompletableFuture.failedFuture(new Rejected(Rejected.Reason.USER_LIMIT,
+                "Too many concurrent requests of user " + userId,
+                retryAfter(userQueue.size(), settings.maxConcurrentPerUser())));
+      }
+      if (queued >= settings.maxQueued()) {
+        Metrics.counter(REJECTED_OVERLOADED).increment();
+        return CompletableFuture.failedFuture(new Rejected(Rejected.Reason.OVERLOADED, "The agent is overloaded",
+                retryAfter(queued, settings.maxConcurrent())));
+      }
+      waiting = new Waiting(userId, new CompletableFuture<>(), System.nanoTime());
+      waitingByUser.computeIfAbsent(userId, __ -> new ArrayDeque<>()).addLast(waiting);
+      turns.add(userId);
+      queued++;
+      // a slot may be free for this user while others are waiting for their per-user limit
+      dispatch();
+    }
+
+    CompletableFuture.delayedExecutor(settings.queueTimeout().toMillis(), TimeUnit.MILLISECONDS, executor)
+            .execute(() -> expire(waiting));
+    return waiting.permit();
+  }
+
+  private synchronized void release(String userId, long heldNanos) {
+    meanHoldNanos += 0.1 * (heldNanos - meanHoldNanos);
+    running--;
+    runningByUser.computeIfPresent(userId, (__, count) -> count == 1 ? null : count - 1);
+    dispatch();
+  }
+
+  /**
+   * Hands free slots to the waiting requests, one request per user and round, until the slots or the
+   * requests that may run are used up.
+   */
+  private void dispatch() {
+    boolean started;
+    do {
+      started = false;
+      Iterator<String> users = turns.iterator();
+      var served = new ArrayDeque<String>();
+      while (running < settings.maxConcurrent() && users.hasNext()) {
+        var userId = users.next();
+        if (runningOf(userId) >= settings.maxConcurrentPerUser()) continue;
+
+        var userQueue = waitingByUser.get(userId);
+        var next = userQueue.pollFirst();
+        queued--;
+        users.remove();
+        if (userQueue.isEmpty()) waitingByUser.remove(userId);
+        else served.add(userId);
+
+        Metrics.histogram("latency.admission.wait").record(System.nanoTime() - next.enqueuedAt());
+        var permit = start(userId);
+        // not within the lock, the caller continues with the request in the callback
+        next.permit().completeAsync(() -> permit, executor);
+        started = true;
+      }
+      // users that got a slot move to the end of the line
+      turns.addAll(served);
+    } while (started && running < settings.maxConcurrent());
+  }
+
+  private synchronized void expire(Waiting waiting) {
+    var userQueue = waitingByUser.get(waiting.userId());
+    if (userQueue == null || !userQueue.remove(waiting)) return;
+
+    queued--;
+    if (userQueue.isEmpty()) {
+      waitingByUser.remove(waiting.userId());
+      turns.remove(waiting.userId());
+    }
+    Metrics.counter(SHED_DEADLINE).increment();
+    waiting.permit().completeExceptionally(new Rejected(Rejected.Reason.DEADLINE,
+            "The request waited longer than " + settings.queueTimeout().toSeconds() + "s",
+            retryAfter(queued, settings.maxConcurrent())));
+  }
+
+  /**
+   * How long it takes until the requests ahead have started, when {@code slots} requests run at the same time.
+   * Capped by the queue timeout, after which a waiting request is dropped anyway.
+   */
+  private Duration retryAfter(int ahead, int slots) {
+    long nanos = (long) (meanHoldNanos * (ahead + 1) / slots);
+    var estimate = Duration.ofNanos(Math.min(nanos, settings.queueTimeout().toNanos()));
+    return estimate.compareTo(MIN_RETRY_AFTER) < 0 ? MIN_RETRY_AFTER : estimate;
+  }
+
+  private Permit start(String userId) {
+    running++;
+    runningByUser.merge(userId, 1, Integer::sum);
+    return new Permit(userId);
+  }
+
+  private int runningOf(String userId) {
+    return runningByUser.getOrDefault(userId, 0);
+  }
+}
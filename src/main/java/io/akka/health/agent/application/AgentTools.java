@@ -0,0 +1,41 @@
+package io.akka.health.agent.application;
+
+import akka.javasdk.JsonSupport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import io.akka.health.common.RequestTimings;
+import io.akka.health.common.RequestUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Base of the function tools the {@link HealthAgent} hands to the model. An instance serves one request.
+ */
+abstract class AgentTools {
+
+  private static final Logger logger = LoggerFactory.getLogger(AgentTools.class);
+
+  private final String requestId;
+  private final OpenAiTokenCountEstimator tokenCountEstimator;
+
+  AgentTools(String requestId, OpenAiTokenCountEstimator tokenCountEstimator) {
+    this.requestId = requestId;
+    this.tokenCountEstimator = tokenCountEstimator;
+  }
+
+  /**
+   * Times the tool call and records the tokens of its result, which is sent back to the model as JSON.
+   */
+  protected <T> T timed(String phase, Supplier<T> call) {
+    T result = RequestTimings.time(requestId, phase, call);
+    try {
+      var json = JsonSupport.getObjectMapper().writeValueAsString(result);
+      RequestUsage.record(requestId, phase, tokenCountEstimator.estimateTokenCountInText(json));
+    } catch (JsonProcessingException e) {
+      logger.warn("Could not count the tokens of the result of {}", phase, e);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,96 @@
+package io.akka.health.agent.application;
+
+import akka.javasdk.annotations.FunctionTool;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import io.akka.health.fitbit.HeartRateAnalytics;
+import io.akka.health.fitbit.model.ActivityLogList;
+import io.akka.health.ingest.application.SensorEntity;
+import io.akka.health.ingest.domain.SensorStats;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tools over date ranges and raw data, only offered to the full model.
+ */
+public class AnalysisTools extends AgentTools {
+
+  private final FitbitTool fitbitTool;
+  private final SensorTool sensorTool;
+
+  AnalysisTools(FitbitTool fitbitTool, SensorTool sensorTool, String requestId, OpenAiTokenCountEstimator tokenCountEstimator) {
+    super(requestId, tokenCountEstimator);
+    this.fitbitTool = fitbitTool;
+    this.sensorTool = sensorTool;
+  }
+
+  @FunctionTool(description = "List the sensor measurements (e.g. heart rate, temperature, blood pressure) stored for a user, with the number of readings and the time of the first and last reading.")
+  public SensorEntity.MeasurementsList getSensorMeasurements(String userId) {
+    return timed("tool.getSensorMeasurements", () -> sensorTool.getMeasurements(userId));
+  }
+
+  @FunctionTool(description = "Get count, min, max, mean and the last value of one sensor measurement of a user between two dates (ISO format, both inclusive).")
+  public SensorStats.Aggregate getSensorAggregate(String userId, String measurement, String startDate, String endDate) {
+    LocalDate start = LocalDate.parse(startDate);
+    LocalDate end = LocalDate.parse(endDate);
+    return timed("tool.getSensorAggregate", () -> sensorTool.getAggregate(userId, measurement, start, end));
+  }
+
+  @FunctionTool(description = "Get the values of one sensor measurement of a user between two dates (ISO format, both inclusive) as a series of at most maxPoints averages over equal time intervals. maxPoints is capped at " + SensorTool.MAX_SERIES_POINTS + ".")
+  public SensorStats.Series getSensorSeries(String userId, String measurement, String startDate, String endDate, int maxPoints) {
+    LocalDate start = LocalDate.parse(startDate);
+    LocalDate end = LocalDate.parse(endDate);
+    return timed("tool.getSensorSeries", () -> sensorTool.getSeries(userId, measurement, start, end, maxPoints));
+  }
+
+  @FunctionTool(description = "Check if heart rate (in bpm) exceeded the range for a specific date. If exceeded, it returns the value that exceeded the range the most. Otherwise it reurns 0.")
+  public Integer isHeartRateOutsideSafeRange(String date, int minThreshold, int maxThreshold) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    return timed("tool.isHeartRateOutsideSafeRange", () -> fitbitTool.isHeartRateOutsideSafeRange(parsedDate, minThreshold, maxThreshold));
+  }
+
+  @FunctionTool(description = "Get statistics of the intraday heart rate of a specific date instead of the readings: min, max, mean, percentiles, minutes per heart rate zone, highest and lowest 10 minute rolling average, heart rate recovery after the peak and the periods outside the default range of 40 to 160 bpm. Null when there are no readings.")
+  public HeartRateAnalytics.Summary getHeartRateStatistics(String date) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    var defaults = HeartRateAnalytics.Settings.defaults();
+    return timed("tool.getHeartRateStatistics", () -> fitbitTool.getHeartRateStatistics(parsedDate, defaults.minThreshold(), defaults.maxThreshold()));
+  }
+
+  @FunctionTool(description = "Get the periods of a specific date in which the heart rate (in bpm) was below minThreshold or above maxThreshold: their number, total minutes and the longest ones with start, end and the most extreme value.")
+  public HeartRateAnalytics.OutsideRange getHeartRateOutsideRange(String date, int minThreshold, int maxThreshold) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    return timed("tool.getHeartRateOutsideRange", () -> {
+      var summary = fitbitTool.getHeartRateStatistics(parsedDate, minThreshold, maxThreshold);
+      return summary == null ? new HeartRateAnalytics.OutsideRange(minThreshold, maxThreshold, 0, 0, List.of()) : summary.outsideRange();
+    });
+  }
+
+  @FunctionTool(description = "Get total active minutes for a specific date range (usually one week).")
+  public Integer getActiveMinutesInWeek(String startDate, String endDate) {
+    LocalDate start = LocalDate.parse(startDate);
+    LocalDate end = LocalDate.parse(endDate);
+    return timed("tool.getActiveMinutesInWeek", () -> fitbitTool.getActiveMinutesInWeek(start, end));
+  }
+
+  @FunctionTool(description = "Get all exercises and activities (e.g. run, walk, bike, weights, sports) that were logged or auto-detected in a date range (ISO format, both inclusive, usually one week).")
+  public List<ActivityLogList.ActivityLog> getSportActivitiesInWeek(String startDate, String endDate) {
+    LocalDate start = LocalDate.parse(startDate);
+    LocalDate end = LocalDate.parse(endDate);
+    return timed("tool.getSportActivitiesInWeek", () -> fitbitTool.getSportActivitiesInWeek(start, end));
+  }
+
+  @FunctionTool(description = "Get number of steps walked per day for a date range (ISO format, both inclusive).")
+  public Map<LocalDate, Integer> getStepsInRange(String startDate, String endDate) {
+    LocalDate start = LocalDate.parse(startDate);
+    LocalDate end = LocalDate.parse(endDate);
+    return timed("tool.getStepsInRange", () -> fitbitTool.getStepsInRange(start, end));
+  }
+
+  @FunctionTool(description = "Get amount of sleep hours per night for a date range (ISO format, both inclusive).")
+  public Map<LocalDate, Double> getSleepHoursInRange(String startDate, String endDate) {
+    LocalDate start = LocalDate.parse(startDate);
+    LocalDate end = LocalDate.parse(endDate);
+    return timed("tool.getSleepHoursInRange", () -> fitbitTool.getSleepHoursInRange(start, end));
+  }
+}
@@ -0,0 +1,217 @@
+package io.akka.health.agent.application;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import io.akka.health.common.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Short-lived cache of agent answers per user.
+ * <p>
+ * A question matches a cached one if the normalized text is equal or if the cosine similarity of
+ * their embeddings is above the configured threshold. All answers of a user are dropped as soon as
+ * new health data arrives for that user, because a cached answer could be based on outdated data.
+ * The cache lives in memory of the node that served the request. Expired answers, and users whose answers have
+ * all expired, are pruned at most once per TTL.
+ */
+public class AnswerCache {
+
+  public record Settings(
+          boolean enabled,
+          Duration ttl,
+          double similarityThreshold,
+          int maxEntriesPerUser,
+          int minQuestionWords) {
+  }
+
+  private record Entry(String normalizedQuestion, Embedding embedding, String answer, long createdAt) {}
+
+  /**
+   * Result of a lookup. On a miss the answer can be stored with {@link #store(String)}, which
+   * reuses the embedding computed for the lookup.
+   */
+  public class Lookup {
+    private final String userId;
+    private final String normalizedQuestion;
+    private final Embedding embedding;
+    private final String answer;
+    private final long createdAt;
+
+    private Lookup(String userId, String normalizedQuestion, Embedding embedding, String answer) {
+      this.userId = userId;
+      this.normalizedQuestion = normalizedQuestion;
+      this.embedding = embedding;
+      this.answer = answer;
+      this.createdAt = clock.millis();
+    }
+
+    public Optional<String> answer() {
+      return Optional.ofNullable(answer);
+    }
+
+    /**
+     * Stores the complete answer. Callers must not store an answer that was cut off.
+     */
+    public void store(String answer) {
+      if (embedding != null && isCurrent(userId, createdAt)) put(userId, normalizedQuestion, embedding, answer);
+    }
+  }
+
+  static final String HITS = "agent.answer-cache.hits";
+  static final String MISSES = "agent.answer-cache.misses";
+  static final String INVALIDATIONS = "agent.answer-cache.invalidations";
+
+  private static final Logger logger = LoggerFactory.getLogger(AnswerCache.class);
+
+  private final Settings settings;
+  private final Embedder embedder;
+  private final Executor blockingIo;
+  private final Clock clock;
+  private final Map<String, Deque<Entry>> entriesByUser = new ConcurrentHashMap<>();
+  // when the answers of a user were last invalidated, kept for one TTL
+  private final Map<String, Long> invalidatedAt = new ConcurrentHashMap<>();
+  private final AtomicLong lastPrune;
+
+  @FunctionalInterface
+  public interface Embedder {
+    /**
+     * Blocking call of the embedding model. The tokens are used on behalf of the user.
+     */
+    Embedding embed(String userId, String question);
+  }
+
+  /**
+   * @param embedder   blocking call of the embedding model
+   * @param blockingIo runs the embedder, see {@link io.akka.health.common.BlockingIo}
+   */
+  public AnswerCache(Settings settings, Embedder embedder, Executor blockingIo) {
+    this(settings, embedder, blockingIo, Clock.systemUTC());
+  }
+
+  AnswerCache(Settings settings, Embedder embedder, Executor blockingIo, Clock clock) {
+    this.settings = settings;
+    this.embedder = embedder;
+    this.blockingIo = blockingIo;
+    this.clock = clock;
+    this.lastPrune = new AtomicLong(clock.millis());
+    Metrics.gauge("agent.answer-cache.hit-rate", () -> Metrics.ratio(HITS, MISSES));
+    Metrics.gauge("agent.answer-cache.users", entriesByUser::size);
+  }
+
+  public CompletionStage<Lookup> lookup(String userId, String question) {
+    var normalized = normalize(question);
+    // short follow-ups like "and now?" only make sense in the context of the conversation
+    if (!settings.enabled() || normalized.split(" ").length < settings.minQuestionWords()) {
+      return CompletableFuture.completedFuture(new Lookup(userId, normalized, null, null));
+    }
+
+    var exact = find(userId, entry -> entry.normalizedQuestion().equals(normalized));
+    if (exact.isPresent()) {
+      return CompletableFuture.completedFuture(hit(userId, normalized, exact.get()));
+    }
+
+    return CompletableFuture.supplyAsync(() -> {
+      var embedding = embedder.embed(userId, normalized);
+      return find(userId, entry -> CosineSimilarity.between(entry.embedding(), embedding) >= settings.similarityThreshold())
+              .map(entry -> hit(userId, normalized, entry))
+              .orElseGet(() -> {
+                Metrics.counter(MISSES).increment();
+                return new Lookup(userId, normalized, embedding, null);
+              });
+    }, blockingIo);
+  }
+
+  public void invalidate(String userId) {
+    invalidatedAt.put(userId, clock.millis());
+    if (entriesByUser.remove(userId) != null) {
+      Metrics.counter(INVALIDATIONS).increment();
+      logger.debug("Invalidated cached answers for user {}", userId);
+    }
+    pruneIfDue();
+  }
+
+  /**
+   * Whether an answer to a lookup made at createdAt may still be stored: no data arrived while it was generated,
+   * and it wouldn't have expired already.
+   */
+  private boolean isCurrent(String userId, long createdAt) {
+    return invalidatedAt.getOrDefault(userId, Long.MIN_VALUE) < createdAt
+            && clock.millis() - createdAt <= settings.ttl().toMillis();
+  }
+
+  private void pruneIfDue() {
+    long now = clock.millis();
+    long last = lastPrune.get();
+    if (now - last >= settings.ttl().toMillis() && lastPrune.compareAndSet(last, now)) prune(now);
+  }
+
+  /**
+   * Drops the expired answers, the users without answers and the invalidations older than the TTL, which no
+   * {@link Lookup} that may still store an answer can predate.
+   */
+  void prune(long now) {
+    long oldestValid = now - settings.ttl().toMillis();
+    entriesByUser.forEach((userId, entries) -> {
+      synchronized (entries) {
+        entries.removeIf(entry -> entry.createdAt() < oldestValid);
+        if (entries.isEmpty()) entriesByUser.remove(userId, entries);
+      }
+    });
+    invalidatedAt.values().removeIf(at -> at < oldestValid);
+  }
+
+  int users() {
+    return entriesByUser.size();
+  }
+
+  private Lookup hit(String userId, String normalized, Entry entry) {
+    Metrics.counter(HITS).increment();
+    logger.info("Answer cache hit for user {}: '{}' matched '{}'", userId, normalized, entry.normalizedQuestion());
+    return new Lookup(userId, normalized, entry.embedding(), entry.answer());
+  }
+
+  private Optional<Entry> find(String userId, Predicate<Entry> matches) {
+    var entries = entriesByUser.get(userId);
+    if (entries == null) return Optional.empty();
+
+    long oldestValid = clock.millis() - settings.ttl().toMillis();
+    synchronized (entries) {
+      entries.removeIf(entry -> entry.createdAt() < oldestValid);
+      return entries.stream().filter(matches).findFirst();
+    }
+  }
+
+  private void put(String userId, String normalized, Embedding embedding, String answer) {
+    var entries = entriesByUser.computeIfAbsent(userId, __ -> new ArrayDeque<>());
+    synchronized (entries) {
+      entries.addFirst(new Entry(normalized, embedding, answer, clock.millis()));
+      while (entries.size() > settings.maxEntriesPerUser()) {
+        entries.removeLast();
+      }
+    }
+    // a prune that emptied the deque before the answer was added has removed it from the map
+    entriesByUser.putIfAbsent(userId, entries);
+    pruneIfDue();
+  }
+
+  static String normalize(String question) {
+    return question.toLowerCase()
+            .replaceAll("[^\\p{L}\\p{N}\\s]", " ")
+            .replaceAll("\\s+", " ")
+            .trim();
+  }
+}
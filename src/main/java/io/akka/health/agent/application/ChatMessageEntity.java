@@ -0,0 +1,30 @@
+package io.akka.health.agent.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+
+/**
+ * A single message of a conversation, written once by the {@link ConversationHistoryConsumer}.
+ * The entity id is the agent session id followed by the sequence number and the origin of the message.
+ */
+@ComponentId("chat-message")
+public class ChatMessageEntity extends KeyValueEntity<ChatMessageEntity.ChatMessage> {
+
+  /**
+   * @param sequence Orders the messages within a session (the sequence number of the session event).
+   * @param origin   "user" or "ai".
+   */
+  public record ChatMessage(String userId, String sessionId, long sequence, String origin, String message, long timestamp) {}
+
+  public static String entityId(String agentSessionId, long sequence, String origin) {
+    return agentSessionId + "/" + sequence + "/" + origin;
+  }
+
+  public Effect<Done> create(ChatMessage message) {
+    // redelivered events write the same message again
+    return effects()
+        .updateState(message)
+        .thenReply(Done.getInstance());
+  }
+}
@@ -0,0 +1,72 @@
+package io.akka.health.agent.application;
+
+import akka.javasdk.Metadata;
+import akka.javasdk.agent.SessionMemoryEntity;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.consumer.Consumer;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Writes every user and AI message of an agent session into its own {@link ChatMessageEntity},
+ * which backs the message table of the {@link ConversationHistoryView}.
+ */
+@ComponentId("conversation-history-consumer")
+@Consume.FromEventSourcedEntity(SessionMemoryEntity.class)
+public class ConversationHistoryConsumer extends Consumer {
+
+  private final ComponentClient componentClient;
+
+  public ConversationHistoryConsumer(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect onEvent(SessionMemoryEntity.Event event) {
+    return switch (event) {
+      case SessionMemoryEntity.Event.AiMessageAdded added -> store(added.message(), "ai", added.timestamp());
+      case SessionMemoryEntity.Event.UserMessageAdded added -> store(added.message(), "user", added.timestamp());
+      default -> effects().ignore();
+    };
+  }
+
+  private Effect store(String message, String origin, Instant timestamp) {
+    var agentSessionId = messageContext().eventSubject().get();
+    long sequence = sequence(messageContext().metadata(), timestamp);
+    var chatMessage = new ChatMessageEntity.ChatMessage(
+        userId(agentSessionId),
+        sessionId(agentSessionId),
+        sequence,
+        origin,
+        message,
+        timestamp.toEpochMilli());
+
+    var done = componentClient.forKeyValueEntity(ChatMessageEntity.entityId(agentSessionId, sequence, origin))
+        .method(ChatMessageEntity::create)
+        .invokeAsync(chatMessage);
+    return effects().asyncDone(done);
+  }
+
+  /**
+   * The sequence number of the event in its session, which orders the messages and is the same when the event is
+   * delivered again. Events without one fall back to their time in microseconds.
+   */
+  static long sequence(Metadata metadata, Instant timestamp) {
+    return metadata.get("ce-sequence")
+        .map(Long::parseLong)
+        .orElseGet(() -> ChronoUnit.MICROS.between(Instant.EPOCH, timestamp));
+  }
+
+  // the agent session id is "<userId>-<sessionId>", see AgentEndpoint
+  static String userId(String agentSessionId) {
+    int i = agentSessionId.indexOf("-");
+    return agentSessionId.substring(0, i);
+  }
+
+  static String sessionId(String agentSessionId) {
+    int i = agentSessionId.indexOf("-");
+    return agentSessionId.substring(i + 1);
+  }
+}
@@ -1,88 +1,94 @@
-
 package io.akka.health.agent.application;
 
 import akka.javasdk.agent.SessionMemoryEntity;
 import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.annotations.Consume;
 import akka.javasdk.annotations.Query;
+import akka.javasdk.annotations.Table;
 import akka.javasdk.view.TableUpdater;
 import akka.javasdk.view.View;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Conversation history for the UI, split into one small row per session and one row per message,
+ * so that neither the session list nor a single session has to be loaded in full.
+ */
 // tag::top[]
-@ComponentId("view_chat_log")
+@ComponentId("view_chat_history")
 public class ConversationHistoryView extends View {
 
-  public record ConversationHistory(List<Session> sessions) {
+  /**
+   * @param lastSequence The sequence number of the last event counted, events that are delivered again are
+   *                     not counted twice.
+   */
+  public record Session(String userId,
+      String sessionId, long creationDate, long lastMessageDate, int messageCount, long lastSequence) {
   }
 
-  public record Message(String message,
-      String origin, long timestamp) { // <1>
-  }
+  public record SessionsRequest(String userId, String pageToken, int pageSize) {}
 
-  public record Session(String userId,
-      String sessionId, long creationDate, List<Message> messages) {
-    public Session add(Message message) {
-      messages.add(message);
-      return this;
-    }
+  public record SessionPage(List<Session> sessions, String nextPageToken, boolean hasMore) {}
+
+  public record MessagesRequest(String userId, String sessionId, String pageToken, int pageSize) {}
+
+  /**
+   * Messages of a session, newest first.
+   */
+  public record MessagePage(List<ChatMessageEntity.ChatMessage> messages, String nextPageToken, boolean hasMore) {}
+
+  @Query("SELECT * AS sessions, next_page_token() AS nextPageToken, has_more() AS hasMore " +
+      "FROM chat_sessions WHERE userId = :userId ORDER BY lastMessageDate DESC " +
+      "OFFSET page_token_offset(:pageToken) LIMIT :pageSize")
+  public QueryEffect<SessionPage> getSessionsByUser(SessionsRequest request) {
+    return queryResult();
   }
 
-  @Query("SELECT collect(*) as sessions FROM view_chat_log " +
-      "WHERE userId = :userId ORDER by creationDate DESC")
-  public QueryEffect<ConversationHistory> getSessionsByUser(String userId) { // <2>
+  @Query("SELECT * AS messages, next_page_token() AS nextPageToken, has_more() AS hasMore " +
+      "FROM chat_messages WHERE userId = :userId AND sessionId = :sessionId ORDER BY sequence DESC " +
+      "OFFSET page_token_offset(:pageToken) LIMIT :pageSize")
+  public QueryEffect<MessagePage> getMessagesBySession(MessagesRequest request) {
     return queryResult();
   }
 
+  @Table("chat_sessions")
   @Consume.FromEventSourcedEntity(SessionMemoryEntity.class)
-  public static class ChatMessageUpdater extends TableUpdater<Session> {
+  public static class ChatSessionUpdater extends TableUpdater<Session> {
 
     public Effect<Session> onEvent(SessionMemoryEntity.Event event) {
       return switch (event) {
-        case SessionMemoryEntity.Event.AiMessageAdded added -> aiMessage(added);
-        case SessionMemoryEntity.Event.UserMessageAdded added -> userMessage(added);
+        case SessionMemoryEntity.Event.AiMessageAdded added -> messageAdded(added.timestamp());
+        case SessionMemoryEntity.Event.UserMessageAdded added -> messageAdded(added.timestamp());
         default -> effects().ignore();
       };
     }
 
-    private Effect<Session> aiMessage(SessionMemoryEntity.Event.AiMessageAdded added) {
-      var timestamp = System.currentTimeMillis();
-      Message newMessage = new Message(added.message(), "ai", timestamp);
-      var rowState = rowStateOrNew(userId(), sessionId());
-      return effects().updateRow(rowState.add(newMessage));
-    }
-
-    private Effect<Session> userMessage(SessionMemoryEntity.Event.UserMessageAdded added) {
-      var timestamp = System.currentTimeMillis();
-      Message newMessage = new Message(added.message(), "user", timestamp);
-      var rowState = rowStateOrNew(userId(), sessionId());
-      return effects().updateRow(rowState.add(newMessage));
-    }
-
-    private String userId() {
+    private Effect<Session> messageAdded(Instant timestamp) {
       var agentSessionId = updateContext().eventSubject().get();
-      int i = agentSessionId.indexOf("-");
-      return agentSessionId.substring(0, i);
-    }
-
-    private String sessionId() {
-      var agentSessionId = updateContext().eventSubject().get();
-      int i = agentSessionId.indexOf("-");
-      return agentSessionId.substring(i+1);
+      long sequence = ConversationHistoryConsumer.sequence(updateContext().metadata(), timestamp);
+      var session = rowState() != null
+          ? rowState()
+          : new Session(
+              ConversationHistoryConsumer.userId(agentSessionId),
+              ConversationHistoryConsumer.sessionId(agentSessionId),
+              timestamp.toEpochMilli(),
+              timestamp.toEpochMilli(),
+              0,
+              -1);
+      if (sequence <= session.lastSequence()) return effects().ignore();
+      return effects().updateRow(new Session(
+          session.userId(),
+          session.sessionId(),
+          session.creationDate(),
+          timestamp.toEpochMilli(),
+          session.messageCount() + 1,
+          sequence));
     }
+  }
 
-    private Session rowStateOrNew(String userId, String sessionId) {
-      if (rowState() != null)
-        return rowState();
-      else
-        return new Session(
-            userId,
-            sessionId,
-            Instant.now().toEpochMilli(),
-            new ArrayList<>());
-    }
+  @Table("chat_messages")
+  @Consume.FromKeyValueEntity(ChatMessageEntity.class)
+  public static class ChatMessageUpdater extends TableUpdater<ChatMessageEntity.ChatMessage> {
   }
-}
\ No newline at end of file
+}
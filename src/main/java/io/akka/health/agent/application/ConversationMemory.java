@@ -0,0 +1,255 @@
+package io.akka.health.agent.application;
+
+import akka.Done;
+import akka.javasdk.agent.SessionHistory;
+import akka.javasdk.agent.SessionMemory;
+import akka.javasdk.agent.SessionMemoryEntity;
+import akka.javasdk.agent.SessionMessage;
+import akka.javasdk.client.ComponentClient;
+import io.akka.health.common.Metrics;
+import io.akka.health.common.RequestTimings;
+import io.akka.health.common.RequestUsage;
+import io.akka.health.usage.application.DailyUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Session memory with a bounded prompt size.
+ * <p>
+ * The complete history is still stored in the {@link SessionMemoryEntity} (the conversation history view
+ * is built from its events), but the turns that fall out of the most recent {@code recentTokenBudget} tokens
+ * are folded into a running summary, stored in the {@link SessionSummaryEntity}, which is sent in front of the
+ * turns that aren't summarized yet.
+ * <p>
+ * Summarizing is off the request path: {@link SessionSummaryConsumer} calls {@link #summarizeOverflow} after
+ * each answer, and it only calls the model once the turns outside the window reach {@code summarizeBatchTokens}.
+ * Until then those turns are still sent verbatim, so no turn is ever left out of the prompt, and the prompt
+ * holds at most about {@code recentTokenBudget + summarizeBatchTokens} tokens of turns.
+ */
+public class ConversationMemory implements SessionMemory {
+
+  public record Settings(int recentTokenBudget, int summaryTokenBudget, int summarizeBatchTokens) {}
+
+  private static final Logger logger = LoggerFactory.getLogger(ConversationMemory.class);
+  private static final String COMPONENT_ID = "health-agent";
+  private static final String SUMMARY_PROMPT = RequestUsage.PROMPT_PREFIX + "summary";
+  private static final String SUMMARY_COMPLETION = RequestUsage.COMPLETION + ".summary";
+
+  private final ComponentClient componentClient;
+  private final Settings settings;
+  private final ToIntFunction<String> tokenCount;
+  private final Summarizer summarizer;
+  private final Executor blockingIo;
+  private final DailyUsage dailyUsage;
+
+  @FunctionalInterface
+  public interface Summarizer {
+    /**
+     * Folds the transcript into the previous summary, keeping the result under maxTokens.
+     */
+    String summarize(String previousSummary, String transcript, int maxTokens);
+  }
+
+  /**
+   * @param blockingIo runs the blocking summarizer, see {@link io.akka.health.common.BlockingIo}
+   */
+  public ConversationMemory(ComponentClient componentClient, Settings settings, ToIntFunction<String> tokenCount,
+                            Summarizer summarizer, Executor blockingIo) {
+    this.componentClient = componentClient;
+    this.settings = settings;
+    this.tokenCount = tokenCount;
+    this.summarizer = summarizer;
+    this.blockingIo = blockingIo;
+    this.dailyUsage = new DailyUsage(componentClient);
+  }
+
+  @Override
+  public void addInteraction(String sessionId, SessionMessage.UserMessage userMessage, List<SessionMessage> messages) {
+    store(sessionId, null, userMessage, messages);
+  }
+
+  @Override
+  public SessionHistory getHistory(String sessionId) {
+    return history(sessionId, null);
+  }
+
+  /**
+   * The memory of one agent request: records the history and store phases under the request id, see
+   * {@link RequestTimings}, and calls {@code onStored} with the messages of the answer once they are stored,
+   * which is the last step of the request.
+   */
+  public SessionMemory forRequest(String requestId, Consumer<List<SessionMessage>> onStored) {
+    return new SessionMemory() {
+      @Override
+      public void addInteraction(String sessionId, SessionMessage.UserMessage userMessage, List<SessionMessage> messages) {
+        try {
+          store(sessionId, requestId, userMessage, messages);
+        } finally {
+          onStored.accept(messages);
+        }
+      }
+
+      @Override
+      public SessionHistory getHistory(String sessionId) {
+        return history(sessionId, requestId);
+      }
+    };
+  }
+
+  private void store(String sessionId, String requestId, SessionMessage.UserMessage userMessage, List<SessionMessage> messages) {
+    RequestTimings.time(requestId, "memory.store", () ->
+        componentClient.forEventSourcedEntity(sessionId)
+            .method(SessionMemoryEntity::addInteraction)
+            .invoke(new SessionMemoryEntity.AddInteractionCmd(userMessage, messages)));
+  }
+
+  private SessionHistory history(String sessionId, String requestId) {
+    var history = RequestTimings.time(requestId, "memory.history", () -> loadHistory(sessionId));
+    RequestUsage.record(requestId, "prompt.history",
+            history.messages().stream().mapToLong(m -> tokenCount.applyAsInt(text(m))).sum());
+    return history;
+  }
+
+  private SessionHistory loadHistory(String sessionId) {
+    var history = componentClient.forEventSourcedEntity(sessionId)
+            .method(SessionMemoryEntity::getHistory)
+            .invoke(new SessionMemoryEntity.GetHistoryCmd(Optional.empty()))
+            .messages();
+
+    var summary = componentClient.forKeyValueEntity(sessionId)
+            .method(SessionSummaryEntity::getSummary)
+            .invoke();
+
+    List<SessionMessage> messages = new ArrayList<>();
+    if (!summary.summary().isEmpty()) {
+      var now = Instant.now();
+      messages.add(new SessionMessage.UserMessage(now, "Summary of our earlier conversation: " + summary.summary(), COMPONENT_ID));
+      messages.add(new SessionMessage.AiMessage(now, "Understood, I will take it into account.", COMPONENT_ID));
+    }
+    messages.addAll(recentMessages(history, summary));
+    return new SessionHistory(messages);
+  }
+
+  /**
+   * Folds the turns of the session that have fallen out of the recent window into the summary, once they
+   * reach {@code summarizeBatchTokens}. Must not run concurrently for the same session.
+   */
+  public CompletionStage<Done> summarizeOverflow(String sessionId) {
+    var history = componentClient.forEventSourcedEntity(sessionId)
+            .method(SessionMemoryEntity::getHistory)
+            .invokeAsync(new SessionMemoryEntity.GetHistoryCmd(Optional.empty()));
+    var summary = componentClient.forKeyValueEntity(sessionId)
+            .method(SessionSummaryEntity::getSummary)
+            .invokeAsync();
+
+    return history.thenCombine(summary, (h, s) -> {
+      var overflow = overflow(h.messages(), s, tokenCount, settings);
+      if (overflow.isEmpty()) return CompletableFuture.completedFuture(Done.getInstance());
+
+      logger.info("Summarizing {} messages of session {}", overflow.size(), sessionId);
+      Metrics.counter("agent.memory.summaries").increment();
+      var transcript = transcript(overflow);
+      return CompletableFuture
+              .supplyAsync(() -> Metrics.time("latency.memory.summary",
+                      () -> summarizer.summarize(s.summary(), transcript, settings.summaryTokenBudget())), blockingIo)
+              .whenComplete((newSummary, error) -> {
+                if (newSummary != null) recordUsage(sessionId, s.summary(), transcript, newSummary);
+              })
+              .thenCompose(newSummary -> componentClient.forKeyValueEntity(sessionId)
+                      .method(SessionSummaryEntity::update)
+                      .invokeAsync(summarized(s, newSummary, overflow)));
+    }).thenCompose(done -> done);
+  }
+
+  /**
+   * Adds the estimated tokens of the summarizer call to the usage of the user the session belongs to.
+   */
+  private void recordUsage(String sessionId, String previousSummary, String transcript, String newSummary) {
+    long promptTokens = tokenCount.applyAsInt(previousSummary) + tokenCount.applyAsInt(transcript);
+    long completionTokens = tokenCount.applyAsInt(newSummary);
+    RequestUsage.record(null, SUMMARY_PROMPT, promptTokens);
+    RequestUsage.record(null, SUMMARY_COMPLETION, completionTokens);
+    dailyUsage.add(ConversationHistoryConsumer.userId(sessionId),
+            Map.of(SUMMARY_PROMPT, promptTokens, SUMMARY_COMPLETION, completionTokens), false);
+  }
+
+  /**
+   * The messages after the summary, which are sent verbatim: the recent window and the turns outside of it that
+   * aren't summarized yet.
+   */
+  static List<SessionMessage> recentMessages(List<SessionMessage> history, SessionSummaryEntity.State summary) {
+    return unsummarized(history, summary);
+  }
+
+  /**
+   * The messages after the summary that have fallen out of the recent window, empty until they have at least
+   * {@code summarizeBatchTokens}, so that the model is called once per batch instead of once per turn.
+   */
+  static List<SessionMessage> overflow(List<SessionMessage> history, SessionSummaryEntity.State summary,
+                                       ToIntFunction<String> tokenCount, Settings settings) {
+    var unsummarized = unsummarized(history, summary);
+    var overflow = unsummarized.subList(0, recentWindowStart(unsummarized, tokenCount, settings.recentTokenBudget()));
+    long tokens = overflow.stream().mapToLong(m -> tokenCount.applyAsInt(text(m))).sum();
+    return overflow.isEmpty() || tokens < settings.summarizeBatchTokens() ? List.of() : overflow;
+  }
+
+  /**
+   * The state after folding the overflow into the summary.
+   */
+  static SessionSummaryEntity.State summarized(SessionSummaryEntity.State summary, String newSummary,
+                                               List<SessionMessage> overflow) {
+    return new SessionSummaryEntity.State(newSummary, summary.summarizedMessages() + overflow.size());
+  }
+
+  private static List<SessionMessage> unsummarized(List<SessionMessage> history, SessionSummaryEntity.State summary) {
+    return history.subList(Math.min(summary.summarizedMessages(), history.size()), history.size());
+  }
+
+  /**
+   * Index of the oldest message that is sent verbatim. Walks back from the newest message and only cuts in
+   * front of a user message, so that a tool call is never separated from its response.
+   */
+  static int recentWindowStart(List<SessionMessage> messages, ToIntFunction<String> tokenCount, int recentTokenBudget) {
+    int tokens = 0;
+    int start = messages.size();
+    for (int i = messages.size() - 1; i >= 0; i--) {
+      tokens += tokenCount.applyAsInt(text(messages.get(i)));
+      if (tokens > recentTokenBudget) break;
+      if (messages.get(i) instanceof SessionMessage.UserMessage) start = i;
+    }
+    return start;
+  }
+
+  private static String transcript(List<SessionMessage> messages) {
+    return messages.stream()
+            .map(m -> switch (m) {
+              case SessionMessage.UserMessage u -> "User: " + text(u);
+              case SessionMessage.AiMessage a -> "Assistant: " + text(a);
+              default -> "Tool result: " + text(m);
+            })
+            .collect(Collectors.joining("\n"));
+  }
+
+  private static String text(SessionMessage message) {
+    var text = switch (message) {
+      case SessionMessage.UserMessage u -> u.text();
+      case SessionMessage.AiMessage a -> a.text();
+      case SessionMessage.ToolCallResponse t -> t.text();
+      default -> "";
+    };
+    // an AI message that only requests tool calls has no text
+    return text == null ? "" : text;
+  }
+}
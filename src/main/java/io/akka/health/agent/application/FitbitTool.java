@@ -2,28 +2,110 @@ package io.akka.health.agent.application;
 
 import dev.langchain4j.agent.tool.Tool;
 import io.akka.health.fitbit.FitbitClient;
+import io.akka.health.fitbit.HeartRateAnalytics;
 import io.akka.health.fitbit.model.*;
+import io.akka.health.sync.application.LocalFitbitData;
+import io.akka.health.sync.domain.FitbitDay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.time.ZoneId;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Fitbit lookups of the agent. Completed days are read from the local copy of the background sync when it has them
+ * (see {@link LocalFitbitData}), everything else is fetched from Fitbit. The local read and the fallback form one
+ * stage, a tool call waits for it once.
+ */
 public class FitbitTool {
 
     private final FitbitClient fitbitClient;
+    private final LocalFitbitData localData;
+    private final String userId;
+    private final Optional<ZoneId> zone;
     private final static Logger logger = LoggerFactory.getLogger(FitbitTool.class);
 
     public FitbitTool(FitbitClient fitbitClient) {
-        this.fitbitClient = fitbitClient;
+        this(fitbitClient, null, null);
+    }
+
+    public FitbitTool(FitbitClient fitbitClient, LocalFitbitData localData, String userId) {
+        this(fitbitClient, localData, userId, Optional.empty());
+    }
+
+    /**
+     * @param zone the time zone of the user, decides which days are completed and can be read locally
+     */
+    public FitbitTool(FitbitClient fitbitClient, LocalFitbitData localData, String userId, Optional<ZoneId> zone) {
+        this.fitbitClient = userId == null ? fitbitClient : fitbitClient.forUser(userId);
+        this.localData = localData;
+        this.userId = userId;
+        this.zone = zone;
+    }
+
+    /**
+     * The data of a day from the local copy when it has the day, otherwise from Fitbit.
+     */
+    private <T> T localOrFetched(LocalDate date, Function<FitbitDay, T> local, Supplier<CompletionStage<T>> fetch) {
+        var day = localData == null
+                ? CompletableFuture.completedFuture(Optional.<FitbitDay>empty())
+                : localData.day(userId, date, zone);
+        return await(day.thenCompose(found -> found
+                .<CompletionStage<T>>map(d -> CompletableFuture.completedFuture(local.apply(d)))
+                .orElseGet(fetch)));
+    }
+
+    /**
+     * The data of a date range from the local copy when it has every day of it, otherwise from Fitbit.
+     */
+    private <T> T localOrFetched(LocalDate startDate, LocalDate endDate, Function<List<FitbitDay>, T> local,
+                                 Supplier<CompletionStage<T>> fetch) {
+        var days = localData == null
+                ? CompletableFuture.completedFuture(Optional.<List<FitbitDay>>empty())
+                : localData.days(userId, startDate, endDate, zone);
+        return await(days.thenCompose(found -> found
+                .<CompletionStage<T>>map(d -> CompletableFuture.completedFuture(local.apply(d)))
+                .orElseGet(fetch)));
+    }
+
+    /**
+     * Throws the failure of the stage as is, like the blocking {@link FitbitClient} getters.
+     */
+    private static <T> T await(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    private HeartRateData heartRate(LocalDate date) {
+        return localOrFetched(date, FitbitDay::heartRate, () -> fitbitClient.getHeartRateByDateAsync(date));
+    }
+
+    private SleepLogData sleepLog(LocalDate date) {
+        return localOrFetched(date, FitbitDay::sleep, () -> fitbitClient.getSleepLogByDateAsync(date));
+    }
+
+    private DailyActivitySummary activitySummary(LocalDate date) {
+        return localOrFetched(date, FitbitDay::activity, () -> fitbitClient.getDailyActivitySummaryAsync(date));
     }
 
     @Tool("Get resting heart rate for a specific date")
     public Integer restingHeartRate(LocalDate date) {
         logger.info("Getting resting heart rate for date {}", date);
 
-        var data = fitbitClient.getHeartRateByDate(date);
+        var data = heartRate(date);
 
         if (data.activitiesHeart().isEmpty() || data.activitiesHeart().getFirst().value().restingHeartRate() == null) {
             return -1;
@@ -37,19 +119,14 @@ public class FitbitTool {
     public Integer isHeartRateOutsideSafeRange(LocalDate date, int minThreshold, int maxThreshold) {
         logger.info("Checking heart rate for date {} with thresholds {} - {}", date, minThreshold, maxThreshold);
 
-        var data = fitbitClient.getHeartRateByDate(date);
-
-        if (data.activitiesHeartIntraday() == null || data.activitiesHeartIntraday().dataset() == null || data.activitiesHeartIntraday().dataset().isEmpty()) {
-            return 0;
-        }
-
-        List<HeartRateData.HeartRateDataPoint> dataPoints = data.activitiesHeartIntraday().dataset();
+        var series = fitbitClient.getHeartRateSeriesByDate(date);
+        short[] bpm = series.bpm();
 
-        Integer maxDeviation = null;
-        Integer mostExtremeValue = null;
+        int maxDeviation = 0;
+        int mostExtremeValue = 0;
 
-        for (HeartRateData.HeartRateDataPoint point : dataPoints) {
-            int value = point.value();
+        for (int i = 0; i < bpm.length; i++) {
+            int value = bpm[i];
             int deviation = 0;
 
             if (value < minThreshold) {
@@ -58,46 +135,104 @@ public class FitbitTool {
                 deviation = value - maxThreshold;
             }
 
-            if (deviation > 0 && (maxDeviation == null || deviation > maxDeviation)) {
+            if (deviation > maxDeviation) {
                 maxDeviation = deviation;
                 mostExtremeValue = value;
             }
         }
 
-        return mostExtremeValue != null ? mostExtremeValue : 0;
+        return mostExtremeValue;
+    }
+
+    @Tool("Get statistics of the intraday heart rate of a specific date: percentiles, minutes per heart rate zone, highest and lowest rolling average, recovery after the peak and the periods outside the range.")
+    public HeartRateAnalytics.Summary getHeartRateStatistics(LocalDate date, int minThreshold, int maxThreshold) {
+        logger.info("Analyzing heart rate for date {} with thresholds {} - {}", date, minThreshold, maxThreshold);
+
+        var series = fitbitClient.getHeartRateSeriesByDate(date);
+        return HeartRateAnalytics.analyze(series, HeartRateAnalytics.Settings.defaults().withThresholds(minThreshold, maxThreshold));
     }
 
     @Tool("Get total active minutes for a specific date range (usually one week).")
     public Integer getActiveMinutesInWeek(LocalDate startDate, LocalDate endDate) {
         logger.info("Getting active minutes from {} to {}", startDate, endDate);
-        List<ActiveZoneMinutesData> list = new ArrayList<>();
 
-        LocalDate currentDate = startDate;
-        while (!currentDate.isAfter(endDate)) {
-            list.add(fitbitClient.getActiveZoneMinutesByDate(currentDate));
-            currentDate = currentDate.plusDays(1);
-        }
+        var data = localOrFetched(startDate, endDate,
+                days -> new ActiveZoneMinutesData(days.stream()
+                        .map(FitbitDay::activeZoneMinutes)
+                        .filter(azm -> azm.activitiesActiveZoneMinutes() != null)
+                        .flatMap(azm -> azm.activitiesActiveZoneMinutes().stream())
+                        .toList(), null),
+                () -> fitbitClient.getActiveZoneMinutesByDateRangeAsync(startDate, endDate));
+
+        if (data.activitiesActiveZoneMinutes() == null)
+            return 0;
 
         int totalActiveMinutes = 0;
 
-        for (ActiveZoneMinutesData azm : list) {
-            if (azm.activitiesActiveZoneMinutes() != null && !azm.activitiesActiveZoneMinutes().isEmpty()) {
-                ActiveZoneMinutesData.ActiveZoneMinutesValue value = azm.activitiesActiveZoneMinutes().getFirst().value();
+        for (ActiveZoneMinutesData.DailyActiveZoneMinutes day : data.activitiesActiveZoneMinutes()) {
+            if (day.value() != null && day.value().activeZoneMinutes() != null) {
+                totalActiveMinutes += day.value().activeZoneMinutes();
+            }
+        }
+
+        return totalActiveMinutes;
+    }
+
+    @Tool("Get number of steps walked per day for a specific date range.")
+    public Map<LocalDate, Integer> getStepsInRange(LocalDate startDate, LocalDate endDate) {
+        logger.info("Getting steps from {} to {}", startDate, endDate);
+
+        return localOrFetched(startDate, endDate, FitbitTool::steps,
+                () -> fitbitClient.getActivityTimeSeriesAsync("steps", startDate, endDate).thenApply(FitbitTool::steps));
+    }
+
+    private static Map<LocalDate, Integer> steps(List<FitbitDay> days) {
+        Map<LocalDate, Integer> steps = new TreeMap<>();
+        for (FitbitDay day : days) {
+            var summary = day.activity().summary();
+            steps.put(LocalDate.parse(day.date()), summary != null && summary.steps() != null ? summary.steps() : 0);
+        }
+        return steps;
+    }
+
+    private static Map<LocalDate, Integer> steps(ActivityTimeSeries data) {
+        Map<LocalDate, Integer> steps = new TreeMap<>();
+        for (ActivityTimeSeries.DataPoint point : data.dataPoints()) {
+            steps.put(point.dateTime(), point.value() == null ? 0 : (int) Double.parseDouble(point.value()));
+        }
+        return steps;
+    }
 
-                if (value.activeZoneMinutes() != null) {
-                    totalActiveMinutes += value.activeZoneMinutes();
+    @Tool("Get amount of sleep hours per day for a specific date range.")
+    public Map<LocalDate, Double> getSleepHoursInRange(LocalDate startDate, LocalDate endDate) {
+        logger.info("Getting sleep hours from {} to {}", startDate, endDate);
+
+        var data = localOrFetched(startDate, endDate,
+                days -> new SleepLogData(days.stream()
+                        .map(FitbitDay::sleep)
+                        .filter(sleep -> sleep.sleep() != null)
+                        .flatMap(sleep -> sleep.sleep().stream())
+                        .toList(), null),
+                () -> fitbitClient.getSleepLogByDateRangeAsync(startDate, endDate));
+
+        // the range response has no summary, a night with several logs (e.g. a nap) is summed up by its date
+        Map<LocalDate, Double> hours = new TreeMap<>();
+        if (data.sleep() != null) {
+            for (SleepLogData.Sleep sleep : data.sleep()) {
+                if (sleep.dateOfSleep() != null && sleep.minutesAsleep() != null) {
+                    hours.merge(sleep.dateOfSleep(), sleep.minutesAsleep() / 60.0, Double::sum);
                 }
             }
         }
 
-        return totalActiveMinutes;
+        return hours;
     }
 
     @Tool("Get amount of sleep hours for a specific date.")
     public Double getSleepHoursForDay(LocalDate date) {
         logger.info("Getting sleep hours for date {}", date);
 
-        var data = fitbitClient.getSleepLogByDate(date);
+        var data = sleepLog(date);
 
         if (data.summary() != null && data.summary().totalMinutesAsleep() != null) {
             return data.summary().totalMinutesAsleep() / 60.0;
@@ -110,7 +245,7 @@ public class FitbitTool {
     public Integer getRemSleepMinutes(LocalDate date) {
         logger.info("Getting REM sleep minutes for date {}", date);
 
-        var data = fitbitClient.getSleepLogByDate(date);
+        var data = sleepLog(date);
 
         if (data.sleep() == null || data.sleep().isEmpty())
             return 0;
@@ -126,48 +261,43 @@ public class FitbitTool {
         return totalRemMinutes;
     }
 
-    @Tool("Get all sport activities (sport, gym, aerobic) for a specific date range (usually one week).")
-    public List<DailyActivitySummary.Activity> getSportActivitiesInWeek(LocalDate startDate, LocalDate endDate) {
+    @Tool("Get all exercises (e.g. run, walk, bike, weights, sports) that were logged or auto-detected in a specific date range (usually one week).")
+    public List<ActivityLogList.ActivityLog> getSportActivitiesInWeek(LocalDate startDate, LocalDate endDate) {
         logger.info("Getting sport activities from {} to {}", startDate, endDate);
-        List<DailyActivitySummary> list = new ArrayList<>();
-
-        LocalDate currentDate = startDate;
-        while (!currentDate.isAfter(endDate)) {
-            list.add(fitbitClient.getDailyActivitySummary(currentDate));
-            currentDate = currentDate.plusDays(1);
-        }
-
-        List<DailyActivitySummary.Activity> sportActivities = new ArrayList<>();
 
-        for (DailyActivitySummary summary : list) {
-            if (summary.activities() != null) {
-                // Collect activities that are sports or intensive (like gym or aerobic)
-                List<DailyActivitySummary.Activity> intensiveActivities = summary.activities().stream()
-                        .filter(activity -> {
-                            String name = activity.name() != null ? activity.name().toLowerCase() : "";
-                            String parentName = activity.activityParentName() != null ? activity.activityParentName().toLowerCase() : "";
-
-                            return name.contains("sport") || name.contains("gym") || name.contains("aerobic") ||
-                                    parentName.contains("sport") || parentName.contains("gym") || parentName.contains("aerobic");
-                        })
-                        .toList();
-
-                sportActivities.addAll(intensiveActivities);
-            }
-        }
+        return exercises(fitbitClient.getActivityLogByDateRange(startDate, endDate));
+    }
 
-        return sportActivities;
+    /**
+     * The activity log only contains exercises, so all of them are returned. Its entries have no parent category
+     * to filter on, and filtering by name would drop most of them (Run, Walk, Bike, Weights, ...).
+     */
+    static List<ActivityLogList.ActivityLog> exercises(ActivityLogList data) {
+        return data.activities() == null ? List.of() : data.activities();
     }
 
     @Tool("Get number of steps walked for a specific date.")
     public Integer getStepsForDay(LocalDate date) {
         logger.info("Getting steps for date {}", date);
 
-        var data = fitbitClient.getDailyActivitySummary(date);
+        return steps(activitySummary(date)).orElse(0);
+    }
+
+    /**
+     * The steps of the day, empty if Fitbit has no data for it, unlike {@link #getStepsForDay}, which reports such a
+     * day as 0 steps.
+     */
+    Optional<Integer> recordedSteps(LocalDate date) {
+        return steps(activitySummary(date));
+    }
 
-        if (data.summary() != null && data.summary().steps() != null)
-            return data.summary().steps();
-        else
-            return 0;
+    /**
+     * Empty without a summary, and for a day without a single step: Fitbit reports the days on which the tracker
+     * wasn't worn or hasn't synced yet with a summary of zeros.
+     */
+    static Optional<Integer> steps(DailyActivitySummary data) {
+        return Optional.ofNullable(data.summary())
+                .map(DailyActivitySummary.Summary::steps)
+                .filter(steps -> steps > 0);
     }
 }
@@ -3,21 +3,27 @@ package io.akka.health.agent.application;
 
 import akka.javasdk.agent.Agent;
 import akka.javasdk.agent.MemoryProvider;
+import akka.javasdk.agent.SessionMessage;
 import akka.javasdk.annotations.AgentDescription;
 import akka.javasdk.annotations.ComponentId;
-import akka.javasdk.annotations.FunctionTool;
 import akka.javasdk.client.ComponentClient;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
 import io.akka.health.fitbit.FitbitClient;
 
-import com.mongodb.client.MongoClient;
-import io.akka.health.fitbit.model.DailyActivitySummary;
+import com.typesafe.config.Config;
 import io.akka.health.agent.model.HealthAgentRequest;
-import io.akka.health.ingest.application.SensorView;
+import io.akka.health.common.Metrics;
+import io.akka.health.common.RequestTimings;
+import io.akka.health.common.RequestUsage;
+import io.akka.health.digest.application.DailyDigestView;
+import io.akka.health.sync.application.LocalFitbitData;
+import io.akka.health.usage.application.DailyUsage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @ComponentId("health-agent")
 @AgentDescription(name = "Health Agent", description = "A personal health assistant with knowledge about the user's health data.")
@@ -29,84 +35,134 @@ public class HealthAgent extends Agent {
     You are a personal health assistant that helps the user to stay healthy.
     You have access to the user's health data that is observed through fitness trackers and made available through Fitbit.
     You have access to the user's medical records.
+    The prompt contains a daily digest of the last days. Use it instead of calling tools when it already answers the question.
     Answer the question in a concise way.
     """;
-  private final FitbitTool fitbitTool;
+  private final FitbitClient fitbitClient;
+  private final LocalFitbitData localFitbitData;
+  private final DailyUsage dailyUsage;
   private final SensorTool sensorTool;
   private final MedicalRecordRAG medicalRecordRAG;
-
-  public HealthAgent(ComponentClient componentClient, MongoClient mongoClient, FitbitClient fitbitClient) {
+  private final ConversationMemory conversationMemory;
+  private final OpenAiTokenCountEstimator tokenCountEstimator;
+  private final QuestionRouter questionRouter;
+  private static final int RECENT_SENSOR_READINGS = 5;
+  private final int digestDays;
+
+  public HealthAgent(ComponentClient componentClient, FitbitClient fitbitClient, MedicalRecordRAG medicalRecordRAG,
+                     ConversationMemory conversationMemory, OpenAiTokenCountEstimator tokenCountEstimator,
+                     QuestionRouter questionRouter, Config config) {
     this.componentClient = componentClient;
-    this.fitbitTool = new FitbitTool(fitbitClient);
+    this.conversationMemory = conversationMemory;
+    this.tokenCountEstimator = tokenCountEstimator;
+    this.questionRouter = questionRouter;
+    this.fitbitClient = fitbitClient;
+    this.localFitbitData = new LocalFitbitData(componentClient);
+    this.dailyUsage = new DailyUsage(componentClient);
     this.sensorTool = new SensorTool(componentClient);
-    this.medicalRecordRAG = new MedicalRecordRAG(mongoClient);
+    this.medicalRecordRAG = medicalRecordRAG;
+    this.digestDays = config.getInt("health.digest.prompt-days");
   }
 
-  public Agent.Effect<String> ask(HealthAgentRequest request) {
+  /**
+   * Streams the answer token by token. Callers that want the complete answer at once can still use
+   * {@code method(HealthAgent::ask)}, callers that want the tokens use {@code tokenStream(HealthAgent::ask)}.
+   */
+  public Agent.StreamEffect ask(HealthAgentRequest request) {
     String promptTemplate = """
         Question: %s
         Knowledge: %s
+        Recent sensor data: %s
+        Daily digest: %s
         UserId: %s
         """;
 
-    String knowledge = medicalRecordRAG.retrieve(request.question(), request.userId());
-    String prompt = promptTemplate.formatted(request.question(), knowledge, request.userId());
-
-    logger.info("Processing request: {}", prompt);
-
-    return effects()
-            .memory(MemoryProvider.limitedWindow())
+    // simple lookups don't need the medical records, see QuestionRouter
+    boolean simple = request.route() == HealthAgentRequest.Route.SIMPLE;
+
+    // medical record retrieval, sensor prefetch and the digest are independent, so the phase before the
+    // model call costs the slowest of them instead of their sum
+    var requestId = request.requestId();
+    RequestTimings.begin(requestId);
+    RequestUsage.begin(requestId);
+    String prompt = RequestTimings.time(requestId, "agent.prepare", () -> {
+      var knowledge = simple
+              ? CompletableFuture.completedFuture(request.question())
+              : medicalRecordRAG.retrieveAsync(request.question(), request.userId(), requestId);
+      var sensorSummary = RequestTimings.timeAsync(requestId, "sensor.view",
+              () -> sensorTool.getRecentSensorSummary(request.userId(), RECENT_SENSOR_READINGS)).toCompletableFuture();
+      var digest = RequestTimings.timeAsync(requestId, "digest.view",
+              () -> getDailyDigest(request.userId())).toCompletableFuture();
+      CompletableFuture.allOf(knowledge, sensorSummary, digest).join();
+      recordPromptTokens(requestId, request.question(), knowledge.join(), sensorSummary.join(), digest.join());
+      return promptTemplate.formatted(request.question(), knowledge.join(), sensorSummary.join(), digest.join(), request.userId());
+    });
+
+    logger.info("Processing {} request: {}", simple ? "simple" : "full", prompt);
+
+    // past days, in the user's time zone, are read from the local copy of the user's Fitbit data, see FitbitSyncScheduler
+    var fitbitTool = new FitbitTool(fitbitClient, localFitbitData, request.userId(), request.zone());
+    var lookupTools = new LookupTools(fitbitTool, requestId, tokenCountEstimator);
+    List<Object> tools = simple
+            ? List.of(lookupTools)
+            : List.of(lookupTools, new AnalysisTools(fitbitTool, sensorTool, requestId, tokenCountEstimator));
+
+    return streamEffects()
+            .model(questionRouter.modelFor(request.route()))
+            .memory(MemoryProvider.custom(conversationMemory.forRequest(requestId, messages -> finish(request, messages))))
+            .tools(tools)
             .systemMessage(systemMessage)
             .userMessage(prompt)
             .thenReply();
   }
 
-  @FunctionTool(description = "Get all Sensor Data for a specific user")
-  private SensorView.AllSensorData getSensorData(String userId) {
-    return sensorTool.getSensorData(userId);
-  }
-
-  @FunctionTool(description = "Get resting heart rate for a specific date")
-  public Integer restingHeartRate(String date) {
-    LocalDate parsedDate = LocalDate.parse(date);
-    return fitbitTool.restingHeartRate(parsedDate);
-  }
-
-  @FunctionTool(description = "Check if heart rate (in bpm) exceeded the range for a specific date. If exceeded, it returns the value that exceeded the range the most. Otherwise it reurns 0.")
-  public Integer isHeartRateOutsideSafeRange(String date, int minThreshold, int maxThreshold) {
-    LocalDate parsedDate = LocalDate.parse(date);
-    return fitbitTool.isHeartRateOutsideSafeRange(parsedDate, minThreshold, maxThreshold);
-  }
-
-  @FunctionTool(description = "Get total active minutes for a specific date range (usually one week).")
-  public Integer getActiveMinutesInWeek(String startDate, String endDate) {
-    LocalDate start = LocalDate.parse(startDate);
-    LocalDate end = LocalDate.parse(endDate);
-    return fitbitTool.getActiveMinutesInWeek(start, end);
-  }
-
-  @FunctionTool(description = "Get amount of sleep hours for a specific date.")
-  public Double getSleepHoursForDay(String date) {
-    LocalDate parsedDate = LocalDate.parse(date);
-    return fitbitTool.getSleepHoursForDay(parsedDate);
+  /**
+   * Ends the latency and token breakdown of the request and adds its tokens to the daily usage of the user.
+   * Called once the answer is stored, on the node where the breakdown was begun. When the request fails before,
+   * its tokens are only added to the {@code tokens.<category>} counters.
+   */
+  private void finish(HealthAgentRequest request, List<SessionMessage> messages) {
+    var route = request.route().name().toLowerCase();
+    long completionTokens = messages.stream()
+            .filter(message -> message instanceof SessionMessage.AiMessage)
+            .map(message -> ((SessionMessage.AiMessage) message).text())
+            .filter(text -> text != null)
+            .mapToLong(this::tokens)
+            .sum();
+    RequestUsage.record(request.requestId(), RequestUsage.COMPLETION, completionTokens);
+
+    var latency = RequestTimings.end(request.requestId());
+    logger.info("Latency breakdown of {} request (ms): {}", route, latency);
+    var tokens = RequestUsage.end(request.requestId());
+    long totalTokens = tokens.values().stream().mapToLong(Long::longValue).sum();
+    Metrics.counter("tokens.route." + route).add(totalTokens);
+    logger.info("Token usage of {} request: {} in total, {}", route, totalTokens, tokens);
+    dailyUsage.add(request.userId(), tokens, true);
   }
 
-  @FunctionTool(description = "Get amount of REM sleep in minutes for a specific date.")
-  public Integer getRemSleepMinutes(String date) {
-    LocalDate parsedDate = LocalDate.parse(date);
-    return fitbitTool.getRemSleepMinutes(parsedDate);
+  /**
+   * Records the estimated size of each part of the prompt. The knowledge block contains the question,
+   * so only what the retrieval added to it is counted as knowledge.
+   */
+  private void recordPromptTokens(String requestId, String question, String knowledge, String sensorSummary, String digest) {
+    int questionTokens = tokens(question);
+    RequestUsage.record(requestId, "prompt.system", tokens(systemMessage));
+    RequestUsage.record(requestId, "prompt.question", questionTokens);
+    RequestUsage.record(requestId, "prompt.knowledge", Math.max(0, tokens(knowledge) - questionTokens));
+    RequestUsage.record(requestId, "prompt.sensor", tokens(sensorSummary));
+    RequestUsage.record(requestId, "prompt.digest", tokens(digest));
   }
 
-  @FunctionTool(description = "Get all sport activities (sport, gym, aerobic) for a specific date range (usually one week).")
-  public List<DailyActivitySummary.Activity> getSportActivitiesInWeek(String startDate, String endDate) {
-    LocalDate start = LocalDate.parse(startDate);
-    LocalDate end = LocalDate.parse(endDate);
-    return fitbitTool.getSportActivitiesInWeek(start, end);
+  private int tokens(String text) {
+    return tokenCountEstimator.estimateTokenCountInText(text);
   }
 
-  @FunctionTool(description = "Get number of steps walked for a specific date.")
-  public Integer getStepsForDay(String date) {
-    LocalDate parsedDate = LocalDate.parse(date);
-    return fitbitTool.getStepsForDay(parsedDate);
+  private CompletionStage<String> getDailyDigest(String userId) {
+    return componentClient.forView()
+            .method(DailyDigestView::getDigestByUser)
+            .invokeAsync(userId)
+            .thenApply(result -> result.digests().isEmpty()
+                    ? "No daily digest available."
+                    : result.digests().getFirst().toPrompt(digestDays));
   }
 }
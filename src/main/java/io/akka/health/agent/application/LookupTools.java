@@ -0,0 +1,44 @@
+package io.akka.health.agent.application;
+
+import akka.javasdk.annotations.FunctionTool;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+
+import java.time.LocalDate;
+
+/**
+ * Tools that look up a single metric of a single day. They are all the model gets for simple questions,
+ * see {@link QuestionRouter}.
+ */
+public class LookupTools extends AgentTools {
+
+  private final FitbitTool fitbitTool;
+
+  LookupTools(FitbitTool fitbitTool, String requestId, OpenAiTokenCountEstimator tokenCountEstimator) {
+    super(requestId, tokenCountEstimator);
+    this.fitbitTool = fitbitTool;
+  }
+
+  @FunctionTool(description = "Get resting heart rate for a specific date")
+  public Integer restingHeartRate(String date) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    return timed("tool.restingHeartRate", () -> fitbitTool.restingHeartRate(parsedDate));
+  }
+
+  @FunctionTool(description = "Get amount of sleep hours for a specific date.")
+  public Double getSleepHoursForDay(String date) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    return timed("tool.getSleepHoursForDay", () -> fitbitTool.getSleepHoursForDay(parsedDate));
+  }
+
+  @FunctionTool(description = "Get amount of REM sleep in minutes for a specific date.")
+  public Integer getRemSleepMinutes(String date) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    return timed("tool.getRemSleepMinutes", () -> fitbitTool.getRemSleepMinutes(parsedDate));
+  }
+
+  @FunctionTool(description = "Get number of steps walked for a specific date.")
+  public Integer getStepsForDay(String date) {
+    LocalDate parsedDate = LocalDate.parse(date);
+    return timed("tool.getStepsForDay", () -> fitbitTool.getStepsForDay(parsedDate));
+  }
+}
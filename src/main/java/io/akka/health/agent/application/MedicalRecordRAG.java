@@ -2,55 +2,90 @@ package io.akka.health.agent.application;
 
 import com.mongodb.client.MongoClient;
 import dev.langchain4j.data.message.UserMessage;
-import dev.langchain4j.rag.AugmentationRequest;
-import dev.langchain4j.rag.DefaultRetrievalAugmentor;
-import dev.langchain4j.rag.RetrievalAugmentor;
-import dev.langchain4j.rag.content.injector.ContentInjector;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.injector.DefaultContentInjector;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
 import io.akka.health.common.MongoDbUtils;
 import io.akka.health.common.OpenAiUtils;
+import io.akka.health.common.RequestTimings;
+import io.akka.health.common.RequestUsage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Retrieves the medical records of a user that are relevant for a question. A single instance is shared
+ * by all agent requests.
+ */
 public class MedicalRecordRAG {
-    private final MongoDbUtils.MongoDbConfig mongoDbConfig;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Executor blockingIo;
     private final static Logger logger = LoggerFactory.getLogger(MedicalRecordRAG.class);
 
 
-    public MedicalRecordRAG(MongoClient mongoClient) {
-        this.mongoDbConfig = new MongoDbUtils.MongoDbConfig(
-                mongoClient,
-                "health",
-                "medicalrecord",
-                "medicalrecord-index");
+    public MedicalRecordRAG(MongoClient mongoClient, int embeddingDimensions, Executor blockingIo) {
+        this(MongoDbUtils.medicalRecordConfig(mongoClient, embeddingDimensions), blockingIo);
+    }
+
+    private MedicalRecordRAG(MongoDbUtils.MongoDbConfig mongoDbConfig, Executor blockingIo) {
+        this(OpenAiUtils.embeddingModel(mongoDbConfig.dimensions()), MongoDbUtils.embeddingStore(mongoDbConfig), blockingIo);
+    }
+
+    /**
+     * @param blockingIo runs the blocking embedding and MongoDB calls of {@link #retrieveAsync}, see
+     *                   {@link io.akka.health.common.BlockingIo}
+     */
+    public MedicalRecordRAG(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore, Executor blockingIo) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingStore = embeddingStore;
+        this.blockingIo = blockingIo;
+    }
+
+    /**
+     * Runs the retrieval (embedding the question and the vector search) without blocking the caller,
+     * so it can overlap with other work that has to happen before the model call.
+     */
+    public CompletableFuture<String> retrieveAsync(String question, String userId, String requestId) {
+        return CompletableFuture.supplyAsync(() -> retrieve(question, userId, requestId), blockingIo);
     }
 
-    public String retrieve(String question, String userId) {
-        // Create a retriever
-        var contentRetriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(MongoDbUtils.embeddingStore(mongoDbConfig))
-                .embeddingModel(OpenAiUtils.embeddingModel())
+    /**
+     * Embeds the question, searches the medical records of the user and injects the matches into the question.
+     * The embedding and the vector search are timed separately, see {@link RequestTimings}. The embedding
+     * tokens are recorded in {@link RequestUsage}.
+     */
+    public String retrieve(String question, String userId, String requestId) {
+        var embedded = RequestTimings.time(requestId, "rag.embedding",
+                () -> embeddingModel.embed(question));
+        if (embedded.tokenUsage() != null) {
+            RequestUsage.record(requestId, "embedding.rag", embedded.tokenUsage().inputTokenCount());
+        }
+        var queryEmbedding = embedded.content();
+
+        var searchRequest = EmbeddingSearchRequest.builder()
+                .queryEmbedding(queryEmbedding)
                 .maxResults(10)
                 .minScore(0.1)
                 // Currently the patientId must equal the userId
                 .filter(MetadataFilterBuilder.metadataKey("patientId").isEqualTo(userId))
                 .build();
-        var retrievalAugmenter = DefaultRetrievalAugmentor.builder()
-                .contentRetriever(contentRetriever)
-                .build();
+        var result = RequestTimings.time(requestId, "rag.vector-search",
+                () -> embeddingStore.search(searchRequest));
 
-        // Retrieve the data
-        var chatMessage = new UserMessage(question);
-        var metadata = Metadata.from(chatMessage, null, null);
-        var augmentationRequest = new AugmentationRequest(chatMessage, metadata);
-
-        var result = retrievalAugmenter.augment(augmentationRequest);
-        logger.info("Retrieved the following content: {}", result.contents());
+        var contents = result.matches().stream()
+                .map(match -> Content.from(match.embedded()))
+                .toList();
+        logger.info("Retrieved the following content: {}", contents);
 
-        UserMessage augmented = (UserMessage) new DefaultContentInjector().inject(result.contents(), chatMessage);
+        var chatMessage = new UserMessage(question);
+        UserMessage augmented = (UserMessage) new DefaultContentInjector().inject(contents, chatMessage);
         logger.info("Augmented message: {}", augmented);
         return augmented.singleText();
     }
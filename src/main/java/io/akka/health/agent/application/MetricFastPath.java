@@ -0,0 +1,148 @@
+package io.akka.health.agent.application;
+
+import io.akka.health.common.Metrics;
+import io.akka.health.fitbit.FitbitClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Answers questions that ask for exactly one metric of exactly one day, like "How many steps did I walk
+ * yesterday?", straight from the {@link FitbitTool} with a templated reply, without retrieval or a model call.
+ * <p>
+ * Matching is deliberately strict: any question that mentions more than one metric or day, is longer than
+ * {@link #MAX_WORDS} words or contains a word that asks for reasoning is left to the agent. So is a match
+ * for which Fitbit has no data, the agent can explain that better than a template.
+ * <p>
+ * "Today" and "yesterday" are the days in the time zone of the user when the client sends it, otherwise in the
+ * zone of the clock.
+ */
+public class MetricFastPath {
+
+  public enum Metric {STEPS, SLEEP_HOURS, REM_SLEEP, RESTING_HEART_RATE}
+
+  public record Intent(Metric metric, LocalDate date) {}
+
+  static final String HANDLED = "agent.fast-path.handled";
+  static final String NO_MATCH = "agent.fast-path.no-match";
+  static final String FALLBACK = "agent.fast-path.fallback";
+
+  private static final int MAX_WORDS = 12;
+  private static final Pattern REASONING = Pattern.compile(
+          "\\b(why|how come|should|compare|compared|average|trend|than|vs|week|month|and|or|doctor|medical)\\b");
+  private static final Pattern ISO_DATE = Pattern.compile("\\b\\d{4}-\\d{2}-\\d{2}\\b");
+  private static final DateTimeFormatter REPLY_DATE = DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.ENGLISH);
+
+  private static final Logger logger = LoggerFactory.getLogger(MetricFastPath.class);
+
+  private final boolean enabled;
+  private final FitbitClient fitbitClient;
+  private final Executor blockingIo;
+  private final Clock clock;
+
+  /**
+   * @param blockingIo runs the blocking Fitbit calls, see {@link io.akka.health.common.BlockingIo}
+   */
+  public MetricFastPath(boolean enabled, FitbitClient fitbitClient, Executor blockingIo, Clock clock) {
+    this.enabled = enabled;
+    this.fitbitClient = fitbitClient;
+    this.blockingIo = blockingIo;
+    this.clock = clock;
+    // share of all questions that the fast path answered, fallbacks count as not handled
+    Metrics.gauge("agent.fast-path.handled-rate", () -> Metrics.ratio(HANDLED, NO_MATCH, FALLBACK));
+  }
+
+  /**
+   * Returns the templated answer, or empty if the agent should answer the question.
+   *
+   * @param zone the time zone of the user, the zone of the clock when empty
+   */
+  public CompletionStage<Optional<String>> tryAnswer(String userId, String question, Optional<ZoneId> zone) {
+    var intent = enabled ? match(question, today(zone)) : Optional.<Intent>empty();
+    if (intent.isEmpty()) {
+      Metrics.counter(NO_MATCH).increment();
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+    return CompletableFuture.supplyAsync(() -> Metrics.time("latency.fast-path", () -> answer(new FitbitTool(fitbitClient, null, userId), intent.get())), blockingIo)
+            .exceptionally(error -> {
+              logger.warn("Fast path failed for {}, falling back to the agent", intent.get(), error);
+              return Optional.empty();
+            })
+            .thenApply(answer -> {
+              Metrics.counter(answer.isPresent() ? HANDLED : FALLBACK).increment();
+              return answer;
+            });
+  }
+
+  LocalDate today(Optional<ZoneId> zone) {
+    return LocalDate.now(zone.map(clock::withZone).orElse(clock));
+  }
+
+  static Optional<Intent> match(String question, LocalDate today) {
+    var text = question.toLowerCase(Locale.ROOT).replaceAll("[?!.,]", " ").trim();
+    if (text.split("\\s+").length > MAX_WORDS || REASONING.matcher(text).find()) return Optional.empty();
+
+    var metrics = metrics(text);
+    var dates = dates(text, today);
+    if (metrics.size() != 1 || dates.size() != 1) return Optional.empty();
+    return Optional.of(new Intent(metrics.getFirst(), dates.getFirst()));
+  }
+
+  private static List<Metric> metrics(String text) {
+    var metrics = new ArrayList<Metric>();
+    if (text.matches(".*\\b(steps|walk|walked)\\b.*")) metrics.add(Metric.STEPS);
+    if (text.matches(".*\\brem\\b.*")) metrics.add(Metric.REM_SLEEP);
+    else if (text.matches(".*\\b(sleep|slept)\\b.*")) metrics.add(Metric.SLEEP_HOURS);
+    if (text.matches(".*\\bresting (heart rate|hr|pulse)\\b.*")) metrics.add(Metric.RESTING_HEART_RATE);
+    return metrics;
+  }
+
+  private static List<LocalDate> dates(String text, LocalDate today) {
+    var dates = new ArrayList<LocalDate>();
+    if (text.contains("day before yesterday")) dates.add(today.minusDays(2));
+    else if (text.contains("yesterday")) dates.add(today.minusDays(1));
+    // Fitbit files a night's sleep under the day it ends
+    if (text.contains("today") || text.contains("last night")) dates.add(today);
+    var iso = ISO_DATE.matcher(text);
+    while (iso.find()) {
+      try {
+        dates.add(LocalDate.parse(iso.group()));
+      } catch (DateTimeParseException e) {
+        return List.of();
+      }
+    }
+    return dates;
+  }
+
+  static Optional<String> answer(FitbitTool fitbitTool, Intent intent) {
+    var date = intent.date();
+    var day = date.format(REPLY_DATE);
+    return switch (intent.metric()) {
+      case STEPS -> fitbitTool.recordedSteps(date)
+              .map(steps -> "On %s you walked %,d steps.".formatted(day, steps));
+      case SLEEP_HOURS -> Optional.ofNullable(fitbitTool.getSleepHoursForDay(date))
+              .filter(hours -> hours > 0)
+              .map(hours -> Math.round(hours * 60))
+              .map(minutes -> "On %s you slept %d hours and %d minutes.".formatted(day, minutes / 60, minutes % 60));
+      case REM_SLEEP -> Optional.ofNullable(fitbitTool.getRemSleepMinutes(date))
+              .filter(minutes -> minutes > 0)
+              .map(minutes -> "On %s you had %d minutes of REM sleep.".formatted(day, minutes));
+      case RESTING_HEART_RATE -> Optional.ofNullable(fitbitTool.restingHeartRate(date))
+              .filter(bpm -> bpm > 0)
+              .map(bpm -> "On %s your resting heart rate was %d bpm.".formatted(day, bpm));
+    };
+  }
+}
@@ -0,0 +1,73 @@
+package io.akka.health.agent.application;
+
+import akka.javasdk.agent.ModelProvider;
+import io.akka.health.agent.model.HealthAgentRequest.Route;
+import io.akka.health.common.Metrics;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which model answers a question. Short lookups of a single metric go to a cheaper model that
+ * only gets the {@link LookupTools} and no medical records. Everything else, and every question that
+ * mentions a medical topic, goes to the full model with all tools.
+ * <p>
+ * Keywords match whole words, so "rem" doesn't match "remember" and "pain" doesn't match "Spain". A keyword
+ * ending in {@code *} matches every word starting with it, e.g. "diagnos*" matches "diagnosis" and "diagnosed".
+ */
+public class QuestionRouter {
+
+  public record Settings(boolean enabled, int maxSimpleWords, List<String> simpleKeywords, List<String> fullKeywords) {}
+
+  public record Decision(Route route, String reason) {}
+
+  private record Keyword(String keyword, Pattern pattern) {}
+
+  private final Settings settings;
+  private final List<Keyword> simpleKeywords;
+  private final List<Keyword> fullKeywords;
+  private final ModelProvider fullModel;
+  private final ModelProvider simpleModel;
+
+  public QuestionRouter(Settings settings, ModelProvider fullModel, ModelProvider simpleModel) {
+    this.settings = settings;
+    this.simpleKeywords = settings.simpleKeywords().stream().map(QuestionRouter::keyword).toList();
+    this.fullKeywords = settings.fullKeywords().stream().map(QuestionRouter::keyword).toList();
+    this.fullModel = fullModel;
+    this.simpleModel = simpleModel;
+  }
+
+  public Decision route(String question) {
+    var decision = decide(question.toLowerCase(Locale.ROOT));
+    Metrics.counter("agent.route." + decision.route().name().toLowerCase(Locale.ROOT)).increment();
+    return decision;
+  }
+
+  private Decision decide(String question) {
+    if (!settings.enabled()) return new Decision(Route.FULL, "routing disabled");
+
+    for (Keyword keyword : fullKeywords) {
+      if (keyword.pattern().matcher(question).find()) return new Decision(Route.FULL, "mentions '" + keyword.keyword() + "'");
+    }
+    int words = question.trim().split("\\s+").length;
+    if (words > settings.maxSimpleWords()) return new Decision(Route.FULL, words + " words");
+
+    for (Keyword keyword : simpleKeywords) {
+      if (keyword.pattern().matcher(question).find()) return new Decision(Route.SIMPLE, "short lookup of '" + keyword.keyword() + "'");
+    }
+    return new Decision(Route.FULL, "no lookup keyword");
+  }
+
+  private static Keyword keyword(String keyword) {
+    var normalized = keyword.toLowerCase(Locale.ROOT);
+    var regex = normalized.endsWith("*")
+            ? "\\b" + Pattern.quote(normalized.substring(0, normalized.length() - 1))
+            : "\\b" + Pattern.quote(normalized) + "\\b";
+    return new Keyword(keyword, Pattern.compile(regex));
+  }
+
+  public ModelProvider modelFor(Route route) {
+    return route == Route.SIMPLE ? simpleModel : fullModel;
+  }
+}
@@ -1,26 +1,81 @@
 package io.akka.health.agent.application;
 
 import akka.javasdk.client.ComponentClient;
-import dev.langchain4j.agent.tool.Tool;
-import io.akka.health.ingest.application.SensorView;
+import io.akka.health.ingest.application.SensorEntity;
+import io.akka.health.ingest.domain.SensorStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+
 public class SensorTool {
 
     private final ComponentClient componentClient;
     private final static Logger logger = LoggerFactory.getLogger(SensorTool.class);
+    static final int MAX_SERIES_POINTS = 48;
 
     SensorTool(ComponentClient componentClient) {
         this.componentClient = componentClient;
     }
 
-    @Tool("Get all Sensor Data for a specific user")
-    SensorView.AllSensorData getSensorData(String userId) {
-        logger.info("Getting all sensor data for user {}", userId);
-        return componentClient.forView()
-                .method(SensorView::getSensorDataByByUser)
-                .invoke(userId);
+    /**
+     * The measurement types the user has readings of, with their count and time range.
+     */
+    SensorEntity.MeasurementsList getMeasurements(String userId) {
+        logger.info("Getting sensor measurements of user {}", userId);
+        return componentClient.forEventSourcedEntity(userId)
+                .method(SensorEntity::getMeasurements)
+                .invoke();
+    }
+
+    /**
+     * Count, min, max, mean and last value of one measurement between two days (both inclusive).
+     */
+    SensorStats.Aggregate getAggregate(String userId, String description, LocalDate from, LocalDate to) {
+        logger.info("Aggregating {} of user {} from {} to {}", description, userId, from, to);
+        return componentClient.forEventSourcedEntity(userId)
+                .method(SensorEntity::getAggregate)
+                .invoke(window(description, from, to, 0));
+    }
+
+    /**
+     * The readings of one measurement between two days, downsampled to at most maxPoints means.
+     */
+    SensorStats.Series getSeries(String userId, String description, LocalDate from, LocalDate to, int maxPoints) {
+        int points = Math.clamp(maxPoints, 1, MAX_SERIES_POINTS);
+        logger.info("Getting {} points of {} of user {} from {} to {}", points, description, userId, from, to);
+        return componentClient.forEventSourcedEntity(userId)
+                .method(SensorEntity::getSeries)
+                .invoke(window(description, from, to, points));
+    }
+
+    private static SensorEntity.WindowRequest window(String description, LocalDate from, LocalDate to, int maxPoints) {
+        var zone = ZoneId.systemDefault();
+        return new SensorEntity.WindowRequest(
+                description,
+                from.atStartOfDay(zone).toInstant(),
+                to.plusDays(1).atStartOfDay(zone).toInstant().minusMillis(1),
+                maxPoints);
+    }
+
+    /**
+     * A short summary of the most recent sensor readings of the user, used to prefill the prompt. The entity picks
+     * them by timestamp, only they are sent.
+     */
+    CompletionStage<String> getRecentSensorSummary(String userId, int limit) {
+        return componentClient.forEventSourcedEntity(userId)
+                .method(SensorEntity::getRecent)
+                .invokeAsync(limit)
+                .thenApply(recent -> {
+                    var data = recent.data();
+                    if (data.isEmpty()) return "No sensor data available.";
+                    return data.stream()
+                            .map(d -> d.description() + ": " + d.value() + " (" + d.source() + ")")
+                            .collect(Collectors.joining("; "));
+                });
     }
 }
 
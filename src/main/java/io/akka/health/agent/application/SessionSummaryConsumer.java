@@ -0,0 +1,39 @@
+package io.akka.health.agent.application;
+
+import akka.Done;
+import akka.javasdk.agent.SessionMemoryEntity;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.consumer.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the running summary of the agent sessions up to date, see {@link ConversationMemory}. Events of a session
+ * are consumed in order, one at a time, so there is only one summary per session in the making.
+ */
+@ComponentId("session-summary-consumer")
+@Consume.FromEventSourcedEntity(SessionMemoryEntity.class)
+public class SessionSummaryConsumer extends Consumer {
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionSummaryConsumer.class);
+
+  private final ConversationMemory conversationMemory;
+
+  public SessionSummaryConsumer(ConversationMemory conversationMemory) {
+    this.conversationMemory = conversationMemory;
+  }
+
+  public Effect onEvent(SessionMemoryEntity.Event event) {
+    if (!(event instanceof SessionMemoryEntity.Event.AiMessageAdded)) return effects().ignore();
+
+    var sessionId = messageContext().eventSubject().get();
+    var done = conversationMemory.summarizeOverflow(sessionId)
+        .exceptionally(error -> {
+          // the next answer in the session tries again
+          logger.warn("Could not summarize session {}", sessionId, error);
+          return Done.getInstance();
+        });
+    return effects().asyncDone(done);
+  }
+}
@@ -0,0 +1,40 @@
+package io.akka.health.agent.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+
+/**
+ * Running summary of the older part of an agent session. The entity id is the agent session id.
+ */
+@ComponentId("session-summary")
+public class SessionSummaryEntity extends KeyValueEntity<SessionSummaryEntity.State> {
+
+  /**
+   * @param summary            Summary of all messages that are no longer sent verbatim.
+   * @param summarizedMessages Number of messages of the session history that are part of the summary.
+   */
+  public record State(String summary, int summarizedMessages) {}
+
+  @Override
+  public State emptyState() {
+    return new State("", 0);
+  }
+
+  /**
+   * Replaces the summary, unless the current one already covers more messages, e.g. when the summary of an
+   * event that was delivered again arrives late.
+   */
+  public Effect<Done> update(State state) {
+    if (state.summarizedMessages() <= currentState().summarizedMessages()) {
+      return effects().reply(Done.getInstance());
+    }
+    return effects()
+            .updateState(state)
+            .thenReply(Done.getInstance());
+  }
+
+  public ReadOnlyEffect<State> getSummary() {
+    return effects().reply(currentState());
+  }
+}
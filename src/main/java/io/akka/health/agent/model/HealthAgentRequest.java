@@ -1,4 +1,32 @@
 package io.akka.health.agent.model;
 
-public record HealthAgentRequest(String question, String userId) {
+import java.time.ZoneId;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * @param route Which model configuration answers the question, decided by the QuestionRouter.
+ * @param requestId Identifies this request in the latency and token breakdown, see RequestTimings. Unlike the
+ *                  session id it is unique per request, also for concurrent requests in the same session.
+ * @param timeZone The time zone id of the user, null when unknown. Decides which days are over for the user.
+ */
+public record HealthAgentRequest(String question, String userId, Route route, String requestId, String timeZone) {
+
+  public enum Route {SIMPLE, FULL}
+
+  public HealthAgentRequest(String question, String userId, Route route, String timeZone) {
+    this(question, userId, route, UUID.randomUUID().toString(), timeZone);
+  }
+
+  public HealthAgentRequest(String question, String userId, Route route) {
+    this(question, userId, route, null);
+  }
+
+  public HealthAgentRequest(String question, String userId) {
+    this(question, userId, Route.FULL);
+  }
+
+  public Optional<ZoneId> zone() {
+    return Optional.ofNullable(timeZone).map(ZoneId::of);
+  }
 }
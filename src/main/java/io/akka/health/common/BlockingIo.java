@@ -0,0 +1,36 @@
+package io.akka.health.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor for blocking calls of the agent request path and the medical record ingestion: MongoDB, the embedding
+ * model and synchronous Fitbit and component calls. They must not run on the common pool, whose few threads (cores - 1) are shared with every
+ * {@code CompletableFuture} stage of the service and would limit how many requests make progress at a time.
+ * <p>
+ * A single bounded pool is shared, so that a burst of requests queues here instead of opening more connections
+ * than MongoDB and OpenAI accept.
+ */
+public class BlockingIo {
+
+  private BlockingIo() {}
+
+  public static ExecutorService executor(int threads) {
+    var executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, daemonThreads("blocking-io"));
+    Metrics.gauge("blocking-io.active", executor::getActiveCount);
+    Metrics.gauge("blocking-io.queued", () -> executor.getQueue().size());
+    return executor;
+  }
+
+  private static ThreadFactory daemonThreads(String prefix) {
+    var counter = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
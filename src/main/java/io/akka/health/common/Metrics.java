@@ -0,0 +1,134 @@
+package io.akka.health.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Minimal in-process metrics registry. Values are per node and reset on restart.
+ * Exposed through {@link io.akka.health.common.api.MetricsEndpoint}.
+ */
+public class Metrics {
+
+  public record Snapshot(Map<String, Long> counters, Map<String, Number> gauges, Map<String, Histogram.Snapshot> histograms) {}
+
+  /**
+   * Latency histogram with logarithmic buckets (4 per power of two, so percentiles are accurate to ~19%).
+   * Recording is lock-free and doesn't allocate.
+   */
+  public static class Histogram {
+
+    public record Snapshot(long count, double meanMs, double p50Ms, double p90Ms, double p95Ms, double p99Ms, double maxMs) {}
+
+    private static final int BUCKETS_PER_POWER_OF_TWO = 4;
+    // covers 1 microsecond up to ~70 minutes
+    private static final int BUCKET_COUNT = 32 * BUCKETS_PER_POWER_OF_TWO + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+      long micros = Math.max(1, nanos / 1000);
+      int bucket = (int) Math.min(BUCKET_COUNT - 1, Math.floor(Math.log(micros) / Math.log(2) * BUCKETS_PER_POWER_OF_TWO));
+      buckets.incrementAndGet(bucket);
+      count.increment();
+      sumNanos.add(nanos);
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Snapshot snapshot() {
+      long total = count.sum();
+      if (total == 0) return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+      return new Snapshot(
+              total,
+              sumNanos.sum() / 1e6 / total,
+              percentile(0.50, total),
+              percentile(0.90, total),
+              percentile(0.95, total),
+              percentile(0.99, total),
+              maxNanos.get() / 1e6);
+    }
+
+    private double percentile(double quantile, long total) {
+      long rank = (long) Math.ceil(quantile * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank && i < BUCKET_COUNT - 1) {
+          // upper bound of the bucket, capped by the largest recorded value
+          double upperMicros = Math.pow(2, (double) (i + 1) / BUCKETS_PER_POWER_OF_TWO);
+          return Math.min(upperMicros / 1000, maxNanos.get() / 1e6);
+        }
+      }
+      // the last bucket also holds everything above the covered range
+      return maxNanos.get() / 1e6;
+    }
+  }
+
+  private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private static final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+  private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  public static LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, __ -> new LongAdder());
+  }
+
+  /**
+   * Registers a value that is computed when the metrics are read, replacing a previous gauge with the same name.
+   */
+  public static void gauge(String name, Supplier<? extends Number> value) {
+    gauges.put(name, value);
+  }
+
+  public static Histogram histogram(String name) {
+    return histograms.computeIfAbsent(name, __ -> new Histogram());
+  }
+
+  /**
+   * Runs the call and records its duration in the latency histogram of the given name, also when it fails.
+   */
+  public static <T> T time(String name, Supplier<T> call) {
+    long start = System.nanoTime();
+    try {
+      return call.get();
+    } finally {
+      histogram(name).record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Like {@link #time(String, Supplier)}, but records when the returned stage completes.
+   */
+  public static <T> CompletionStage<T> timeAsync(String name, Supplier<CompletionStage<T>> call) {
+    long start = System.nanoTime();
+    return call.get().whenComplete((result, error) -> histogram(name).record(System.nanoTime() - start));
+  }
+
+  /**
+   * Fraction of hits among hits and misses, 0 when there were no lookups yet. Misses can be counted by more than
+   * one counter, e.g. for different reasons.
+   */
+  public static double ratio(String hitsCounter, String... missesCounters) {
+    long hits = counter(hitsCounter).sum();
+    long total = hits;
+    for (String missesCounter : missesCounters) total += counter(missesCounter).sum();
+    return total == 0 ? 0.0 : (double) hits / total;
+  }
+
+  public static Snapshot snapshot() {
+    var counterValues = new TreeMap<String, Long>();
+    counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+    var gaugeValues = new TreeMap<String, Number>();
+    gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.get()));
+    var histogramValues = new TreeMap<String, Histogram.Snapshot>();
+    histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.snapshot()));
+    return new Snapshot(counterValues, gaugeValues, histogramValues);
+  }
+}
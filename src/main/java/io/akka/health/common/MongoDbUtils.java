@@ -3,15 +3,33 @@ package io.akka.health.common;
 import com.mongodb.client.MongoClient;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.mongodb.IndexMapping;
 import dev.langchain4j.store.embedding.mongodb.MongoDbEmbeddingStore;
 
+import java.util.Set;
+
 public class MongoDbUtils {
 
   public record MongoDbConfig(
           MongoClient mongoClient,
           String databaseName,
           String collectionName,
-          String indexName) {
+          String indexName,
+          int dimensions) {
+  }
+
+  /**
+   * Config for the medical record collection. Vectors of different sizes can't share a vector index,
+   * so anything other than the full 1536 dimensions gets its own collection and index.
+   */
+  public static MongoDbConfig medicalRecordConfig(MongoClient mongoClient, int dimensions) {
+    var suffix = dimensions == OpenAiUtils.DEFAULT_EMBEDDING_DIMENSIONS ? "" : "-" + dimensions;
+    return new MongoDbConfig(
+            mongoClient,
+            "health",
+            "medicalrecord" + suffix,
+            "medicalrecord-index" + suffix,
+            dimensions);
   }
 
   public static EmbeddingStore<TextSegment> embeddingStore(MongoDbConfig conf) {
@@ -21,6 +39,10 @@ public class MongoDbUtils {
       .collectionName(conf.collectionName)
       .indexName(conf.indexName)
       .createIndex(true)
+      .indexMapping(IndexMapping.builder()
+              .dimension(conf.dimensions)
+              .metadataFieldNames(Set.of("patientId"))
+              .build())
       .build();
   }
 
@@ -1,17 +1,47 @@
 package io.akka.health.common;
 
 
+import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModelName;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
 
 public class OpenAiUtils {
 
   final private static OpenAiEmbeddingModelName embeddingModelName = OpenAiEmbeddingModelName.TEXT_EMBEDDING_3_SMALL;
 
+  public static final int DEFAULT_EMBEDDING_DIMENSIONS = 1536;
+
   public static OpenAiEmbeddingModel embeddingModel() {
+    return embeddingModel(DEFAULT_EMBEDDING_DIMENSIONS);
+  }
+
+  /**
+   * text-embedding-3-small can shorten its output vectors. Must match the dimension of the vector index
+   * the embeddings are stored in or searched against.
+   */
+  public static OpenAiEmbeddingModel embeddingModel(int dimensions) {
     return OpenAiEmbeddingModel.builder()
       .apiKey(KeyUtils.readOpenAiKey())
       .modelName(embeddingModelName)
+      .dimensions(dimensions)
       .build();
   }
+
+  /**
+   * Chat model for calls outside of the agent, e.g. summarizing a conversation.
+   */
+  public static OpenAiChatModel chatModel(String modelName) {
+    return OpenAiChatModel.builder()
+      .apiKey(KeyUtils.readOpenAiKey())
+      .modelName(modelName)
+      .build();
+  }
+
+  /**
+   * Counts tokens locally with the tokenizer of the given model, without calling the API.
+   */
+  public static OpenAiTokenCountEstimator tokenCountEstimator(String modelName) {
+    return new OpenAiTokenCountEstimator(modelName);
+  }
 }
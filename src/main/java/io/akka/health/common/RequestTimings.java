@@ -0,0 +1,98 @@
+package io.akka.health.common;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Per-request latency breakdown of the agent request path.
+ * <p>
+ * The agent {@link #begin(String) begins} a breakdown for the request id it was given, the components on the request
+ * path record their phases into it with {@link #time(String, String, Supplier)}, and the agent {@link #end(String) ends}
+ * it once the answer is stored. Begin and end run on the node of the agent, so the breakdown only contains the phases
+ * recorded there. Every recorded phase also goes into the {@code latency.<phase>} histogram of {@link Metrics},
+ * also when no breakdown was begun. Breakdowns that are never ended, because the request failed, are dropped after
+ * {@link #STALE_AFTER}.
+ * <p>
+ * The model call itself happens inside the agent runtime. Its duration is derived as the total time minus the
+ * phases that run sequentially before or between model calls (see {@link #SEQUENTIAL_PHASES}).
+ */
+public class RequestTimings {
+
+  /**
+   * Phases that don't overlap with each other or with the model call. Nested phases, like the embedding call
+   * within agent.prepare or the Fitbit HTTP calls within a tool, are reported but not subtracted.
+   */
+  public static final String[] SEQUENTIAL_PHASES = {"agent.prepare", "memory.", "tool."};
+
+  static final Duration STALE_AFTER = Duration.ofMinutes(10);
+
+  private static final Map<String, RequestTimings> inFlight = new ConcurrentHashMap<>();
+
+  private final long startNanos = System.nanoTime();
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+  public static void begin(String requestId) {
+    var timings = new RequestTimings();
+    inFlight.values().removeIf(other -> timings.startNanos - other.startNanos > STALE_AFTER.toNanos());
+    inFlight.put(requestId, timings);
+  }
+
+  /**
+   * Ends the breakdown, records the total and the derived model time and returns all phases in milliseconds.
+   */
+  public static Map<String, Double> end(String requestId) {
+    var timings = inFlight.remove(requestId);
+    if (timings == null) return Map.of();
+
+    long totalNanos = System.nanoTime() - timings.startNanos;
+    long sequentialNanos = 0;
+    var result = new LinkedHashMap<String, Double>();
+    synchronized (timings) {
+      for (var phase : timings.phaseNanos.entrySet()) {
+        result.put(phase.getKey(), phase.getValue() / 1e6);
+        if (isSequential(phase.getKey())) sequentialNanos += phase.getValue();
+      }
+    }
+    long modelNanos = Math.max(0, totalNanos - sequentialNanos);
+    Metrics.histogram("latency.model").record(modelNanos);
+    Metrics.histogram("latency.total").record(totalNanos);
+    result.put("model", modelNanos / 1e6);
+    result.put("total", totalNanos / 1e6);
+    return result;
+  }
+
+  public static <T> T time(String requestId, String phase, Supplier<T> call) {
+    long start = System.nanoTime();
+    try {
+      return call.get();
+    } finally {
+      record(requestId, phase, System.nanoTime() - start);
+    }
+  }
+
+  public static <T> CompletionStage<T> timeAsync(String requestId, String phase, Supplier<CompletionStage<T>> call) {
+    long start = System.nanoTime();
+    return call.get().whenComplete((result, error) -> record(requestId, phase, System.nanoTime() - start));
+  }
+
+  public static void record(String requestId, String phase, long nanos) {
+    Metrics.histogram("latency." + phase).record(nanos);
+    var timings = requestId == null ? null : inFlight.get(requestId);
+    if (timings != null) {
+      synchronized (timings) {
+        timings.phaseNanos.merge(phase, nanos, Long::sum);
+      }
+    }
+  }
+
+  private static boolean isSequential(String phase) {
+    for (String prefix : SEQUENTIAL_PHASES) {
+      if (phase.startsWith(prefix)) return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,53 @@
+package io.akka.health.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the tokens of one agent request by category, e.g. {@code prompt.knowledge}, {@code tool.getStepsForDay}
+ * or {@code completion}. Works like {@link RequestTimings}: the agent begins and ends it for its request id, the
+ * components on the request path record into it. Every recorded amount is also added to the {@code tokens.<category>}
+ * counter, also when no request was begun.
+ * <p>
+ * Token counts of the chat model are estimated locally with the model's tokenizer, because the agent runtime
+ * doesn't expose the usage reported by the API. Embedding tokens are the ones reported by the API.
+ */
+public class RequestUsage {
+
+  public static final String PROMPT_PREFIX = "prompt.";
+  public static final String TOOL_PREFIX = "tool.";
+  public static final String EMBEDDING_PREFIX = "embedding.";
+  /**
+   * Tokens generated by the chat model; categories starting with it, like {@code completion.summary}, count as well.
+   */
+  public static final String COMPLETION = "completion";
+
+  private static final Map<String, RequestUsage> inFlight = new ConcurrentHashMap<>();
+
+  private final long startNanos = System.nanoTime();
+  private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+
+  /**
+   * Begins a request. Requests that were never ended are dropped after {@link RequestTimings#STALE_AFTER}.
+   */
+  public static void begin(String requestId) {
+    var usage = new RequestUsage();
+    inFlight.values().removeIf(other -> usage.startNanos - other.startNanos > RequestTimings.STALE_AFTER.toNanos());
+    inFlight.put(requestId, usage);
+  }
+
+  public static void record(String requestId, String category, long tokens) {
+    Metrics.counter("tokens." + category).add(tokens);
+    var usage = requestId == null ? null : inFlight.get(requestId);
+    if (usage != null) usage.tokens.merge(category, tokens, Long::sum);
+  }
+
+  /**
+   * Ends the request and returns its tokens per category.
+   */
+  public static Map<String, Long> end(String requestId) {
+    var usage = inFlight.remove(requestId);
+    return usage == null ? Map.of() : new TreeMap<>(usage.tokens);
+  }
+}
@@ -0,0 +1,19 @@
+package io.akka.health.common.api;
+
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import io.akka.health.common.Metrics;
+
+/**
+ * Exposes the in-process metrics of this node.
+ */
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint
+public class MetricsEndpoint {
+
+  @Get("/metrics")
+  public Metrics.Snapshot getMetrics() {
+    return Metrics.snapshot();
+  }
+}
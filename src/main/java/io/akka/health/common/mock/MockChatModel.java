@@ -0,0 +1,146 @@
+package io.akka.health.common.mock;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Chat model that answers from a script instead of calling an LLM, for load tests of the agent pipeline.
+ * <p>
+ * A question that mentions a metric of one of the {@link #RULES} is answered with a call to the matching tool
+ * for yesterday, if the agent offers that tool. The result of a tool call, or any other question, is answered
+ * with a text of {@code answerTokens} words. The latencies simulate the time to the first token and the time
+ * per generated token.
+ */
+public class MockChatModel implements ChatModel {
+
+  public record Settings(Duration firstTokenLatency, Duration tokenLatency, int answerTokens) {}
+
+  /**
+   * A keyword in the question that triggers a call of the tool with a date argument.
+   */
+  record Rule(String keyword, String tool) {}
+
+  static final List<Rule> RULES = List.of(
+      new Rule("steps", "getStepsForDay"),
+      new Rule("rem", "getRemSleepMinutes"),
+      new Rule("sleep", "getSleepHoursForDay"),
+      new Rule("heart rate", "restingHeartRate"));
+
+  private final Settings settings;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  public MockChatModel(Settings settings) {
+    this.settings = settings;
+  }
+
+  @Override
+  public ChatResponse doChat(ChatRequest request) {
+    var response = respond(request);
+    int tokens = response.aiMessage().hasToolExecutionRequests() ? 1 : settings.answerTokens();
+    sleep(settings.firstTokenLatency().plus(settings.tokenLatency().multipliedBy(tokens)));
+    return response;
+  }
+
+  /**
+   * The same script as a streaming model. The words of the answer are emitted one by one from a virtual thread.
+   */
+  public StreamingChatModel streaming() {
+    return new StreamingChatModel() {
+      @Override
+      public void doChat(ChatRequest request, StreamingChatResponseHandler handler) {
+        executor.execute(() -> {
+          try {
+            var response = respond(request);
+            sleep(settings.firstTokenLatency());
+            var text = response.aiMessage().text();
+            if (text != null) {
+              for (String token : text.split("(?<= )")) {
+                handler.onPartialResponse(token);
+                sleep(settings.tokenLatency());
+              }
+            }
+            handler.onCompleteResponse(response);
+          } catch (RuntimeException e) {
+            handler.onError(e);
+          }
+        });
+      }
+    };
+  }
+
+  private ChatResponse respond(ChatRequest request) {
+    var messages = request.messages();
+    ChatMessage last = messages.getLast();
+    int inputTokens = messages.stream().mapToInt(m -> m.toString().length() / 4).sum();
+
+    if (last instanceof UserMessage user) {
+      var question = question(user.singleText()).toLowerCase();
+      for (Rule rule : RULES) {
+        if (question.contains(rule.keyword()) && offers(request.toolSpecifications(), rule.tool())) {
+          var call = ToolExecutionRequest.builder()
+              .id(UUID.randomUUID().toString())
+              .name(rule.tool())
+              .arguments("{\"date\":\"" + LocalDate.now().minusDays(1) + "\"}")
+              .build();
+          return response(AiMessage.from(call), inputTokens, 1, FinishReason.TOOL_EXECUTION);
+        }
+      }
+    }
+
+    var answer = new StringBuilder(last instanceof ToolExecutionResultMessage result
+        ? "According to " + result.toolName() + " the value is " + result.text() + "."
+        : "This is a scripted answer.");
+    for (int i = answer.toString().split(" ").length; i < settings.answerTokens(); i++) {
+      answer.append(" lorem");
+    }
+    return response(AiMessage.from(answer.toString()), inputTokens, settings.answerTokens(), FinishReason.STOP);
+  }
+
+  private static ChatResponse response(AiMessage message, int inputTokens, int outputTokens, FinishReason finishReason) {
+    return ChatResponse.builder()
+        .aiMessage(message)
+        .tokenUsage(new TokenUsage(inputTokens, outputTokens))
+        .finishReason(finishReason)
+        .build();
+  }
+
+  /**
+   * The agent prompt starts with "Question: ...", the rest of it mentions all kinds of metrics.
+   */
+  private static String question(String prompt) {
+    var firstLine = prompt.lines().findFirst().orElse("");
+    return firstLine.startsWith("Question:") ? firstLine : prompt;
+  }
+
+  private static boolean offers(List<ToolSpecification> tools, String name) {
+    return tools != null && tools.stream().anyMatch(tool -> tool.name().equals(name));
+  }
+
+  static void sleep(Duration duration) {
+    if (duration.isZero()) return;
+    try {
+      Thread.sleep(duration);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+}
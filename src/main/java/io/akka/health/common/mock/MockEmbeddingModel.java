@@ -0,0 +1,54 @@
+package io.akka.health.common.mock;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Embedding model that derives a unit vector from the hash of the text instead of calling an API.
+ * Equal texts get equal vectors, different texts are unrelated.
+ */
+public class MockEmbeddingModel implements EmbeddingModel {
+
+  private final int dimensions;
+  private final Duration latency;
+
+  public MockEmbeddingModel(int dimensions, Duration latency) {
+    this.dimensions = dimensions;
+    this.latency = latency;
+  }
+
+  @Override
+  public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+    MockChatModel.sleep(latency);
+    var embeddings = segments.stream().map(segment -> embedding(segment.text())).toList();
+    int tokens = segments.stream().mapToInt(segment -> segment.text().split("\\s+").length).sum();
+    return Response.from(embeddings, new TokenUsage(tokens));
+  }
+
+  @Override
+  public int dimension() {
+    return dimensions;
+  }
+
+  private Embedding embedding(String text) {
+    var random = new Random(text.hashCode());
+    float[] vector = new float[dimensions];
+    double norm = 0;
+    for (int i = 0; i < dimensions; i++) {
+      vector[i] = (float) random.nextGaussian();
+      norm += vector[i] * vector[i];
+    }
+    norm = Math.sqrt(norm);
+    for (int i = 0; i < dimensions; i++) {
+      vector[i] /= (float) norm;
+    }
+    return Embedding.from(vector);
+  }
+}
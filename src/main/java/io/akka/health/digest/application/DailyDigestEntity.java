@@ -0,0 +1,39 @@
+package io.akka.health.digest.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import akka.javasdk.keyvalueentity.KeyValueEntityContext;
+import io.akka.health.digest.domain.DailyDigest;
+
+import java.util.List;
+
+/**
+ * Holds the daily digest of one user. The entity id is the user id.
+ */
+@ComponentId("daily-digest-entity")
+public class DailyDigestEntity extends KeyValueEntity<DailyDigest> {
+
+  public record AddDays(List<DailyDigest.Day> days, int maxDays) {}
+
+  private final String entityId;
+
+  public DailyDigestEntity(KeyValueEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public DailyDigest emptyState() {
+    return DailyDigest.empty(entityId);
+  }
+
+  public Effect<Done> addDays(AddDays command) {
+    return effects()
+            .updateState(currentState().withDays(command.days(), command.maxDays()))
+            .thenReply(Done.getInstance());
+  }
+
+  public ReadOnlyEffect<DailyDigest> getDigest() {
+    return effects().reply(currentState());
+  }
+}
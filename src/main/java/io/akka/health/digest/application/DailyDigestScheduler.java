@@ -0,0 +1,152 @@
+package io.akka.health.digest.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import com.typesafe.config.Config;
+import io.akka.health.digest.domain.DailyDigest;
+import io.akka.health.fitbit.DateFanOut;
+import io.akka.health.fitbit.FitbitClient;
+import io.akka.health.fitbit.model.ActiveZoneMinutesData;
+import io.akka.health.fitbit.model.DailyActivitySummary;
+import io.akka.health.fitbit.model.SleepLogData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Summarizes the completed days of a user into the {@link DailyDigestEntity} once per day, so that
+ * the agent can answer most questions about the recent past from the digest instead of calling tools.
+ * Every run schedules the next one.
+ * <p>
+ * A day is summarized with the night that follows it, which Fitbit files under the next day. The last day of
+ * the digest is summarized again by the next run, in case its night hadn't synced yet.
+ */
+@ComponentId("daily-digest-scheduler")
+public class DailyDigestScheduler extends TimedAction {
+
+  private static final Logger logger = LoggerFactory.getLogger(DailyDigestScheduler.class);
+
+  private final ComponentClient componentClient;
+  private final FitbitClient fitbitClient;
+  private final int maxDays;
+  private final int backfillDays;
+  private final LocalTime refreshAt;
+  private final int fanOutParallelism;
+
+  public DailyDigestScheduler(ComponentClient componentClient, FitbitClient fitbitClient, Config config) {
+    this.componentClient = componentClient;
+    // nobody waits for the digest, it leaves a share of the Fitbit quota to the agent
+    this.fitbitClient = fitbitClient.background();
+    this.maxDays = config.getInt("health.digest.max-days");
+    this.backfillDays = config.getInt("health.digest.prompt-days");
+    this.refreshAt = LocalTime.parse(config.getString("health.digest.refresh-at"));
+    this.fanOutParallelism = config.getInt("health.fitbit.fan-out-parallelism");
+  }
+
+  public static String timerName(String userId) {
+    return "daily-digest-" + userId;
+  }
+
+  /**
+   * Adds the days since the last run to the digest and schedules the next run. A failed run isn't rescheduled,
+   * the timer retries it.
+   */
+  public Effect refresh(String userId) {
+    var yesterday = LocalDate.now().minusDays(1);
+    var timers = timers();
+    var done = componentClient.forKeyValueEntity(userId)
+            .method(DailyDigestEntity::getDigest)
+            .invokeAsync()
+            .thenCompose(digest -> {
+              var from = digest.lastDay() == null
+                      ? yesterday.minusDays(backfillDays - 1)
+                      : digest.lastDay();
+              // a backfill of several days is fetched concurrently, at most fanOutParallelism days at a time
+              var userClient = fitbitClient.forUser(userId);
+              return DateFanOut.forEachDay(from, yesterday, fanOutParallelism, date -> summarize(userClient, date));
+            })
+            .thenCompose(days -> {
+              if (days.isEmpty()) return CompletableFuture.completedFuture(Done.getInstance());
+              logger.info("Adding {} days to the daily digest of user {}", days.size(), userId);
+              return componentClient.forKeyValueEntity(userId)
+                      .method(DailyDigestEntity::addDays)
+                      .invokeAsync(new DailyDigestEntity.AddDays(days, maxDays));
+            })
+            .thenCompose(__ -> timers.createSingleTimer(
+                    timerName(userId),
+                    delayUntilNextRun(),
+                    componentClient.forTimedAction()
+                            .method(DailyDigestScheduler::refresh)
+                            .deferred(userId)));
+
+    return effects().asyncDone(done);
+  }
+
+  private static CompletionStage<DailyDigest.Day> summarize(FitbitClient fitbitClient, LocalDate date) {
+    var activity = fitbitClient.getDailyActivitySummaryAsync(date).toCompletableFuture();
+    // Fitbit files a night's sleep under the day it ends
+    var sleep = fitbitClient.getSleepLogByDateAsync(date.plusDays(1)).toCompletableFuture();
+    var azm = fitbitClient.getActiveZoneMinutesByDateAsync(date).toCompletableFuture();
+    return CompletableFuture.allOf(activity, sleep, azm)
+            .thenApply(__ -> summarize(date, activity.join(), sleep.join(), azm.join()));
+  }
+
+  /**
+   * @param nightSleep the sleep log of the day after the date, with the night that follows it
+   */
+  static DailyDigest.Day summarize(LocalDate date, DailyActivitySummary activity, SleepLogData nightSleep, ActiveZoneMinutesData azm) {
+
+    int steps = 0;
+    int restingHeartRate = -1;
+    if (activity.summary() != null) {
+      if (activity.summary().steps() != null) steps = activity.summary().steps();
+      if (activity.summary().restingHeartRate() != null) restingHeartRate = activity.summary().restingHeartRate();
+    }
+
+    List<String> workouts = new ArrayList<>();
+    if (activity.activities() != null) {
+      for (DailyActivitySummary.Activity a : activity.activities()) {
+        long minutes = a.duration() != null ? a.duration() / 60000 : 0;
+        workouts.add(a.name() + " (" + minutes + " min)");
+      }
+    }
+
+    int sleepMinutes = 0;
+    if (nightSleep.summary() != null && nightSleep.summary().totalMinutesAsleep() != null) {
+      sleepMinutes = nightSleep.summary().totalMinutesAsleep();
+    }
+    int remMinutes = 0;
+    if (nightSleep.sleep() != null) {
+      for (SleepLogData.Sleep s : nightSleep.sleep()) {
+        if (s.levels() != null && s.levels().summary() != null && s.levels().summary().rem() != null && s.levels().summary().rem().minutes() != null) {
+          remMinutes += s.levels().summary().rem().minutes();
+        }
+      }
+    }
+
+    int activeZoneMinutes = 0;
+    if (azm.activitiesActiveZoneMinutes() != null && !azm.activitiesActiveZoneMinutes().isEmpty()) {
+      var value = azm.activitiesActiveZoneMinutes().getFirst().value();
+      if (value != null && value.activeZoneMinutes() != null) activeZoneMinutes = value.activeZoneMinutes();
+    }
+
+    return new DailyDigest.Day(date, steps, sleepMinutes, remMinutes, restingHeartRate, activeZoneMinutes, workouts);
+  }
+
+  private Duration delayUntilNextRun() {
+    var now = LocalDateTime.now();
+    var next = now.toLocalDate().atTime(refreshAt);
+    if (!next.isAfter(now)) next = next.plusDays(1);
+    return Duration.between(now, next);
+  }
+}
@@ -0,0 +1,25 @@
+package io.akka.health.digest.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import io.akka.health.digest.domain.DailyDigest;
+
+import java.util.List;
+
+@ComponentId("view_daily_digest")
+public class DailyDigestView extends View {
+
+  public record Digests(List<DailyDigest> digests) {}
+
+  @Query("SELECT collect(*) as digests FROM view_daily_digest WHERE userId = :userId")
+  public QueryEffect<Digests> getDigestByUser(String userId) {
+    return queryResult();
+  }
+
+  @Consume.FromKeyValueEntity(DailyDigestEntity.class)
+  public static class DailyDigestUpdater extends TableUpdater<DailyDigest> {
+  }
+}
@@ -0,0 +1,75 @@
+package io.akka.health.digest.domain;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compact summary of the Fitbit data of a user, one entry per completed day.
+ *
+ * @param userId The unique identifier for the user.
+ * @param days   The summarized days, oldest first.
+ */
+public record DailyDigest(String userId, List<Day> days) {
+
+  /**
+   * @param date                The day that is summarized.
+   * @param steps               Steps walked.
+   * @param sleepMinutes        Total minutes asleep in the night after this day (that Fitbit files under the next day).
+   * @param remSleepMinutes     Minutes of REM sleep.
+   * @param restingHeartRate    Resting heart rate in bpm, -1 if unknown.
+   * @param activeZoneMinutes   Active zone minutes.
+   * @param workouts            Logged activities, e.g. "Weights (45 min)".
+   */
+  public record Day(
+          LocalDate date,
+          int steps,
+          int sleepMinutes,
+          int remSleepMinutes,
+          int restingHeartRate,
+          int activeZoneMinutes,
+          List<String> workouts) {
+
+    public String toPromptLine() {
+      return "%s: steps %d, sleep the following night %.1fh (REM %d min), resting HR %s, active zone minutes %d, workouts: %s".formatted(
+              date,
+              steps,
+              sleepMinutes / 60.0,
+              remSleepMinutes,
+              restingHeartRate < 0 ? "unknown" : restingHeartRate + " bpm",
+              activeZoneMinutes,
+              workouts.isEmpty() ? "none" : String.join(", ", workouts));
+    }
+  }
+
+  public static DailyDigest empty(String userId) {
+    return new DailyDigest(userId, List.of());
+  }
+
+  public LocalDate lastDay() {
+    return days.isEmpty() ? null : days.getLast().date();
+  }
+
+  /**
+   * Adds or replaces the given days and keeps only the most recent {@code maxDays}.
+   */
+  public DailyDigest withDays(List<Day> newDays, int maxDays) {
+    var newDates = newDays.stream().map(Day::date).collect(Collectors.toSet());
+    var merged = Stream.concat(days.stream().filter(d -> !newDates.contains(d.date())), newDays.stream())
+            .sorted(Comparator.comparing(Day::date))
+            .toList();
+    return new DailyDigest(userId, merged.subList(Math.max(0, merged.size() - maxDays), merged.size()));
+  }
+
+  /**
+   * The most recent {@code lastDays} days, one line per day.
+   */
+  public String toPrompt(int lastDays) {
+    if (days.isEmpty()) return "No daily digest available.";
+    return days.subList(Math.max(0, days.size() - lastDays), days.size()).stream()
+            .map(Day::toPromptLine)
+            .collect(Collectors.joining("\n"));
+  }
+}
@@ -0,0 +1,69 @@
+package io.akka.health.fitbit;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs an asynchronous fetch for every day of a date range with at most {@code parallelism} fetches in
+ * flight, so that a week of per-day requests takes about one round trip instead of seven, without sending
+ * the whole range to Fitbit at once.
+ */
+public class DateFanOut {
+
+  private DateFanOut() {}
+
+  /**
+   * Fetches every day from start to end (both inclusive). The results are in date order. The returned stage
+   * fails with the first failure, the fetches that are already running are not cancelled.
+   */
+  public static <T> CompletionStage<List<T>> forEachDay(LocalDate start, LocalDate end, int parallelism,
+                                                        Function<LocalDate, CompletionStage<T>> fetch) {
+    if (end.isBefore(start)) return CompletableFuture.completedFuture(List.of());
+    List<LocalDate> dates = start.datesUntil(end.plusDays(1)).toList();
+
+    List<T> results = Collections.synchronizedList(new ArrayList<>(Collections.nCopies(dates.size(), null)));
+    var next = new AtomicInteger();
+    var done = new CompletableFuture<List<T>>();
+    var remaining = new AtomicInteger(dates.size());
+
+    // each worker takes the next date when its previous fetch has completed
+    int workers = Math.min(Math.max(parallelism, 1), dates.size());
+    for (int i = 0; i < workers; i++) {
+      fetchNext(dates, fetch, next, remaining, results, done);
+    }
+    return done;
+  }
+
+  private static <T> void fetchNext(List<LocalDate> dates, Function<LocalDate, CompletionStage<T>> fetch,
+                                    AtomicInteger next, AtomicInteger remaining, List<T> results,
+                                    CompletableFuture<List<T>> done) {
+    int index = next.getAndIncrement();
+    if (index >= dates.size() || done.isDone()) return;
+
+    CompletionStage<T> stage;
+    try {
+      stage = fetch.apply(dates.get(index));
+    } catch (RuntimeException e) {
+      done.completeExceptionally(e);
+      return;
+    }
+    stage.whenComplete((result, error) -> {
+      if (error != null) {
+        done.completeExceptionally(error);
+        return;
+      }
+      results.set(index, result);
+      if (remaining.decrementAndGet() == 0) {
+        done.complete(new ArrayList<>(results));
+      } else {
+        fetchNext(dates, fetch, next, remaining, results, done);
+      }
+    });
+  }
+}
@@ -0,0 +1,173 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.common.Metrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Cache for parsed Fitbit responses, keyed by resource and date.
+ * <p>
+ * Data of past days doesn't change anymore and is kept until it is evicted. Data of the current day
+ * is still being synced from the device and is only kept for {@code recentTtl}, and so is the day before,
+ * which still gets late uploads. The cache doesn't know the time zones of the users, the current day is the
+ * one of the time zone that is furthest behind, so it is never over for a user whose day isn't. The cache
+ * holds at most {@code maxEntries} responses and evicts the least recently used one when it is full.
+ * <p>
+ * A response that was fetched while its key got invalidated may be from before the change and is not cached.
+ */
+public class FitbitCache {
+
+  public record Settings(int maxEntries, Duration recentTtl) {}
+
+  record Key(String resource, LocalDate date) {}
+
+  private record Entry(Object value, long expiresAt) {}
+
+  private record Invalidation(LocalDate from, long generation) {}
+
+  static final String HITS = "fitbit.cache.hits";
+  static final String MISSES = "fitbit.cache.misses";
+  static final String EVICTIONS = "fitbit.cache.evictions";
+
+  // the time zone in which the current day starts last
+  private static final ZoneOffset LATEST_ZONE = ZoneOffset.ofHours(-12);
+
+  private final Settings settings;
+  private final Clock clock;
+  private final Map<Key, Entry> entries;
+  // guarded by entries, the invalidations are only kept while fetches are in flight
+  private final Map<String, Invalidation> invalidations = new HashMap<>();
+  private long generation;
+  private int fetching;
+
+  public FitbitCache(Settings settings) {
+    this(settings, Clock.systemDefaultZone());
+  }
+
+  FitbitCache(Settings settings, Clock clock) {
+    this.settings = settings;
+    this.clock = clock;
+    // access order turns the LinkedHashMap into an LRU
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        if (size() > settings.maxEntries()) {
+          Metrics.counter(EVICTIONS).increment();
+          return true;
+        }
+        return false;
+      }
+    };
+    Metrics.gauge("fitbit.cache.size", this::size);
+    Metrics.gauge("fitbit.cache.hit-rate", () -> Metrics.ratio(HITS, MISSES));
+  }
+
+  /**
+   * A cache that never keeps anything.
+   */
+  public static FitbitCache disabled() {
+    return new FitbitCache(new Settings(0, Duration.ZERO));
+  }
+
+  /**
+   * Returns the cached value for the resource and date or fetches and caches it. Only successful results are
+   * cached. Concurrent callers for the same key that miss will each fetch.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletionStage<T> getOrFetchAsync(String resource, LocalDate date, Supplier<CompletionStage<T>> fetch) {
+    var key = new Key(resource, date);
+    long now = clock.millis();
+
+    synchronized (entries) {
+      var entry = entries.get(key);
+      if (entry != null && entry.expiresAt() > now) {
+        Metrics.counter(HITS).increment();
+        return CompletableFuture.completedFuture((T) entry.value());
+      }
+    }
+
+    Metrics.counter(MISSES).increment();
+    return fetchAsync(key, now, fetch);
+  }
+
+  /**
+   * Fetches the value for the resource and date even if it is cached, and caches it in place of the cached one.
+   */
+  public <T> CompletionStage<T> refreshAsync(String resource, LocalDate date, Supplier<CompletionStage<T>> fetch) {
+    return fetchAsync(new Key(resource, date), clock.millis(), fetch);
+  }
+
+  /**
+   * Removes the responses of the resources that start with the prefix and are cached for the date or a later one.
+   * Responses of date ranges are cached for the end of the range, so this includes the ranges that may contain
+   * the date.
+   */
+  public void invalidateFrom(String resourcePrefix, LocalDate date) {
+    synchronized (entries) {
+      entries.keySet().removeIf(key -> key.resource().startsWith(resourcePrefix) && !key.date().isBefore(date));
+      if (fetching > 0) {
+        var invalidation = new Invalidation(date, ++generation);
+        invalidations.merge(resourcePrefix, invalidation, (previous, latest) ->
+            new Invalidation(previous.from().isBefore(latest.from()) ? previous.from() : latest.from(), latest.generation()));
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private <T> CompletionStage<T> fetchAsync(Key key, long now, Supplier<CompletionStage<T>> fetch) {
+    long startedAt = startFetch();
+    CompletionStage<T> fetched;
+    try {
+      fetched = fetch.get();
+    } catch (RuntimeException e) {
+      finishFetch(key, startedAt, now, false, null);
+      throw e;
+    }
+    return fetched.whenComplete((value, error) -> finishFetch(key, startedAt, now, error == null, value));
+  }
+
+  private long startFetch() {
+    synchronized (entries) {
+      fetching++;
+      return generation;
+    }
+  }
+
+  private void finishFetch(Key key, long startedAt, long now, boolean succeeded, Object value) {
+    synchronized (entries) {
+      if (succeeded && settings.maxEntries() > 0 && !invalidatedSince(key, startedAt))
+        entries.put(key, new Entry(value, expiresAt(key.date(), now)));
+      if (--fetching == 0)
+        invalidations.clear();
+    }
+  }
+
+  private boolean invalidatedSince(Key key, long startedAt) {
+    return invalidations.entrySet().stream().anyMatch(invalidation ->
+        invalidation.getValue().generation() > startedAt
+            && key.resource().startsWith(invalidation.getKey())
+            && !key.date().isBefore(invalidation.getValue().from()));
+  }
+
+  private long expiresAt(LocalDate date, long now) {
+    var yesterday = LocalDate.now(clock.withZone(LATEST_ZONE)).minusDays(1);
+    if (date.isBefore(yesterday))
+      return Long.MAX_VALUE;
+    else
+      return now + settings.recentTtl().toMillis();
+  }
+}
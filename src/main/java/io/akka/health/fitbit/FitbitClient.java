@@ -1,11 +1,15 @@
 package io.akka.health.fitbit;
 
+import akka.http.javadsl.model.HttpHeader;
 import akka.http.javadsl.model.headers.HttpCredentials;
 import akka.javasdk.http.HttpClient;
+import akka.javasdk.http.StrictResponse;
+import akka.util.ByteString;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.akka.health.fitbit.model.*;
 import io.akka.health.common.KeyUtils;
+import io.akka.health.common.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,11 +18,18 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 
 public class FitbitClient {
@@ -28,19 +39,52 @@ public class FitbitClient {
     private static final String REDIRECT_URI = "https://janikdotzel.com/";
     private static final String SCOPE = "heartrate activity sleep weight";
     private static final Logger logger = LoggerFactory.getLogger(FitbitClient.class);
+    private static final int MAX_ACTIVITY_LOGS = 100;
+    private static final String RATE_LIMIT_REMAINING = "Fitbit-Rate-Limit-Remaining";
+    private static final String RATE_LIMIT_RESET = "Fitbit-Rate-Limit-Reset";
+    // the token of a deployment that serves a single Fitbit account is valid for 8 hours
+    private static final long SHARED_TOKEN_EXPIRES_IN = 28800;
 
     private final ObjectMapper objectMapper;
     private final FitbitParser parser;
     private final String clientId;
     private final String clientSecret;
     private final HttpClient httpClient;
-
-    private String accessToken;
-    private String refreshToken;
-    private long expiresAt;
-    private String codeVerifier;
+    private final FitbitCache cache;
+
+    private final FitbitRateLimiter rateLimiter;
+    private final FitbitRateLimiter.Priority priority;
+    // the tokens are shared with the views of this client
+    private final FitbitTokenStore tokens;
+    private final FitbitTokenRefresher refresher;
+    // concurrent fetches of the same data share one request, see get and fetchAsync
+    private final RequestCoalescer inFlight;
+    // whether this view bypasses the cache and the fetches in flight, see fresh
+    private final boolean fresh;
+    // the user whose data this view fetches, see forUser
+    private final String userId;
 
     public FitbitClient(HttpClient httpClient) {
+        this(httpClient, FitbitCache.disabled());
+    }
+
+    public FitbitClient(HttpClient httpClient, FitbitCache cache) {
+        this(httpClient, cache, new FitbitRateLimiter(FitbitRateLimiter.Settings.defaults()));
+    }
+
+    public FitbitClient(HttpClient httpClient, FitbitCache cache, FitbitRateLimiter rateLimiter) {
+        this(httpClient, cache, rateLimiter, FitbitTokenStore.inMemory());
+    }
+
+    public FitbitClient(HttpClient httpClient, FitbitCache cache, FitbitRateLimiter rateLimiter, FitbitTokenStore tokens) {
+        this.cache = cache;
+        this.rateLimiter = rateLimiter;
+        this.priority = FitbitRateLimiter.Priority.INTERACTIVE;
+        this.tokens = tokens;
+        this.refresher = new FitbitTokenRefresher(tokens, this::refreshAccessToken);
+        this.inFlight = new RequestCoalescer("fitbit.coalesced");
+        this.fresh = false;
+        this.userId = FitbitTokenStore.SHARED_USER;
         this.objectMapper = new ObjectMapper();
         this.parser = new FitbitParser();
         this.clientId = KeyUtils.readFitbitClientId();
@@ -48,8 +92,8 @@ public class FitbitClient {
         this.httpClient = httpClient;
 
         if (KeyUtils.hasFitbitAccessToken()) {
-            setTokens(KeyUtils.readFitbitAccessToken(), "", 28800);
-            logger.info("Using access token from environment variable");
+            setTokens(KeyUtils.readFitbitAccessToken(), "", SHARED_TOKEN_EXPIRES_IN);
+            logger.info("Using access token from environment variable for users without a token of their own");
         } else if (KeyUtils.hasFitbitKeys()) {
             logger.info("Using client ID and secret from environment variable");
         } else {
@@ -57,26 +101,80 @@ public class FitbitClient {
         }
     }
 
-    public String getAuthorizationUrl() {
-        if (this.codeVerifier == null) {
-            generateCodeVerifier();
-        }
+    private FitbitClient(FitbitClient client, String userId, FitbitRateLimiter.Priority priority, boolean fresh) {
+        this.cache = client.cache;
+        this.rateLimiter = client.rateLimiter;
+        this.priority = priority;
+        this.tokens = client.tokens;
+        this.refresher = client.refresher;
+        this.inFlight = client.inFlight;
+        this.fresh = fresh;
+        this.userId = userId;
+        this.objectMapper = client.objectMapper;
+        this.parser = client.parser;
+        this.clientId = client.clientId;
+        this.clientSecret = client.clientSecret;
+        this.httpClient = client.httpClient;
+    }
 
-        String codeChallenge = generateCodeChallenge(this.codeVerifier);
+    /**
+     * The same client for work that nobody is waiting for, like the daily digest. Its requests leave a reserve of
+     * the Fitbit quota to the interactive ones and rather wait for the quota to reset, see {@link FitbitRateLimiter}.
+     */
+    public FitbitClient background() {
+        return new FitbitClient(this, userId, FitbitRateLimiter.Priority.BACKGROUND, fresh);
+    }
 
-        return AUTH_URL + "?" +
+    /**
+     * The same client for data that is known to have changed, like the days that Fitbit notified about. Its fetches
+     * neither read the cache nor join the fetches in flight, which may have started before the change, and their
+     * results replace the cached ones.
+     */
+    public FitbitClient fresh() {
+        return new FitbitClient(this, userId, priority, true);
+    }
+
+    /**
+     * The same client for the data of one user. All fetches and the authorization flow of the returned client are
+     * for that user: they are sent with the user's token, count against the user's quota and are cached per user.
+     * A user without a token of their own may use the token from {@code FITBIT_ACCESS_TOKEN}, see {@link FitbitTokenStore}.
+     */
+    public FitbitClient forUser(String userId) {
+        return new FitbitClient(this, userId, priority, fresh);
+    }
+
+    /**
+     * An authorization that was started: the url the user grants access at, the state Fitbit passes back with the
+     * authorization code and the PKCE code verifier the code is exchanged with. The caller keeps the state and the
+     * code verifier until the code comes back, see {@link #exchangeCodeForAccessToken}.
+     */
+    public record PendingAuthorization(String url, String state, String codeVerifier) {}
+
+    /**
+     * Starts an authorization with a new random state and code verifier.
+     */
+    public PendingAuthorization authorize() {
+        // unguessable like the code verifier, and URL safe as well
+        String state = generateCodeVerifier();
+        String codeVerifier = generateCodeVerifier();
+
+        String codeChallenge = generateCodeChallenge(codeVerifier);
+
+        var url = AUTH_URL + "?" +
                 "client_id=" + clientId +
                 "&response_type=code" +
                 "&code_challenge=" + codeChallenge +
                 "&code_challenge_method=S256" +
+                "&state=" + state +
                 "&redirect_uri=" + URLEncoder.encode(REDIRECT_URI, StandardCharsets.UTF_8) +
                 "&scope=" + URLEncoder.encode(SCOPE, StandardCharsets.UTF_8);
+        return new PendingAuthorization(url, state, codeVerifier);
     }
 
-    public TokenResponse exchangeCodeForAccessToken(String authCode) {
-        if (this.codeVerifier == null) {
-            throw new IllegalStateException("Code verifier not generated. Call getAuthorizationUrl() first.");
-        }
+    /**
+     * Exchanges the authorization code for the tokens of the user of this client. Completes when they are stored.
+     */
+    public CompletionStage<TokenResponse> exchangeCodeForAccessToken(String authCode, String codeVerifier) {
 
         String authHeader = "Basic " + Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
         logger.info("Using client ID: {}", clientId);
@@ -92,185 +190,340 @@ public class FitbitClient {
         logger.debug("Request body: {}", formDataString);
         logger.info("Sending request to Fitbit API token endpoint: {}", TOKEN_URL);
 
-        var response = httpClient
+        return httpClient
                 .POST(TOKEN_URL)
                 .addHeader("Content-Type", "application/x-www-form-urlencoded")
                 .addHeader("Accept", "application/json")
                 .addHeader("Authorization", authHeader)
                 .withRequestBody(formDataString)
-                .invoke();
-
-        int statusCode = response.status().intValue();
-        String responseBody = response.body().utf8String();
-
-        logger.info("Received response with status code: {}", statusCode);
-        logger.debug("Response body: {}", responseBody);
-
-        if (statusCode == 200) {
-            try {
-                logger.info("Successfully obtained access token");
-                return parseTokenResponse(responseBody);
-            } catch (Exception e) {
-                logger.error("Failed to parse token response", e);
-                throw new RuntimeException("Failed to parse token response", e);
-            }
-        } else {
-            logger.error("Failed to get token with authorization code: {} - {}", statusCode, responseBody);
+                .invokeAsync()
+                .thenCompose(response -> {
+                    int statusCode = response.status().intValue();
+                    String responseBody = response.body().utf8String();
+
+                    logger.info("Received response with status code: {}", statusCode);
+                    logger.debug("Response body: {}", responseBody);
+
+                    if (statusCode == 200) {
+                        TokenResponse tokenResponse;
+                        try {
+                            tokenResponse = parseTokenResponse(responseBody);
+                        } catch (Exception e) {
+                            logger.error("Failed to parse token response", e);
+                            throw new RuntimeException("Failed to parse token response", e);
+                        }
+                        logger.info("Successfully obtained access token for user {}", userId);
+                        return setTokens(tokenResponse.accessToken, tokenResponse.refreshToken, tokenResponse.expiresIn)
+                                .thenApply(__ -> tokenResponse);
+                    } else {
+                        logger.error("Failed to get token with authorization code: {} - {}", statusCode, responseBody);
+
+                        // Check for specific error conditions
+                        if (statusCode == 403) {
+                            logger.error("403 Forbidden error. This could be due to incorrect client ID/secret, " +
+                                    "invalid scope, or the application not being registered as an OAuth 2.0 Server type.");
+                        }
+
+                        throw new RuntimeException("Failed to get token with authorization code: " + statusCode + " - " + responseBody);
+                    }
+                });
+    }
 
-            // Check for specific error conditions
-            if (statusCode == 403) {
-                logger.error("403 Forbidden error. This could be due to incorrect client ID/secret, " +
-                        "invalid scope, or the application not being registered as an OAuth 2.0 Server type.");
-            }
+    /*
+     * Every resource has a blocking getter and a CompletionStage variant. The blocking getters wait for the
+     * asynchronous ones, so both share the cache and the metrics.
+     */
 
-            throw new RuntimeException("Failed to get token with authorization code: " + statusCode + " - " + responseBody);
-        }
+    public HeartRateData getHeartRateByDate(LocalDate date) {
+        return await(getHeartRateByDateAsync(date));
     }
 
-    public HeartRateData getHeartRateByDate(LocalDate date) {
-        ensureValidToken();
-
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String url = API_BASE_URL + "/1/user/-/activities/heart/date/" + dateStr + "/1d.json";
-
-        var response = httpClient
-                .GET(url)
-                .addCredentials(HttpCredentials.createOAuth2BearerToken(accessToken))
-                .invoke();
-
-        if (response.status().intValue() == 200) {
-            try {
-                return parser.parseHeartRateData(response.body().utf8String());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse heart rate data", e);
-            }
-        } else {
-            throw new RuntimeException("Failed to get heart rate data: " + response.status() + " - " + response.body().utf8String());
-        }
+    public CompletionStage<HeartRateData> getHeartRateByDateAsync(LocalDate date) {
+        return get("heart-rate", date, "heart-rate",
+                "/1/user/-/activities/heart/date/" + iso(date) + "/1d.json", "heart rate data", parser::parseHeartRateData);
+    }
+
+    /**
+     * The intraday heart rate of a day in primitive arrays, for scans over all readings. It is parsed with
+     * {@link FitbitParser#parseHeartRateSeries(String)} and cached separately from {@link #getHeartRateByDate(LocalDate)}.
+     */
+    public HeartRateSeries getHeartRateSeriesByDate(LocalDate date) {
+        return await(getHeartRateSeriesByDateAsync(date));
+    }
+
+    public CompletionStage<HeartRateSeries> getHeartRateSeriesByDateAsync(LocalDate date) {
+        return get("heart-rate-series", date, "heart-rate-series",
+                "/1/user/-/activities/heart/date/" + iso(date) + "/1d.json", "heart rate data", parser::parseHeartRateSeries);
     }
 
     public ActiveZoneMinutesData getActiveZoneMinutesByDate(LocalDate date) {
-        ensureValidToken();
-
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String url = API_BASE_URL + "/1/user/-/activities/active-zone-minutes/date/" + dateStr + "/1d.json";
-
-        var response = httpClient
-                .GET(url)
-                .addCredentials(HttpCredentials.createOAuth2BearerToken(accessToken))
-                .invoke();
-
-        if (response.status().intValue() == 200) {
-            try {
-                return parser.parseActiveZoneMinutesData(response.body().utf8String());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse Active Zone Minutes data", e);
-            }
-        } else {
-            throw new RuntimeException("Failed to get Active Zone Minutes data: " + response.status() + " - " + response.body().utf8String());
-        }
+        return await(getActiveZoneMinutesByDateAsync(date));
+    }
+
+    public CompletionStage<ActiveZoneMinutesData> getActiveZoneMinutesByDateAsync(LocalDate date) {
+        return get("active-zone-minutes", date, "active-zone-minutes",
+                "/1/user/-/activities/active-zone-minutes/date/" + iso(date) + "/1d.json", "Active Zone Minutes data", parser::parseActiveZoneMinutesData);
+    }
+
+    /**
+     * Active Zone Minutes of every day from start to end (both inclusive) in a single request. Fitbit allows
+     * ranges of up to 1095 days.
+     */
+    public ActiveZoneMinutesData getActiveZoneMinutesByDateRange(LocalDate start, LocalDate end) {
+        return await(getActiveZoneMinutesByDateRangeAsync(start, end));
+    }
+
+    public CompletionStage<ActiveZoneMinutesData> getActiveZoneMinutesByDateRangeAsync(LocalDate start, LocalDate end) {
+        return get("active-zone-minutes:" + start, end, "active-zone-minutes-range",
+                "/1/user/-/activities/active-zone-minutes/date/" + iso(start) + "/" + iso(end) + ".json", "Active Zone Minutes data", parser::parseActiveZoneMinutesData);
+    }
+
+    /**
+     * Daily totals of an activity resource (e.g. "steps", "calories", "distance") from start to end (both inclusive)
+     * in a single request.
+     */
+    public ActivityTimeSeries getActivityTimeSeries(String resource, LocalDate start, LocalDate end) {
+        return await(getActivityTimeSeriesAsync(resource, start, end));
+    }
+
+    public CompletionStage<ActivityTimeSeries> getActivityTimeSeriesAsync(String resource, LocalDate start, LocalDate end) {
+        return get(resource + ":" + start, end, "activity-series",
+                "/1/user/-/activities/" + resource + "/date/" + iso(start) + "/" + iso(end) + ".json", resource + " time series",
+                json -> parser.parseActivityTimeSeries(json, resource));
+    }
+
+    /**
+     * The logged and auto-detected activities that started from start to end (both inclusive), oldest first.
+     * Fitbit only pages forward from a date, so the page is cut at the end date. A page holds at most 100 activities,
+     * which is plenty for the ranges the agent asks for.
+     */
+    public ActivityLogList getActivityLogByDateRange(LocalDate start, LocalDate end) {
+        return await(getActivityLogByDateRangeAsync(start, end));
+    }
+
+    public CompletionStage<ActivityLogList> getActivityLogByDateRangeAsync(LocalDate start, LocalDate end) {
+        return get("activity-log:" + start, end, "activity-log",
+                "/1/user/-/activities/list.json?afterDate=" + iso(start) + "T00:00:00&sort=asc&offset=0&limit=" + MAX_ACTIVITY_LOGS,
+                "activity log list", json -> {
+                    var list = parser.parseActivityLogList(json);
+                    var activities = list.activities() == null ? List.<ActivityLogList.ActivityLog>of() : list.activities();
+                    if (activities.size() == MAX_ACTIVITY_LOGS) {
+                        logger.warn("Activity log from {} to {} reached the page limit of {} entries, later activities are missing", start, end, MAX_ACTIVITY_LOGS);
+                    }
+                    return new ActivityLogList(activities.stream()
+                            .filter(activity -> activity.startTime() == null || !activity.startTime().toLocalDate().isAfter(end))
+                            .toList(), list.pagination());
+                });
     }
 
     public SleepLogData getSleepLogByDate(LocalDate date) {
-        ensureValidToken();
-
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String url = API_BASE_URL + "/1.2/user/-/sleep/date/" + dateStr + ".json";
-
-        var response = httpClient
-                .GET(url)
-                .addCredentials(HttpCredentials.createOAuth2BearerToken(accessToken))
-                .invoke();
-
-        if (response.status().intValue() == 200) {
-            try {
-                return parser.parseSleepLogData(response.body().utf8String());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse sleep log data", e);
-            }
-        } else {
-            throw new RuntimeException("Failed to get sleep log data: " + response.status() + " - " + response.body().utf8String());
-        }
+        return await(getSleepLogByDateAsync(date));
+    }
+
+    public CompletionStage<SleepLogData> getSleepLogByDateAsync(LocalDate date) {
+        return get("sleep", date, "sleep",
+                "/1.2/user/-/sleep/date/" + iso(date) + ".json", "sleep log data", parser::parseSleepLogData);
+    }
+
+    /**
+     * All sleep logs from start to end (both inclusive) in a single request. Fitbit allows ranges of up to 100 days.
+     * The summary of the response is empty for ranges, only the sleep logs are filled.
+     */
+    public SleepLogData getSleepLogByDateRange(LocalDate start, LocalDate end) {
+        return await(getSleepLogByDateRangeAsync(start, end));
+    }
+
+    public CompletionStage<SleepLogData> getSleepLogByDateRangeAsync(LocalDate start, LocalDate end) {
+        return get("sleep:" + start, end, "sleep-range",
+                "/1.2/user/-/sleep/date/" + iso(start) + "/" + iso(end) + ".json", "sleep log data", parser::parseSleepLogData);
     }
 
     public WeightLogData getWeightLogByDate(LocalDate date) {
-        ensureValidToken();
-
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String url = API_BASE_URL + "/1/user/-/body/log/weight/date/" + dateStr + ".json";
-
-        var response = httpClient
-                .GET(url)
-                .addCredentials(HttpCredentials.createOAuth2BearerToken(accessToken))
-                .invoke();
-
-        if (response.status().intValue() == 200) {
-            try {
-                return parser.parseWeightLogData(response.body().utf8String());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse weight log data", e);
-            }
-        } else {
-            throw new RuntimeException("Failed to get weight log data: " + response.status() + " - " + response.body().utf8String());
-        }
+        return await(getWeightLogByDateAsync(date));
+    }
+
+    public CompletionStage<WeightLogData> getWeightLogByDateAsync(LocalDate date) {
+        return get("weight", date, "weight",
+                "/1/user/-/body/log/weight/date/" + iso(date) + ".json", "weight log data", parser::parseWeightLogData);
     }
 
     public DailyActivitySummary getDailyActivitySummary(LocalDate date) {
-        ensureValidToken();
+        return await(getDailyActivitySummaryAsync(date));
+    }
 
-        String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String url = API_BASE_URL + "/1/user/-/activities/date/" + dateStr + ".json";
+    public CompletionStage<DailyActivitySummary> getDailyActivitySummaryAsync(LocalDate date) {
+        return get("activities", date, "activities",
+                "/1/user/-/activities/date/" + iso(date) + ".json", "daily activity summary", parser::parseDailyActivitySummary);
+    }
 
-        var response = httpClient
-                .GET(url)
-                .addCredentials(HttpCredentials.createOAuth2BearerToken(accessToken))
-                .invoke();
+    /**
+     * Subscribes to the notifications about changes of any data of the user, see {@link FitbitSubscriptions}. The
+     * user id is the subscription id, so that the notifications tell whose data changed. Subscribing again is fine.
+     */
+    public CompletionStage<Void> subscribe() {
+        var url = "/1/user/-/apiSubscriptions/" + URLEncoder.encode(userId, StandardCharsets.UTF_8) + ".json";
+        return sendWithinQuota(token -> httpClient
+                .POST(API_BASE_URL + url)
+                .addCredentials(HttpCredentials.createOAuth2BearerToken(token.accessToken()))
+                .invokeAsync())
+                .thenApply(response -> {
+                    int status = response.status().intValue();
+                    // 409: the subscription exists already
+                    if (status != 200 && status != 201 && status != 409) {
+                        throw new RuntimeException("Failed to subscribe to the notifications of user " + userId + ": " + response.status() + " - " + response.body().utf8String());
+                    }
+                    logger.info("Subscribed to the Fitbit notifications of user {}", userId);
+                    return null;
+                });
+    }
 
-        logger.info("Response: {}", response.body().utf8String());
-        logger.info("Status: {}", response.status().intValue());
+    /**
+     * Drops the cached responses of the user for the date and later, because Fitbit notified that the data of the
+     * date changed. Fetches in flight that started before don't cache their responses. The cache is the one of this
+     * node, use {@link #fresh()} where the data must be current.
+     */
+    public void invalidateFrom(LocalDate date) {
+        cache.invalidateFrom(userId + "/", date);
+    }
 
+    @FunctionalInterface
+    private interface Parse<T> {
+        T apply(String json) throws Exception;
+    }
 
-        if (response.status().intValue() == 200) {
-            try {
-                return parser.parseDailyActivitySummary(response.body().utf8String());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse daily activity summary", e);
-            }
-        } else {
-            throw new RuntimeException("Failed to get daily activity summary: " + response.status() + " - " + response.body().utf8String());
-        }
+    /*
+     * Keys of the fetches in flight. They include the priority, so that an agent request never waits behind a
+     * background request that is queued for the quota.
+     */
+    private record ParsedKey(String userId, FitbitRateLimiter.Priority priority, String resource, LocalDate date) {}
+
+    private record ResponseKey(String userId, FitbitRateLimiter.Priority priority, String url) {}
+
+    /**
+     * Looks the resource of the user up in the cache or fetches it, recording the latency of the fetch in
+     * {@code latency.fitbit.<metric>}. The cache entry expires according to cacheDate. Callers that miss the cache
+     * while the same resource is being fetched get the result of that fetch, unless they are {@link #fresh()}.
+     */
+    private <T> CompletionStage<T> get(String resource, LocalDate cacheDate, String metric, String url, String what, Parse<T> parse) {
+        if (fresh)
+            return cache.refreshAsync(userId + "/" + resource, cacheDate, () ->
+                    Metrics.timeAsync("latency.fitbit." + metric, () -> fetchAsync(url, what, parse)));
+        return cache.getOrFetchAsync(userId + "/" + resource, cacheDate, () ->
+                inFlight.coalesce(new ParsedKey(userId, priority, resource, cacheDate), () ->
+                        Metrics.timeAsync("latency.fitbit." + metric, () -> fetchAsync(url, what, parse))));
+    }
+
+    /**
+     * GETs the url with the access token of the user without blocking and parses the response body. Resources that
+     * are parsed differently from the same url, like the heart rate summary and series, share the request when they
+     * are fetched at the same time.
+     */
+    private <T> CompletionStage<T> fetchAsync(String url, String what, Parse<T> parse) {
+        var response = fresh
+                ? sendWithinQuota(token -> send(url, token))
+                : inFlight.coalesce(new ResponseKey(userId, priority, url), () -> sendWithinQuota(token -> send(url, token)));
+        return response
+                .thenApply(response -> {
+                    int status = response.status().intValue();
+                    if (status == 200) {
+                        try {
+                            return parse.apply(response.body().utf8String());
+                        } catch (Exception e) {
+                            throw new RuntimeException("Failed to parse " + what, e);
+                        }
+                    } else if (status == 429) {
+                        var retryAfter = header(response, RATE_LIMIT_RESET)
+                                .flatMap(FitbitRateLimiter::parseInt)
+                                .map(seconds -> Duration.ofSeconds(seconds))
+                                .orElse(Duration.ZERO);
+                        throw new FitbitRateLimiter.RateLimited("Fitbit rate limit reached while getting " + what + ", retry in " + retryAfter.toSeconds() + " s", retryAfter);
+                    } else {
+                        throw new RuntimeException("Failed to get " + what + ": " + response.status() + " - " + response.body().utf8String());
+                    }
+                });
+    }
+
+    /**
+     * Sends the request once the {@link FitbitRateLimiter} admits it and reports the rate limit headers of the
+     * response back to it. The quota is the one of the token's owner, users that share a token share its quota.
+     */
+    private CompletionStage<StrictResponse<ByteString>> sendWithinQuota(
+            Function<FitbitTokenStore.Token, CompletionStage<StrictResponse<ByteString>>> request) {
+        return refresher.validToken(userId).thenCompose(token -> rateLimiter.acquire(token.userId(), priority)
+                .thenCompose(__ -> request.apply(token).whenComplete((response, error) -> {
+                    if (response != null) {
+                        rateLimiter.completed(token.userId(), response.status().intValue(),
+                                header(response, RATE_LIMIT_REMAINING), header(response, RATE_LIMIT_RESET));
+                    } else {
+                        rateLimiter.failed(token.userId());
+                    }
+                })));
     }
 
-    private void ensureValidToken() {
-        if (accessToken == null)
-            throw new IllegalStateException("No access token available");
+    private CompletionStage<StrictResponse<ByteString>> send(String url, FitbitTokenStore.Token token) {
+        return httpClient
+                .GET(API_BASE_URL + url)
+                .addCredentials(HttpCredentials.createOAuth2BearerToken(token.accessToken()))
+                .invokeAsync();
+    }
+
+    private static Optional<String> header(StrictResponse<ByteString> response, String name) {
+        return response.httpResponse().getHeader(name).map(HttpHeader::value);
+    }
+
+    /**
+     * Waits for the stage and throws its failure as is, like the blocking calls did before they had an
+     * asynchronous variant.
+     */
+    private static <T> T await(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
 
-        if (System.currentTimeMillis() >= expiresAt)
-            refreshAccessToken();
+    private static String iso(LocalDate date) {
+        return date.format(DateTimeFormatter.ISO_LOCAL_DATE);
     }
 
     private TokenResponse parseTokenResponse(String json) {
         try {
-            TokenResponse response = objectMapper.readValue(json, TokenResponse.class);
-            setTokens(response.accessToken, response.refreshToken, response.expiresIn);
-            return response;
+            return objectMapper.readValue(json, TokenResponse.class);
         } catch (Exception e) {
             throw new RuntimeException("Failed to parse token response", e);
         }
     }
 
-    public void setTokens(String accessToken, String refreshToken, long expiresIn) {
-        this.accessToken = accessToken;
-        this.refreshToken = refreshToken;
-        this.expiresAt = System.currentTimeMillis() + (expiresIn * 1000);
+    /**
+     * Sets the tokens of the user of this client, or the shared tokens on a client that isn't for a single user.
+     * Completes when they are stored, this node uses them right away.
+     */
+    public CompletionStage<FitbitTokenStore.Token> setTokens(String accessToken, String refreshToken, long expiresIn) {
+        return storeTokens(token(userId, accessToken, refreshToken, expiresIn));
+    }
+
+    private static FitbitTokenStore.Token token(String owner, String accessToken, String refreshToken, long expiresIn) {
+        long now = System.currentTimeMillis();
+        return new FitbitTokenStore.Token(owner, accessToken, refreshToken, now + (expiresIn * 1000),
+                FitbitTokenRefresher.refreshAt(now, expiresIn));
+    }
+
+    /**
+     * Stores the token and schedules its refresh ahead of the expiry, see {@link FitbitTokenRefresher}.
+     */
+    private CompletionStage<FitbitTokenStore.Token> storeTokens(FitbitTokenStore.Token token) {
+        var stored = tokens.put(token);
+        refresher.schedule(token);
+        return stored.thenApply(__ -> token);
     }
 
     private String generateCodeVerifier() {
         SecureRandom secureRandom = new SecureRandom();
         byte[] codeVerifierBytes = new byte[64]; // 64 bytes will give us a 86-character code verifier
         secureRandom.nextBytes(codeVerifierBytes);
-        this.codeVerifier = Base64.getUrlEncoder().withoutPadding().encodeToString(codeVerifierBytes);
-        return this.codeVerifier;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(codeVerifierBytes);
     }
 
     private String generateCodeChallenge(String codeVerifier) {
@@ -283,38 +536,41 @@ public class FitbitClient {
         }
     }
 
-    private TokenResponse refreshAccessToken() {
-        if (refreshToken == null) {
-            throw new IllegalStateException("No refresh token available");
-        }
-
+    /**
+     * Gets a new access token for the owner of the token and stores it. Only called by the {@link FitbitTokenRefresher},
+     * which makes sure that there is one refresh per user at a time.
+     */
+    private CompletionStage<FitbitTokenStore.Token> refreshAccessToken(FitbitTokenStore.Token token) {
         String authHeader = "Basic " + Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
 
         Map<String, String> formData = new HashMap<>();
         formData.put("grant_type", "refresh_token");
-        formData.put("refresh_token", refreshToken);
+        formData.put("refresh_token", token.refreshToken());
 
         String formDataString = formData.entrySet().stream()
                 .map(e -> e.getKey() + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
                 .reduce((a, b) -> a + "&" + b)
                 .orElse("");
 
-        var response = httpClient
+        return httpClient
                 .POST(TOKEN_URL)
                 .addHeader("Content-Type", "application/x-www-form-urlencoded")
                 .addHeader("Authorization", authHeader)
                 .withRequestBody(formDataString)
-                .invoke();
-
-        if (response.status().intValue() == 200) {
-            try {
-                return parseTokenResponse(response.body().utf8String());
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse token response", e);
-            }
-        } else {
-            throw new RuntimeException("Failed to refresh token: " + response.status() + " - " + response.body().utf8String());
-        }
+                .invokeAsync()
+                .thenCompose(response -> {
+                    if (response.status().intValue() == 200) {
+                        var tokenResponse = parseTokenResponse(response.body().utf8String());
+                        var refreshed = token(token.userId(), tokenResponse.accessToken, tokenResponse.refreshToken, tokenResponse.expiresIn);
+                        // Fitbit already revoked the old refresh token, the new one is used even if it can't be stored
+                        return storeTokens(refreshed).exceptionally(error -> {
+                            logger.warn("Could not store the refreshed Fitbit token of user {}, it is lost on restart", token.userId(), error);
+                            return refreshed;
+                        });
+                    } else {
+                        throw new RuntimeException("Failed to refresh token of user " + token.userId() + ": " + response.status() + " - " + response.body().utf8String());
+                    }
+                });
     }
 
     public static class TokenResponse {
@@ -1,10 +1,19 @@
 package io.akka.health.fitbit;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.akka.health.fitbit.model.*;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Parser for Fitbit API responses.
  */
@@ -33,6 +42,147 @@ public class FitbitParser {
         return objectMapper.readValue(json, HeartRateData.class);
     }
 
+    /**
+     * Parses heart rate data from JSON into a {@link HeartRateSeries}. Unlike {@link #parseHeartRateData(String)}
+     * it streams over the response and decodes the intraday dataset straight into primitive arrays, without
+     * creating an object per reading.
+     *
+     * @param json The JSON string to parse.
+     * @return The parsed heart rate series, empty if the response has no intraday dataset.
+     * @throws Exception If parsing fails.
+     */
+    public HeartRateSeries parseHeartRateSeries(String json) throws Exception {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            var series = new SeriesBuilder();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "activities-heart" -> readDailyHeartRate(parser, series);
+                    case "activities-heart-intraday" -> readIntradayHeartRate(parser, series);
+                    default -> parser.skipChildren();
+                }
+            }
+            return series.build();
+        }
+    }
+
+    /**
+     * Reads the date, the resting heart rate and the heart rate zones of the first day of the "activities-heart" array.
+     */
+    private static void readDailyHeartRate(JsonParser parser, SeriesBuilder series) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return;
+        expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            boolean first = series.date == null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if (first && field.equals("dateTime")) {
+                    series.date = LocalDate.parse(parser.getText());
+                } else if (first && field.equals("value") && parser.currentToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String valueField = parser.currentName();
+                        parser.nextToken();
+                        if (valueField.equals("restingHeartRate") && parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+                            series.restingHeartRate = parser.getIntValue();
+                        } else if (valueField.equals("heartRateZones") && parser.currentToken() == JsonToken.START_ARRAY) {
+                            // a handful of objects, bound with the ObjectMapper the parser was created by
+                            series.zones = List.of(parser.readValueAs(HeartRateData.HeartRateZone[].class));
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the "dataset" of the "activities-heart-intraday" object, whose entries look like
+     * {"time": "08:00:00", "value": 64}.
+     */
+    private static void readIntradayHeartRate(JsonParser parser, SeriesBuilder series) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return;
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (!field.equals("dataset")) {
+                parser.skipChildren();
+                continue;
+            }
+            expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int secondOfDay = -1;
+                int bpm = -1;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String pointField = parser.currentName();
+                    parser.nextToken();
+                    if (pointField.equals("time")) {
+                        secondOfDay = secondOfDay(parser);
+                    } else if (pointField.equals("value")) {
+                        bpm = parser.getIntValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (secondOfDay >= 0 && bpm >= 0) series.add(secondOfDay, bpm);
+            }
+        }
+    }
+
+    /**
+     * Decodes a "HH:mm:ss" string from the parser's buffer without creating a String.
+     */
+    private static int secondOfDay(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        if (parser.getTextLength() != 8 || chars[offset + 2] != ':' || chars[offset + 5] != ':') {
+            return LocalTime.parse(parser.getText()).toSecondOfDay();
+        }
+        return twoDigits(chars, offset) * 3600 + twoDigits(chars, offset + 3) * 60 + twoDigits(chars, offset + 6);
+    }
+
+    private static int twoDigits(char[] chars, int offset) {
+        return (chars[offset] - '0') * 10 + (chars[offset + 1] - '0');
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but got " + actual);
+        }
+    }
+
+    /**
+     * Collects the readings into arrays that grow by doubling, sized for a day at one minute resolution.
+     */
+    private static final class SeriesBuilder {
+        LocalDate date;
+        Integer restingHeartRate;
+        List<HeartRateData.HeartRateZone> zones = List.of();
+        int[] secondsOfDay = new int[1440];
+        short[] bpm = new short[1440];
+        int size;
+
+        void add(int secondOfDay, int value) {
+            if (size == bpm.length) {
+                secondsOfDay = Arrays.copyOf(secondsOfDay, size * 2);
+                bpm = Arrays.copyOf(bpm, size * 2);
+            }
+            secondsOfDay[size] = secondOfDay;
+            bpm[size] = (short) value;
+            size++;
+        }
+
+        HeartRateSeries build() {
+            return new HeartRateSeries(date, restingHeartRate, zones, Arrays.copyOf(secondsOfDay, size), Arrays.copyOf(bpm, size));
+        }
+    }
+
     /**
      * Parses active zone minutes data from JSON.
      *
@@ -76,4 +226,33 @@ public class FitbitParser {
     public DailyActivitySummary parseDailyActivitySummary(String json) throws Exception {
         return objectMapper.readValue(json, DailyActivitySummary.class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses an activity time series from JSON. The series is the array under "activities-{resource}",
+     * e.g. "activities-steps".
+     *
+     * @param json The JSON string to parse.
+     * @param resource The resource of the series, e.g. "steps".
+     * @return The parsed time series, empty if the response has no such series.
+     * @throws Exception If parsing fails.
+     */
+    public ActivityTimeSeries parseActivityTimeSeries(String json, String resource) throws Exception {
+        var series = objectMapper.readTree(json).get("activities-" + resource);
+        if (series == null || !series.isArray()) {
+            return new ActivityTimeSeries(resource, List.of());
+        }
+        List<ActivityTimeSeries.DataPoint> dataPoints = objectMapper.readerForListOf(ActivityTimeSeries.DataPoint.class).readValue(series);
+        return new ActivityTimeSeries(resource, dataPoints);
+    }
+
+    /**
+     * Parses the activity log list from JSON.
+     *
+     * @param json The JSON string to parse.
+     * @return The parsed activity log list.
+     * @throws Exception If parsing fails.
+     */
+    public ActivityLogList parseActivityLogList(String json) throws Exception {
+        return objectMapper.readValue(json, ActivityLogList.class);
+    }
+}
@@ -0,0 +1,226 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.common.Metrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules Fitbit requests within the hourly quota of each Fitbit user.
+ * <p>
+ * Fitbit reports the remaining quota and the seconds until it resets in the {@code Fitbit-Rate-Limit-Remaining}
+ * and {@code Fitbit-Rate-Limit-Reset} headers of every response. The limiter tracks both per user and counts
+ * the requests that are in flight against the remaining quota, so that concurrent requests don't overdraw it.
+ * <p>
+ * Interactive requests (agent turns) may use the whole quota. Background requests (digest, sync) stop when
+ * only {@code backgroundReserve} requests are left, so that the user can still ask questions. A request that
+ * doesn't fit waits until the quota resets, interactive ones first. It is rejected with {@link RateLimited}
+ * right away when the reset is further away than the maximum delay of its priority, instead of being sent
+ * and failing with a 429.
+ */
+public class FitbitRateLimiter {
+
+  public record Settings(
+          int hourlyQuota,
+          int backgroundReserve,
+          Duration interactiveMaxDelay,
+          Duration backgroundMaxDelay) {
+
+    /**
+     * Fitbit's default quota of 150 requests per user and hour, without a reserve and without waiting.
+     */
+    public static Settings defaults() {
+      return new Settings(150, 0, Duration.ZERO, Duration.ZERO);
+    }
+  }
+
+  public enum Priority {INTERACTIVE, BACKGROUND}
+
+  public static class RateLimited extends RuntimeException {
+    private final Duration retryAfter;
+
+    RateLimited(String message, Duration retryAfter) {
+      super(message, null, false, false);
+      this.retryAfter = retryAfter;
+    }
+
+    public Duration retryAfter() {
+      return retryAfter;
+    }
+  }
+
+  // assumed when a request has to wait and no response has told yet when the quota resets
+  private static final Duration UNKNOWN_RESET = Duration.ofMinutes(1);
+
+  private record Waiting(CompletableFuture<Void> admitted, long deadline) {}
+
+  private static class Quota {
+    int remaining;
+    long resetAt;
+    int inFlight;
+    final Deque<Waiting> interactive = new ArrayDeque<>();
+    final Deque<Waiting> background = new ArrayDeque<>();
+
+    Deque<Waiting> queue(Priority priority) {
+      return priority == Priority.INTERACTIVE ? interactive : background;
+    }
+  }
+
+  private final Settings settings;
+  private final Clock clock;
+  private final Map<String, Quota> quotas = new HashMap<>();
+
+  public FitbitRateLimiter(Settings settings) {
+    this(settings, Clock.systemUTC());
+  }
+
+  FitbitRateLimiter(Settings settings, Clock clock) {
+    this.settings = settings;
+    this.clock = clock;
+    Metrics.gauge("fitbit.quota.remaining", () -> {
+      synchronized (quotas) {
+        return quotas.values().stream().mapToInt(q -> q.remaining).min().orElse(settings.hourlyQuota());
+      }
+    });
+  }
+
+  /**
+   * Completes when a request of the user may be sent. The caller must call {@link #completed} or {@link #failed}
+   * once the request has finished.
+   */
+  public CompletionStage<Void> acquire(String user, Priority priority) {
+    long now = clock.millis();
+    synchronized (quotas) {
+      var quota = quota(user, now);
+      // a request doesn't overtake waiting requests of its own or of a higher priority
+      boolean queued = !quota.interactive.isEmpty() || (priority == Priority.BACKGROUND && !quota.background.isEmpty());
+      if (!queued && fits(quota, priority)) {
+        admit(quota, priority);
+        return CompletableFuture.completedFuture(null);
+      }
+
+      if (quota.resetAt == 0) quota.resetAt = now + UNKNOWN_RESET.toMillis();
+      long waitMillis = Math.max(0, quota.resetAt - now);
+      var maxDelay = priority == Priority.INTERACTIVE ? settings.interactiveMaxDelay() : settings.backgroundMaxDelay();
+      if (waitMillis > maxDelay.toMillis()) {
+        Metrics.counter("fitbit.quota.rejected." + name(priority)).increment();
+        return CompletableFuture.failedFuture(new RateLimited(
+                "Fitbit rate limit of user " + user + " reached, the quota resets in " + (waitMillis / 1000 + 1) + " s",
+                Duration.ofMillis(waitMillis)));
+      }
+
+      Metrics.counter("fitbit.quota.delayed." + name(priority)).increment();
+      // a second of slack, so that the dispatch at the reset doesn't find it expired because the timer was late
+      var waiting = new Waiting(new CompletableFuture<>(), now + maxDelay.toMillis() + 1000);
+      quota.queue(priority).add(waiting);
+      CompletableFuture.delayedExecutor(waitMillis, TimeUnit.MILLISECONDS).execute(() -> dispatch(user));
+      long start = System.nanoTime();
+      return waiting.admitted().whenComplete((result, error) ->
+              Metrics.histogram("latency.fitbit.quota-wait").record(System.nanoTime() - start));
+    }
+  }
+
+  /**
+   * Updates the quota of the user from the rate limit headers of a response. A 429 without headers means the
+   * quota is used up until the reset Fitbit announced before.
+   */
+  public void completed(String user, int status, Optional<String> remaining, Optional<String> resetSeconds) {
+    long now = clock.millis();
+    synchronized (quotas) {
+      var quota = quota(user, now);
+      quota.inFlight = Math.max(0, quota.inFlight - 1);
+      remaining.flatMap(FitbitRateLimiter::parseInt).ifPresent(value -> quota.remaining = value);
+      resetSeconds.flatMap(FitbitRateLimiter::parseInt).ifPresent(value -> quota.resetAt = now + value * 1000L);
+      if (status == 429) {
+        Metrics.counter("fitbit.quota.too-many-requests").increment();
+        quota.remaining = 0;
+      }
+    }
+    dispatch(user);
+  }
+
+  /**
+   * The request failed without a response, it doesn't tell anything about the quota.
+   */
+  public void failed(String user) {
+    synchronized (quotas) {
+      var quota = quotas.get(user);
+      if (quota != null) quota.inFlight = Math.max(0, quota.inFlight - 1);
+    }
+    dispatch(user);
+  }
+
+  private void dispatch(String user) {
+    long now = clock.millis();
+    Deque<CompletableFuture<Void>> admitted = new ArrayDeque<>();
+    Deque<Waiting> expired = new ArrayDeque<>();
+    synchronized (quotas) {
+      var quota = quotas.get(user);
+      if (quota == null) return;
+      quota(user, now);
+      for (var priority : Priority.values()) {
+        var queue = quota.queue(priority);
+        queue.removeIf(waiting -> waiting.deadline() < now && expired.add(waiting));
+        while (!queue.isEmpty() && fits(quota, priority)) {
+          admit(quota, priority);
+          admitted.add(queue.poll().admitted());
+        }
+        // background requests only get what interactive ones left over
+        if (!queue.isEmpty()) break;
+      }
+      if ((!quota.interactive.isEmpty() || !quota.background.isEmpty()) && quota.resetAt > now) {
+        CompletableFuture.delayedExecutor(quota.resetAt - now, TimeUnit.MILLISECONDS).execute(() -> dispatch(user));
+      }
+    }
+    // complete outside the lock, the callers continue with the request on the completing thread
+    admitted.forEach(future -> future.completeAsync(() -> null));
+    expired.forEach(waiting -> waiting.admitted().completeExceptionally(
+            new RateLimited("Fitbit rate limit of user " + user + " reached, gave up waiting for the reset", Duration.ZERO)));
+  }
+
+  /**
+   * The quota of the user, reset to the full hourly quota when its reset time has passed.
+   */
+  private Quota quota(String user, long now) {
+    var quota = quotas.computeIfAbsent(user, __ -> {
+      var q = new Quota();
+      q.remaining = settings.hourlyQuota();
+      return q;
+    });
+    if (quota.resetAt != 0 && quota.resetAt <= now) {
+      quota.remaining = settings.hourlyQuota();
+      quota.resetAt = 0;
+    }
+    return quota;
+  }
+
+  private boolean fits(Quota quota, Priority priority) {
+    int reserve = priority == Priority.BACKGROUND ? settings.backgroundReserve() : 0;
+    return quota.remaining - quota.inFlight > reserve;
+  }
+
+  private void admit(Quota quota, Priority priority) {
+    quota.inFlight++;
+    Metrics.counter("fitbit.quota.used." + name(priority)).increment();
+  }
+
+  private static String name(Priority priority) {
+    return priority.name().toLowerCase();
+  }
+
+  static Optional<Integer> parseInt(String value) {
+    try {
+      return Optional.of(Integer.parseInt(value.trim()));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+}
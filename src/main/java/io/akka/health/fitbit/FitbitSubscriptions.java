@@ -0,0 +1,67 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.fitbit.model.SubscriptionNotification;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * The subscriber side of the Fitbit Subscriptions API.
+ * <p>
+ * Fitbit verifies a subscriber by calling it with a {@code verify} query parameter: the subscriber answers 204 for
+ * the verification code of the app and 404 for any other code. Notifications are signed with
+ * {@code X-Fitbit-Signature}, the Base64 encoded HMAC-SHA1 of the request body with the client secret followed
+ * by {@code &} as key. Notifications with a wrong signature must be ignored.
+ */
+public class FitbitSubscriptions {
+
+  public static final String SIGNATURE_HEADER = "X-Fitbit-Signature";
+
+  private static final String ALGORITHM = "HmacSHA1";
+
+  private FitbitSubscriptions() {}
+
+  public static boolean isVerificationCode(String verificationCode, String code) {
+    return verificationCode != null && !verificationCode.isEmpty() && verificationCode.equals(code);
+  }
+
+  public static String sign(byte[] body, String clientSecret) {
+    try {
+      var mac = Mac.getInstance(ALGORITHM);
+      mac.init(new SecretKeySpec((clientSecret + "&").getBytes(StandardCharsets.UTF_8), ALGORITHM));
+      return Base64.getEncoder().encodeToString(mac.doFinal(body));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to sign the Fitbit notification", e);
+    }
+  }
+
+  public static boolean hasValidSignature(byte[] body, String signature, String clientSecret) {
+    if (signature == null || clientSecret == null || clientSecret.isEmpty()) return false;
+    // constant time, the comparison mustn't tell how much of a forged signature is right
+    return MessageDigest.isEqual(
+            sign(body, clientSecret).getBytes(StandardCharsets.UTF_8),
+            signature.trim().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Whether the notification is about data the service keeps, so that it has to fetch it again.
+   */
+  public static boolean isDataChange(SubscriptionNotification notification) {
+    if (notification.collectionType() == null || notification.date() == null) return false;
+    try {
+      LocalDate.parse(notification.date());
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+    return switch (notification.collectionType()) {
+      case SubscriptionNotification.ACTIVITIES, SubscriptionNotification.SLEEP, SubscriptionNotification.BODY -> true;
+      default -> false;
+    };
+  }
+}
@@ -0,0 +1,200 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.common.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Refreshes the access tokens of the {@link FitbitTokenStore} ahead of their expiry, so that requests don't wait
+ * for the token endpoint.
+ * <p>
+ * A token is refreshed once {@link #REFRESH_AT} of its lifetime has passed: by a timer, or by the first request
+ * that sees it if the timer hasn't fired yet, e.g. after a restart. Either way the request is sent with the current
+ * token, which is still valid, and the refresh runs in the background. Only a request that finds the token already
+ * expired waits for the refresh.
+ * <p>
+ * There is at most one refresh per user in flight in the whole cluster. Fitbit refresh tokens can be used only once,
+ * a second concurrent refresh with the same refresh token would fail and could leave the user without a valid token.
+ * The callers on one node share the refresh in flight. Across nodes, a refresh starts from the stored token instead
+ * of the one in memory, and the node claims it in the {@link FitbitTokenStore} first, the other nodes wait until the
+ * stored token changes.
+ */
+public class FitbitTokenRefresher {
+
+  /**
+   * The fraction of the token lifetime after which it is refreshed.
+   */
+  public static final double REFRESH_AT = 0.8;
+
+  // until a failed background refresh is tried again, as long as the token hasn't expired
+  private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+  // how long a node may take to refresh a token before another node may try, much longer than a token request takes
+  static final Duration REFRESH_LEASE = Duration.ofSeconds(30);
+  // how often a node that waits for the refresh of another node looks for its token
+  private static final Duration CLAIM_POLL = Duration.ofMillis(500);
+
+  private static final Logger logger = LoggerFactory.getLogger(FitbitTokenRefresher.class);
+
+  private final FitbitTokenStore tokens;
+  private final Function<FitbitTokenStore.Token, CompletionStage<FitbitTokenStore.Token>> refresh;
+  private final Clock clock;
+  private final Map<String, CompletableFuture<FitbitTokenStore.Token>> inFlight = new ConcurrentHashMap<>();
+  private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param refresh gets a new token for the owner of the given one from Fitbit and stores it
+   */
+  public FitbitTokenRefresher(FitbitTokenStore tokens,
+                              Function<FitbitTokenStore.Token, CompletionStage<FitbitTokenStore.Token>> refresh) {
+    this(tokens, refresh, Clock.systemUTC());
+  }
+
+  FitbitTokenRefresher(FitbitTokenStore tokens,
+                       Function<FitbitTokenStore.Token, CompletionStage<FitbitTokenStore.Token>> refresh, Clock clock) {
+    this.tokens = tokens;
+    this.refresh = refresh;
+    this.clock = clock;
+  }
+
+  /**
+   * When a token issued at issuedAt (epoch milliseconds) that expires in expiresInSeconds should be refreshed.
+   */
+  public static long refreshAt(long issuedAt, long expiresInSeconds) {
+    return issuedAt + (long) (expiresInSeconds * 1000 * REFRESH_AT);
+  }
+
+  /**
+   * The token to send a request of the user with. Waits for a refresh only if the token has expired.
+   */
+  public CompletionStage<FitbitTokenStore.Token> validToken(String userId) {
+    return tokens.get(userId).thenCompose(found -> {
+      if (found.isEmpty())
+        return CompletableFuture.failedFuture(new IllegalStateException("No access token available for user " + userId));
+
+      var token = found.get();
+      long now = clock.millis();
+      if (token.isExpired(now)) {
+        Metrics.counter("fitbit.token.expired").increment();
+        return refresh(token);
+      }
+      if (token.isDueForRefresh(now)) refreshInBackground(token);
+      else schedule(token);
+      return CompletableFuture.completedFuture(token);
+    });
+  }
+
+  /**
+   * Starts a timer that refreshes the token at its refresh time, unless one is already running for its owner.
+   * The timer reads the token again when it fires, a token that was replaced in the meantime isn't refreshed twice.
+   */
+  public void schedule(FitbitTokenStore.Token token) {
+    var owner = token.userId();
+    if (!token.canRefresh() || !scheduled.add(owner)) return;
+
+    long delay = Math.max(0, token.refreshAt() - clock.millis());
+    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+      scheduled.remove(owner);
+      tokens.get(owner).thenAccept(current -> current
+              .filter(latest -> latest.userId().equals(owner) && latest.canRefresh())
+              // an expired token is refreshed by the next request, which reports the error if that fails
+              .filter(latest -> !latest.isExpired(clock.millis()))
+              .ifPresent(latest -> {
+                if (latest.isDueForRefresh(clock.millis())) refreshInBackground(latest);
+                else schedule(latest);
+              }));
+    });
+  }
+
+  private void refreshInBackground(FitbitTokenStore.Token token) {
+    refresh(token).whenComplete((refreshed, error) -> {
+      if (error != null) {
+        logger.warn("Background refresh of the Fitbit token of user {} failed, retrying in {}", token.userId(), RETRY_DELAY, error);
+        CompletableFuture.delayedExecutor(RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS).execute(() -> schedule(token));
+      }
+    });
+  }
+
+  /**
+   * Refreshes the token, or joins the refresh of its owner that is already in flight. A caller that read the
+   * token before a refresh finished, on this node or another one, gets the refreshed token instead of refreshing
+   * it again.
+   */
+  CompletionStage<FitbitTokenStore.Token> refresh(FitbitTokenStore.Token stale) {
+    var owner = stale.userId();
+    var flight = new CompletableFuture<FitbitTokenStore.Token>();
+    var running = inFlight.putIfAbsent(owner, flight);
+    if (running != null) return running;
+
+    tokens.reload(owner)
+            .thenCompose(current -> {
+              var token = current.filter(latest -> latest.userId().equals(owner)).orElse(stale);
+              if (!token.accessToken().equals(stale.accessToken()) && !token.isDueForRefresh(clock.millis())) {
+                return CompletableFuture.completedFuture(token);
+              }
+              if (!token.canRefresh()) {
+                return CompletableFuture.<FitbitTokenStore.Token>failedFuture(
+                        new IllegalStateException("No refresh token available for user " + owner));
+              }
+              return tokens.claimRefresh(token, REFRESH_LEASE).thenCompose(claimed -> claimed
+                      ? refreshClaimed(token)
+                      : awaitRefreshElsewhere(token, REFRESH_LEASE.toMillis() / CLAIM_POLL.toMillis()));
+            })
+            .whenComplete((refreshed, error) -> {
+              inFlight.remove(owner, flight);
+              if (error != null) {
+                Metrics.counter("fitbit.token.refresh-failures").increment();
+                flight.completeExceptionally(error);
+              } else {
+                flight.complete(refreshed);
+              }
+            });
+    return flight;
+  }
+
+  private CompletionStage<FitbitTokenStore.Token> refreshClaimed(FitbitTokenStore.Token token) {
+    Metrics.counter("fitbit.token.refreshes").increment();
+    return Metrics.timeAsync("latency.fitbit.token-refresh", () -> refresh.apply(token))
+            // e.g. invalid_grant: the refresh token was used by another node whose claim had run out
+            .exceptionallyCompose(error -> refreshedElsewhere(token)
+                    .thenCompose(refreshed -> refreshed
+                            .<CompletionStage<FitbitTokenStore.Token>>map(CompletableFuture::completedFuture)
+                            .orElseGet(() -> CompletableFuture.failedFuture(error))));
+  }
+
+  /**
+   * Waits for the node that claimed the refresh of the token to store the refreshed one, until its claim runs out.
+   */
+  private CompletionStage<FitbitTokenStore.Token> awaitRefreshElsewhere(FitbitTokenStore.Token token, long polls) {
+    if (polls <= 0) {
+      return CompletableFuture.failedFuture(new IllegalStateException(
+              "The Fitbit token of user " + token.userId() + " is refreshed by another node, which didn't finish in " + REFRESH_LEASE));
+    }
+    Metrics.counter("fitbit.token.refresh-waits").increment();
+    var poll = CompletableFuture.delayedExecutor(CLAIM_POLL.toMillis(), TimeUnit.MILLISECONDS);
+    return CompletableFuture.runAsync(() -> {}, poll)
+            .thenCompose(__ -> refreshedElsewhere(token))
+            .thenCompose(refreshed -> refreshed
+                    .<CompletionStage<FitbitTokenStore.Token>>map(CompletableFuture::completedFuture)
+                    .orElseGet(() -> awaitRefreshElsewhere(token, polls - 1)));
+  }
+
+  /**
+   * The stored token of the owner, if it was refreshed since the given one.
+   */
+  private CompletionStage<Optional<FitbitTokenStore.Token>> refreshedElsewhere(FitbitTokenStore.Token token) {
+    return tokens.reload(token.userId()).thenApply(current -> current
+            .filter(latest -> latest.userId().equals(token.userId()))
+            .filter(latest -> !token.refreshToken().equals(latest.refreshToken())));
+  }
+}
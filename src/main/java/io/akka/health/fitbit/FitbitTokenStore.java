@@ -0,0 +1,203 @@
+package io.akka.health.fitbit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * The OAuth tokens of the Fitbit users, shared by all requests of the service.
+ * <p>
+ * Tokens are written through to a {@link Persistence}, so that they survive a restart, and kept in memory for
+ * {@code reloadAfter}. Other nodes may replace the token in the meantime, so it is loaded again after that; a user
+ * without a token is looked up again on every use, the user may have connected an account on another node.
+ * Concurrent loads of the same user are shared. Updates replace the token of a user atomically, a request sees
+ * either the old or the new token, never a mix of both.
+ * <p>
+ * Users without a token of their own fall back to the shared token, if there is one and they are configured to use
+ * it. That is the token from {@code FITBIT_ACCESS_TOKEN} of a deployment that serves a single Fitbit account.
+ */
+public class FitbitTokenStore {
+
+  /**
+   * The owner of the shared token. Requests with the shared token count against its quota, whoever made them.
+   */
+  public static final String SHARED_USER = "-";
+
+  /**
+   * @param userId       The user the token belongs to, {@link #SHARED_USER} for the shared token.
+   * @param accessToken  Bearer token of the Fitbit Web API.
+   * @param refreshToken Token to get a new access token with, empty if it can't be refreshed.
+   * @param expiresAt    When the access token expires, in epoch milliseconds.
+   * @param refreshAt    When the access token should be refreshed, ahead of its expiry, in epoch milliseconds.
+   */
+  public record Token(String userId, String accessToken, String refreshToken, long expiresAt, long refreshAt) {
+
+    public boolean canRefresh() {
+      return refreshToken != null && !refreshToken.isEmpty();
+    }
+
+    public boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+
+    public boolean isDueForRefresh(long now) {
+      return now >= refreshAt;
+    }
+  }
+
+  /**
+   * Where the tokens are stored durably.
+   */
+  public interface Persistence {
+
+    CompletionStage<Optional<Token>> load(String userId);
+
+    CompletionStage<Void> save(Token token);
+
+    /**
+     * Claims the refresh of the token for the lease, so that one node refreshes it while the others wait for the
+     * result. Refused if the stored token has another refresh token by now, or another claim holds.
+     */
+    CompletionStage<Boolean> claimRefresh(Token token, Duration lease);
+
+    /**
+     * Keeps the tokens in memory only, for tests and single-account deployments.
+     */
+    static Persistence none() {
+      return new Persistence() {
+        @Override
+        public CompletionStage<Optional<Token>> load(String userId) {
+          return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        @Override
+        public CompletionStage<Void> save(Token token) {
+          return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Boolean> claimRefresh(Token token, Duration lease) {
+          return CompletableFuture.completedFuture(true);
+        }
+      };
+    }
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(FitbitTokenStore.class);
+
+  // the token of a user, completes once it is loaded
+  private record Cached(CompletableFuture<Optional<Token>> token, long loadedAt) {}
+
+  private final Persistence persistence;
+  private final Predicate<String> usesSharedToken;
+  private final Duration reloadAfter;
+  private final Clock clock;
+  private final Map<String, Cached> tokens = new ConcurrentHashMap<>();
+  private volatile Token sharedToken;
+
+  /**
+   * @param usesSharedToken whether a user without a token of their own may use the shared token
+   * @param reloadAfter     how long a loaded token is used before it is loaded again
+   */
+  public FitbitTokenStore(Persistence persistence, Predicate<String> usesSharedToken, Duration reloadAfter) {
+    this(persistence, usesSharedToken, reloadAfter, Clock.systemUTC());
+  }
+
+  FitbitTokenStore(Persistence persistence, Predicate<String> usesSharedToken, Duration reloadAfter, Clock clock) {
+    this.persistence = persistence;
+    this.usesSharedToken = usesSharedToken;
+    this.reloadAfter = reloadAfter;
+    this.clock = clock;
+  }
+
+  /**
+   * A store of a single node that serves a single Fitbit account: every user may use the shared token.
+   */
+  public static FitbitTokenStore inMemory() {
+    // there is nothing to load the tokens from again
+    return new FitbitTokenStore(Persistence.none(), __ -> true, Duration.ofMillis(Long.MAX_VALUE));
+  }
+
+  /**
+   * Sets the token used by users without a token of their own.
+   */
+  public void setSharedToken(String accessToken, String refreshToken, long expiresAt) {
+    sharedToken = new Token(SHARED_USER, accessToken, refreshToken, expiresAt, expiresAt);
+  }
+
+  /**
+   * The token requests of the user are sent with: the user's own token, or the shared token if the user has
+   * none and may use it. Empty if there is neither.
+   */
+  public CompletionStage<Optional<Token>> get(String userId) {
+    if (SHARED_USER.equals(userId))
+      return CompletableFuture.completedFuture(Optional.ofNullable(sharedToken));
+
+    long now = clock.millis();
+    var cached = tokens.compute(userId, (id, current) ->
+            current != null && (!current.token().isDone() || now - current.loadedAt() < reloadAfter.toMillis())
+                    ? current
+                    : new Cached(persistence.load(id).toCompletableFuture(), now));
+    return cached.token()
+            .whenComplete((token, error) -> {
+              // the next request loads it again, instead of failing or missing a new account until the restart
+              if (error != null) {
+                logger.warn("Could not load the Fitbit token of user {}", userId, error);
+                tokens.remove(userId, cached);
+              } else if (token.isEmpty()) {
+                tokens.remove(userId, cached);
+              }
+            })
+            .thenApply(token -> token.or(() -> usesSharedToken.test(userId) ? Optional.ofNullable(sharedToken) : Optional.empty()));
+  }
+
+  /**
+   * Loads the token of the user again, bypassing the token kept in memory, which another node may have replaced.
+   * Only the user's own token, without the fallback to the shared token. Keeps the token in memory if none is
+   * stored, e.g. because storing it failed.
+   */
+  public CompletionStage<Optional<Token>> reload(String userId) {
+    if (SHARED_USER.equals(userId))
+      return CompletableFuture.completedFuture(Optional.ofNullable(sharedToken));
+
+    return persistence.load(userId).thenApply(stored -> {
+      if (stored.isPresent()) {
+        tokens.put(userId, new Cached(CompletableFuture.completedFuture(stored), clock.millis()));
+        return stored;
+      }
+      var cached = tokens.get(userId);
+      return cached != null && cached.token().isDone() && !cached.token().isCompletedExceptionally()
+              ? cached.token().join()
+              : Optional.<Token>empty();
+    });
+  }
+
+  /**
+   * See {@link Persistence#claimRefresh}. The shared token is refreshed by every node on its own, it isn't stored.
+   */
+  public CompletionStage<Boolean> claimRefresh(Token token, Duration lease) {
+    if (SHARED_USER.equals(token.userId()))
+      return CompletableFuture.completedFuture(true);
+    return persistence.claimRefresh(token, lease);
+  }
+
+  /**
+   * Replaces the token of the user, or the shared token, and stores it. Completes when it is stored.
+   */
+  public CompletionStage<Void> put(Token token) {
+    if (SHARED_USER.equals(token.userId())) {
+      sharedToken = token;
+      return CompletableFuture.completedFuture(null);
+    }
+    tokens.put(token.userId(), new Cached(CompletableFuture.completedFuture(Optional.of(token)), clock.millis()));
+    return persistence.save(token);
+  }
+}
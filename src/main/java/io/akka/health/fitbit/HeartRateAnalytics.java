@@ -0,0 +1,294 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.fitbit.model.HeartRateData;
+import io.akka.health.fitbit.model.HeartRateSeries;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statistics over the intraday heart rate of a day, computed from the primitive arrays of a {@link HeartRateSeries}
+ * so that the agent gets a few numbers instead of thousands of readings.
+ * <p>
+ * All statistics except the recovery come out of a single pass over the readings that allocates nothing per
+ * reading: a bpm histogram for the percentiles, the seconds per zone, a sliding window sum for the rolling
+ * averages and the runs outside the range. The recovery looks at the two minutes after the peak.
+ * <p>
+ * A reading stands for the time until the next reading, at most {@code maxGapSeconds}, so that the time the
+ * tracker wasn't worn isn't counted.
+ */
+public class HeartRateAnalytics {
+
+  public record Settings(int minThreshold, int maxThreshold, int rollingWindowSeconds, int maxGapSeconds, int maxWindows) {
+
+    public static Settings defaults() {
+      return new Settings(40, 160, 600, 300, 5);
+    }
+
+    public Settings withThresholds(int minThreshold, int maxThreshold) {
+      return new Settings(minThreshold, maxThreshold, rollingWindowSeconds, maxGapSeconds, maxWindows);
+    }
+  }
+
+  public record Percentiles(int p5, int p25, int p50, int p75, int p95) {}
+
+  public record ZoneTime(String name, int min, int max, int minutes) {}
+
+  public record RollingAverage(int windowMinutes, LocalTime start, LocalTime end, double averageBpm) {}
+
+  public record Recovery(int peakBpm, LocalTime peakTime, Integer bpmAfterOneMinute, Integer bpmAfterTwoMinutes,
+                         Double dropPerMinute) {}
+
+  public record Window(LocalTime start, LocalTime end, int minutes, int extremeBpm) {}
+
+  public record OutsideRange(int minThreshold, int maxThreshold, int windows, int minutes, List<Window> longestWindows) {}
+
+  public record Summary(
+          LocalDate date,
+          int readings,
+          int minutesCovered,
+          Integer restingHeartRate,
+          int min,
+          int max,
+          double mean,
+          Percentiles percentiles,
+          List<ZoneTime> zones,
+          RollingAverage highestRollingAverage,
+          RollingAverage lowestRollingAverage,
+          Recovery recovery,
+          OutsideRange outsideRange) {}
+
+  // readings above are clamped, no heart beats faster
+  private static final int MAX_BPM = 300;
+
+  private HeartRateAnalytics() {}
+
+  /**
+   * Analyzes the series, or returns null when it has no readings.
+   */
+  public static Summary analyze(HeartRateSeries series, Settings settings) {
+    int[] seconds = series.secondsOfDay();
+    short[] bpm = series.bpm();
+    int n = bpm.length;
+    if (n == 0) return null;
+
+    var zones = series.zones() == null ? List.<HeartRateData.HeartRateZone>of() : series.zones();
+    int[] zoneMin = new int[zones.size()];
+    int[] zoneMax = new int[zones.size()];
+    for (int z = 0; z < zones.size(); z++) {
+      zoneMin[z] = zones.get(z).min() == null ? 0 : zones.get(z).min();
+      zoneMax[z] = zones.get(z).max() == null ? MAX_BPM : zones.get(z).max();
+    }
+    long[] zoneSeconds = new long[zones.size()];
+    int[] histogram = new int[MAX_BPM + 1];
+
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    int peakIndex = 0;
+    long sum = 0;
+    long coveredSeconds = 0;
+
+    // sliding window over [windowStart, i]
+    int window = settings.rollingWindowSeconds();
+    int windowStart = 0;
+    long windowSum = 0;
+    double highestAverage = Double.NEGATIVE_INFINITY;
+    double lowestAverage = Double.POSITIVE_INFINITY;
+    int highestStart = -1, highestEnd = -1, lowestStart = -1, lowestEnd = -1;
+
+    // runs outside the range; the longest ones are kept in small parallel arrays
+    int maxWindows = Math.max(settings.maxWindows(), 0);
+    int[] runStarts = new int[maxWindows];
+    int[] runEnds = new int[maxWindows];
+    int[] runExtremes = new int[maxWindows];
+    int keptRuns = 0;
+    int runs = 0;
+    long outsideSeconds = 0;
+    int runStart = -1;
+    int runEnd = 0;
+    int runExtreme = 0;
+
+    for (int i = 0; i < n; i++) {
+      int value = Math.min(Math.max(bpm[i], 0), MAX_BPM);
+      int duration = duration(seconds, i, settings.maxGapSeconds());
+
+      histogram[value]++;
+      sum += value;
+      coveredSeconds += duration;
+      if (value < min) min = value;
+      if (value > max) {
+        max = value;
+        peakIndex = i;
+      }
+
+      for (int z = 0; z < zoneMin.length; z++) {
+        if (value >= zoneMin[z] && (value < zoneMax[z] || z == zoneMin.length - 1 && value <= zoneMax[z])) {
+          zoneSeconds[z] += duration;
+          break;
+        }
+      }
+
+      windowSum += value;
+      while (seconds[i] - seconds[windowStart] >= window) {
+        windowSum -= Math.min(Math.max(bpm[windowStart], 0), MAX_BPM);
+        windowStart++;
+      }
+      // only windows that span most of their length, not the first readings or the ones after a gap
+      if (seconds[i] - seconds[windowStart] + duration >= window * 3 / 4) {
+        double average = (double) windowSum / (i - windowStart + 1);
+        if (average > highestAverage) {
+          highestAverage = average;
+          highestStart = windowStart;
+          highestEnd = i;
+        }
+        if (average < lowestAverage) {
+          lowestAverage = average;
+          lowestStart = windowStart;
+          lowestEnd = i;
+        }
+      }
+
+      boolean outside = value < settings.minThreshold() || value > settings.maxThreshold();
+      boolean continues = runStart >= 0 && seconds[i] - seconds[runEnd] <= settings.maxGapSeconds();
+      if (runStart >= 0 && (!outside || !continues)) {
+        runs++;
+        outsideSeconds += seconds[runEnd] - seconds[runStart] + duration(seconds, runEnd, settings.maxGapSeconds());
+        keptRuns = keepLongest(seconds, runStarts, runEnds, runExtremes, keptRuns, runStart, runEnd, runExtreme);
+        runStart = -1;
+      }
+      if (outside) {
+        if (runStart < 0) {
+          runStart = i;
+          runExtreme = value;
+        }
+        runEnd = i;
+        if (deviation(value, settings) > deviation(runExtreme, settings)) runExtreme = value;
+      }
+    }
+    if (runStart >= 0) {
+      runs++;
+      outsideSeconds += seconds[runEnd] - seconds[runStart] + duration(seconds, runEnd, settings.maxGapSeconds());
+      keptRuns = keepLongest(seconds, runStarts, runEnds, runExtremes, keptRuns, runStart, runEnd, runExtreme);
+    }
+
+    List<ZoneTime> zoneTimes = new ArrayList<>();
+    for (int z = 0; z < zones.size(); z++) {
+      zoneTimes.add(new ZoneTime(zones.get(z).name(), zoneMin[z], zoneMax[z], (int) (zoneSeconds[z] / 60)));
+    }
+
+    List<Window> windows = new ArrayList<>();
+    for (int k = 0; k < keptRuns; k++) {
+      int end = seconds[runEnds[k]] + duration(seconds, runEnds[k], settings.maxGapSeconds());
+      windows.add(new Window(time(seconds[runStarts[k]]), time(end), (end - seconds[runStarts[k]]) / 60, runExtremes[k]));
+    }
+    windows.sort((a, b) -> a.start().compareTo(b.start()));
+
+    return new Summary(
+            series.date(),
+            n,
+            (int) (coveredSeconds / 60),
+            series.restingHeartRate(),
+            min,
+            max,
+            Math.round(sum * 10.0 / n) / 10.0,
+            percentiles(histogram, n),
+            zoneTimes,
+            rolling(seconds, bpm, window, highestStart, highestEnd, highestAverage, settings.maxGapSeconds()),
+            rolling(seconds, bpm, window, lowestStart, lowestEnd, lowestAverage, settings.maxGapSeconds()),
+            recovery(seconds, bpm, peakIndex),
+            new OutsideRange(settings.minThreshold(), settings.maxThreshold(), runs, (int) (outsideSeconds / 60), windows));
+  }
+
+  /**
+   * The time reading i stands for: the gap to the next reading, or to the previous one for the last reading,
+   * at most maxGapSeconds.
+   */
+  private static int duration(int[] seconds, int i, int maxGapSeconds) {
+    int gap;
+    if (i + 1 < seconds.length) gap = seconds[i + 1] - seconds[i];
+    else if (i > 0) gap = seconds[i] - seconds[i - 1];
+    else gap = 60;
+    return Math.min(Math.max(gap, 0), maxGapSeconds);
+  }
+
+  private static int deviation(int value, Settings settings) {
+    if (value < settings.minThreshold()) return settings.minThreshold() - value;
+    if (value > settings.maxThreshold()) return value - settings.maxThreshold();
+    return 0;
+  }
+
+  /**
+   * Adds the run to the kept runs, replacing the shortest one when all slots are taken. Returns the number of
+   * kept runs.
+   */
+  private static int keepLongest(int[] seconds, int[] starts, int[] ends, int[] extremes, int kept,
+                                 int start, int end, int extreme) {
+    int slot = kept;
+    if (kept == starts.length) {
+      if (kept == 0) return 0;
+      slot = 0;
+      for (int k = 1; k < kept; k++) {
+        if (seconds[ends[k]] - seconds[starts[k]] < seconds[ends[slot]] - seconds[starts[slot]]) slot = k;
+      }
+      if (seconds[end] - seconds[start] <= seconds[ends[slot]] - seconds[starts[slot]]) return kept;
+    }
+    starts[slot] = start;
+    ends[slot] = end;
+    extremes[slot] = extreme;
+    return slot == kept ? kept + 1 : kept;
+  }
+
+  private static Percentiles percentiles(int[] histogram, int n) {
+    return new Percentiles(
+            percentile(histogram, n, 0.05),
+            percentile(histogram, n, 0.25),
+            percentile(histogram, n, 0.50),
+            percentile(histogram, n, 0.75),
+            percentile(histogram, n, 0.95));
+  }
+
+  /**
+   * The smallest bpm with at least the fraction of the readings at or below it (nearest rank).
+   */
+  private static int percentile(int[] histogram, int n, double fraction) {
+    long rank = Math.max(1, (long) Math.ceil(fraction * n));
+    long seen = 0;
+    for (int value = 0; value < histogram.length; value++) {
+      seen += histogram[value];
+      if (seen >= rank) return value;
+    }
+    return histogram.length - 1;
+  }
+
+  private static RollingAverage rolling(int[] seconds, short[] bpm, int window, int start, int end, double average,
+                                        int maxGapSeconds) {
+    if (start < 0) return null;
+    return new RollingAverage(window / 60, time(seconds[start]),
+            time(seconds[end] + duration(seconds, end, maxGapSeconds)), Math.round(average * 10) / 10.0);
+  }
+
+  /**
+   * Heart rate recovery after the highest reading of the day: the bpm one and two minutes later and the drop
+   * per minute over the longest of the two.
+   */
+  private static Recovery recovery(int[] seconds, short[] bpm, int peakIndex) {
+    int peak = bpm[peakIndex];
+    Integer afterOne = null;
+    Integer afterTwo = null;
+    for (int i = peakIndex + 1; i < bpm.length && seconds[i] <= seconds[peakIndex] + 150; i++) {
+      int elapsed = seconds[i] - seconds[peakIndex];
+      if (afterOne == null && elapsed >= 60) afterOne = (int) bpm[i];
+      if (afterTwo == null && elapsed >= 120) afterTwo = (int) bpm[i];
+    }
+    Double dropPerMinute = afterTwo != null ? (peak - afterTwo) / 2.0
+            : afterOne != null ? (double) (peak - afterOne)
+            : null;
+    return new Recovery(peak, time(seconds[peakIndex]), afterOne, afterTwo, dropPerMinute);
+  }
+
+  private static LocalTime time(int secondOfDay) {
+    return LocalTime.ofSecondOfDay(Math.min(secondOfDay, 86399));
+  }
+}
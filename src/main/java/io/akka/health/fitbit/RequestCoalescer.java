@@ -0,0 +1,59 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.common.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Shares an asynchronous call between the callers that ask for the same key while it is in flight: the first caller
+ * starts the call, the others get its result, or its failure. Once the call has completed, the next caller starts a
+ * new one; caching completed results is left to the {@link FitbitCache}.
+ */
+public class RequestCoalescer {
+
+  private final String metric;
+  private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * @param metric counter of the callers that joined a call in flight
+   */
+  public RequestCoalescer(String metric) {
+    this.metric = metric;
+    Metrics.gauge(metric + ".in-flight", this::size);
+  }
+
+  /**
+   * Joins the call for the key that is in flight, or starts it. The key must identify the result, e.g. include
+   * the user, the resource and the date.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> CompletionStage<T> coalesce(Object key, Supplier<CompletionStage<T>> call) {
+    var flight = new CompletableFuture<Object>();
+    var running = inFlight.putIfAbsent(key, flight);
+    if (running != null) {
+      Metrics.counter(metric).increment();
+      // a copy, so that a caller can't complete or cancel the call for the others
+      return (CompletionStage<T>) running.copy();
+    }
+
+    try {
+      call.get().whenComplete((result, error) -> {
+        inFlight.remove(key, flight);
+        if (error != null) flight.completeExceptionally(error);
+        else flight.complete(result);
+      });
+    } catch (RuntimeException e) {
+      inFlight.remove(key, flight);
+      flight.completeExceptionally(e);
+    }
+    return (CompletionStage<T>) flight.copy();
+  }
+
+  public int size() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,40 @@
+package io.akka.health.fitbit.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Record class representing the activity log list from Fitbit API, i.e. the logged and auto-detected
+ * exercises of a period.
+ */
+public record ActivityLogList(
+    @JsonProperty("activities") List<ActivityLog> activities,
+    @JsonProperty("pagination") Pagination pagination
+) {
+    /**
+     * Record representing one logged activity.
+     */
+    public record ActivityLog(
+        @JsonProperty("activityName") String activityName,
+        @JsonProperty("activityTypeId") Long activityTypeId,
+        @JsonProperty("logId") Long logId,
+        @JsonProperty("logType") String logType,
+        @JsonProperty("startTime") OffsetDateTime startTime,
+        @JsonProperty("duration") Long duration,
+        @JsonProperty("activeDuration") Long activeDuration,
+        @JsonProperty("calories") Integer calories,
+        @JsonProperty("steps") Integer steps,
+        @JsonProperty("averageHeartRate") Integer averageHeartRate
+    ) {}
+
+    /**
+     * Record representing the paging of the list.
+     */
+    public record Pagination(
+        @JsonProperty("limit") Integer limit,
+        @JsonProperty("offset") Integer offset,
+        @JsonProperty("next") String next
+    ) {}
+}
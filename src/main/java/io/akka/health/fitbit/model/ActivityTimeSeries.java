@@ -0,0 +1,22 @@
+package io.akka.health.fitbit.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Record class representing an activity time series (e.g. steps or calories per day) from Fitbit API.
+ */
+public record ActivityTimeSeries(
+    String resource,
+    List<DataPoint> dataPoints
+) {
+    /**
+     * Record representing the value of one day. Fitbit sends the values as strings.
+     */
+    public record DataPoint(
+        @JsonProperty("dateTime") LocalDate dateTime,
+        @JsonProperty("value") String value
+    ) {}
+}
@@ -0,0 +1,24 @@
+package io.akka.health.fitbit.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Record class representing the intraday heart rate of one day in primitive arrays. The i-th reading was taken
+ * {@code secondsOfDay[i]} seconds after midnight and is {@code bpm[i]} beats per minute. A day at one second
+ * resolution has up to 86400 readings, which as {@link HeartRateData.HeartRateDataPoint} records would be as many
+ * objects plus their strings and boxed values. The heart rate zones are the ones Fitbit computed for the user.
+ * <p>
+ * The arrays are not copied, callers must not modify them.
+ */
+public record HeartRateSeries(
+    LocalDate date,
+    Integer restingHeartRate,
+    List<HeartRateData.HeartRateZone> zones,
+    int[] secondsOfDay,
+    short[] bpm
+) {
+    public int size() {
+        return bpm.length;
+    }
+}
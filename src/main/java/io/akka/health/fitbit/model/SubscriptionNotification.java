@@ -0,0 +1,24 @@
+package io.akka.health.fitbit.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Record class representing a notification of the Fitbit Subscriptions API: the data of a collection of a user
+ * changed on a day. Fitbit posts them in batches, as a JSON array.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SubscriptionNotification(
+    @JsonProperty("collectionType") String collectionType,
+    @JsonProperty("date") String date,
+    @JsonProperty("ownerId") String ownerId,
+    @JsonProperty("ownerType") String ownerType,
+    @JsonProperty("subscriptionId") String subscriptionId
+) {
+    public static final String ACTIVITIES = "activities";
+    public static final String SLEEP = "sleep";
+    public static final String BODY = "body";
+    public static final String FOODS = "foods";
+    public static final String USER_REVOKED_ACCESS = "userRevokedAccess";
+    public static final String DELETE_USER = "deleteUser";
+}
@@ -1,7 +1,8 @@
 package io.akka.health.ingest.api;
 
-import com.mongodb.client.MongoClient;
-import io.akka.health.common.MongoDbUtils;
+import io.akka.health.agent.application.AnswerCache;
+import io.akka.health.common.RequestUsage;
+import io.akka.health.usage.application.DailyUsage;
 import akka.http.javadsl.model.HttpResponse;
 import akka.javasdk.annotations.Acl;
 import akka.javasdk.annotations.http.Post;
@@ -14,7 +15,10 @@ import io.akka.health.ingest.domain.SensorData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
 
 @Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
 @akka.javasdk.annotations.http.HttpEndpoint("/ingest")
@@ -25,31 +29,44 @@ public class IngestionEndpoint {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final ComponentClient componentClient;
-    private final MongoDbUtils.MongoDbConfig mongoDbConfig;
+  private final Index index;
+  private final AnswerCache answerCache;
+  private final DailyUsage dailyUsage;
 
-  public IngestionEndpoint(ComponentClient componentClient, MongoClient mongoClient ) {
+  public IngestionEndpoint(ComponentClient componentClient, Index index, AnswerCache answerCache) {
     this.componentClient = componentClient;
-    this.mongoDbConfig = new MongoDbUtils.MongoDbConfig(
-            mongoClient,
-            "health",
-            "medicalrecord",
-            "medicalrecord-index");
+    this.index = index;
+    this.answerCache = answerCache;
+    this.dailyUsage = new DailyUsage(componentClient);
   }
 
   @Post("/sensor")
   public CompletionStage<HttpResponse> ingestSensorData(IngestSensorRequest request) {
     logger.info("Received sensor data for user {}: {}", request.userId, request.data);
+    var data = request.data.timestamp() == null ? request.data.withTimestamp(Instant.now()) : request.data;
     return componentClient.forEventSourcedEntity(request.userId)
             .method(SensorEntity::addData)
-            .invokeAsync(request.data)
-            .thenApply(__ -> HttpResponses.accepted());
+            .invokeAsync(data)
+            .thenApply(__ -> {
+              answerCache.invalidate(request.userId);
+              return HttpResponses.accepted();
+            });
   }
 
   @Post("/medical-record")
   public CompletionStage<HttpResponse> ingestMedicalRecord(IngestMedicalRecordRequest request) {
     logger.info("Received medical record for user {}: {}", request.userId, request.data);
-    Index index = new Index(mongoDbConfig);
-    return index.indexMedicalRecord(request.data)
-            .thenApply(done -> HttpResponses.accepted());
+    var embeddingTokens = new LongAdder();
+    return index.indexMedicalRecord(request.data, embeddingTokens::add)
+            .thenApply(done -> {
+              answerCache.invalidate(request.userId);
+              recordEmbeddingTokens(request.userId, embeddingTokens.sum());
+              return HttpResponses.accepted();
+            });
+  }
+
+  private void recordEmbeddingTokens(String userId, long tokens) {
+    RequestUsage.record(null, "embedding.index", tokens);
+    dailyUsage.add(userId, Map.of("embedding.index", tokens), false);
   }
 }
@@ -5,10 +5,11 @@ import akka.javasdk.annotations.ComponentId;
 import akka.javasdk.eventsourcedentity.EventSourcedEntity;
 import akka.javasdk.eventsourcedentity.EventSourcedEntityContext;
 import io.akka.health.ingest.domain.SensorData;
+import io.akka.health.ingest.domain.SensorStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
+import java.time.Instant;
 import java.util.List;
 
 
@@ -44,6 +45,35 @@ public class SensorEntity extends EventSourcedEntity<SensorEntity.State, SensorE
     return effects().reply(currentState());
   }
 
+  public record MeasurementsList(List<SensorStats.Measurement> measurements) {}
+
+  public record WindowRequest(String description, Instant from, Instant to, int maxPoints) {}
+
+  public record RecentReadings(List<SensorData> data) {}
+
+  public ReadOnlyEffect<MeasurementsList> getMeasurements() {
+    return effects().reply(new MeasurementsList(SensorStats.measurements(currentState().data())));
+  }
+
+  /**
+   * The latest readings, so that the prompt gets a few of them instead of every stored reading.
+   */
+  public ReadOnlyEffect<RecentReadings> getRecent(int limit) {
+    return effects().reply(new RecentReadings(SensorStats.recent(currentState().data(), limit)));
+  }
+
+  /**
+   * Aggregates the readings of one measurement in a time window, without sending the readings.
+   */
+  public ReadOnlyEffect<SensorStats.Aggregate> getAggregate(WindowRequest request) {
+    return effects().reply(SensorStats.aggregate(currentState().data(), request.description(), request.from(), request.to()));
+  }
+
+  public ReadOnlyEffect<SensorStats.Series> getSeries(WindowRequest request) {
+    return effects().reply(SensorStats.series(
+        currentState().data(), request.description(), request.from(), request.to(), request.maxPoints()));
+  }
+
   @Override
   public SensorEntity.State applyEvent(SensorEntity.Event event) {
     return switch (event) {
@@ -8,50 +8,72 @@ import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.splitter.DocumentByCharacterSplitter;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
-import dev.langchain4j.store.embedding.mongodb.MongoDbEmbeddingStore;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
 
 public class Index {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
-  private final OpenAiEmbeddingModel embeddingModel;
-  private final MongoDbEmbeddingStore embeddingStore;
+  private final EmbeddingModel embeddingModel;
+  private final EmbeddingStore<TextSegment> embeddingStore;
   private final DocumentSplitter splitter;
+  private final Executor blockingIo;
 
-  public Index(MongoDbUtils.MongoDbConfig mongoDbConfig) {
-    this.embeddingModel = OpenAiUtils.embeddingModel();
-    this.embeddingStore = MongoDbUtils.mongoDbEmbeddingStore(mongoDbConfig);
+  public Index(MongoDbUtils.MongoDbConfig mongoDbConfig, Executor blockingIo) {
+    this(OpenAiUtils.embeddingModel(mongoDbConfig.dimensions()), MongoDbUtils.embeddingStore(mongoDbConfig), blockingIo);
+  }
+
+  /**
+   * Indexes into the given store, e.g. the in-memory store that the mock mode shares with the MedicalRecordRAG.
+   *
+   * @param blockingIo runs the blocking embedding and MongoDB calls, see {@link io.akka.health.common.BlockingIo}
+   */
+  public Index(EmbeddingModel embeddingModel, EmbeddingStore<TextSegment> embeddingStore, Executor blockingIo) {
+    this.embeddingModel = embeddingModel;
+    this.embeddingStore = embeddingStore;
+    this.blockingIo = blockingIo;
     this.splitter = new DocumentByCharacterSplitter(500, 50);
   }
 
   public CompletionStage<Done> indexMedicalRecord(MedicalRecord medicalRecord) {
+    return indexMedicalRecord(medicalRecord, tokens -> {});
+  }
+
+  /**
+   * Indexes the record and reports the embedding tokens of each segment, as counted by the API.
+   */
+  public CompletionStage<Done> indexMedicalRecord(MedicalRecord medicalRecord, IntConsumer embeddingTokens) {
     Metadata metadata = Metadata.metadata("patientId", medicalRecord.patientId());
     metadata.put("reasonForVisit", medicalRecord.reasonForVisit());
     metadata.put("diagnosis", medicalRecord.diagnosis());
     Document document = Document.from(medicalRecord.toString(), metadata);
     List<TextSegment> segments = splitter.split(document);
 
-    // ingest each segment
-    var done = CompletableFuture.completedFuture(Done.getInstance());
-    return segments.stream().reduce(
-            done,
-            (acc, seg) -> indexSegment(seg),
-            (a,b) -> done);
+    // ingest the segments in parallel, done when all of them are stored
+    var indexed = segments.stream()
+            .map(segment -> indexSegment(segment, embeddingTokens))
+            .toArray(CompletableFuture[]::new);
+    return CompletableFuture.allOf(indexed).thenApply(__ -> Done.getInstance());
   }
 
-  private CompletableFuture<Done> indexSegment(TextSegment segment) {
+  private CompletableFuture<Done> indexSegment(TextSegment segment, IntConsumer embeddingTokens) {
     return CompletableFuture
             // embed the segment
-            .supplyAsync(() -> embeddingModel.embed(segment))
+            .supplyAsync(() -> embeddingModel.embed(segment), blockingIo)
+            .whenComplete((res, error) -> {
+              if (res != null && res.tokenUsage() != null) embeddingTokens.accept(res.tokenUsage().inputTokenCount());
+            })
             // store the embedding in MongoDB
             .thenCompose(res ->
-                    CompletableFuture.supplyAsync(() -> embeddingStore.add(res.content(), segment)))
+                    CompletableFuture.supplyAsync(() -> embeddingStore.add(res.content(), segment), blockingIo))
             .thenApply(__ -> Done.getInstance());
   }
 }
@@ -1,5 +1,9 @@
 package io.akka.health.ingest.domain;
 
+import java.time.Instant;
+import java.util.OptionalDouble;
+import java.util.regex.Pattern;
+
 /**
  * Represents the data collected from a sensor.
  *
@@ -7,5 +11,26 @@ package io.akka.health.ingest.domain;
  * @param source      The source of the sensor data (e.g., "smartwatch", "fitness-tracker", "medical-device").
  * @param description A brief description of the sensor (e.g., "temperature", "heart-rate", "blood-pressure").
  * @param value       The value recorded by the sensor (e.g., "98.6°F", "72 bpm", "120/80 mmHg").
+ * @param timestamp   When the value was recorded. Set to the time of ingestion if the sender doesn't provide it,
+ *                    missing on data ingested before it was introduced.
  */
-public record SensorData(String userId, String source, String description, String value) {}
+public record SensorData(String userId, String source, String description, String value, Instant timestamp) {
+
+  private static final Pattern LEADING_NUMBER = Pattern.compile("^\\s*(-?\\d+(?:\\.\\d+)?)");
+
+  public SensorData(String userId, String source, String description, String value) {
+    this(userId, source, description, value, null);
+  }
+
+  public SensorData withTimestamp(Instant timestamp) {
+    return new SensorData(userId, source, description, value, timestamp);
+  }
+
+  /**
+   * The leading number of the value, e.g. 72 for "72 bpm" or 120 for "120/80 mmHg".
+   */
+  public OptionalDouble numericValue() {
+    var matcher = LEADING_NUMBER.matcher(value == null ? "" : value);
+    return matcher.find() ? OptionalDouble.of(Double.parseDouble(matcher.group(1))) : OptionalDouble.empty();
+  }
+}
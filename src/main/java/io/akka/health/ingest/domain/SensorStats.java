@@ -0,0 +1,128 @@
+package io.akka.health.ingest.domain;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Server-side aggregates over the sensor readings of a user, so that the agent gets a few numbers
+ * instead of every reading. Only readings with a timestamp and a numeric value are aggregated.
+ */
+public class SensorStats {
+
+  /**
+   * A measurement type and how many readings of it are stored.
+   */
+  public record Measurement(String description, long readings, Instant first, Instant last) {}
+
+  public record Aggregate(
+          String description,
+          Instant from,
+          Instant to,
+          long count,
+          Double min,
+          Double max,
+          Double mean,
+          String last,
+          Instant lastAt) {}
+
+  /**
+   * One point of a downsampled series: the mean of the readings in [from, from + bucket).
+   */
+  public record Point(Instant from, double mean, long count) {}
+
+  public record Series(String description, Instant from, Instant to, List<Point> points) {}
+
+  public static List<Measurement> measurements(List<SensorData> data) {
+    return data.stream()
+            .filter(d -> d.timestamp() != null)
+            .collect(Collectors.groupingBy(d -> normalize(d.description()), TreeMap::new, Collectors.toList()))
+            .values().stream()
+            .map(readings -> new Measurement(
+                    readings.getFirst().description(),
+                    readings.size(),
+                    readings.stream().map(SensorData::timestamp).min(Comparator.naturalOrder()).orElseThrow(),
+                    readings.stream().map(SensorData::timestamp).max(Comparator.naturalOrder()).orElseThrow()))
+            .toList();
+  }
+
+  public static Aggregate aggregate(List<SensorData> data, String description, Instant from, Instant to) {
+    var readings = window(data, description, from, to);
+    var values = readings.stream().mapToDouble(d -> d.numericValue().orElse(Double.NaN)).filter(v -> !Double.isNaN(v)).summaryStatistics();
+    var last = readings.isEmpty() ? null : readings.getLast();
+    return new Aggregate(
+            description, from, to,
+            values.getCount(),
+            values.getCount() == 0 ? null : values.getMin(),
+            values.getCount() == 0 ? null : values.getMax(),
+            values.getCount() == 0 ? null : round(values.getAverage()),
+            last == null ? null : last.value(),
+            last == null ? null : last.timestamp());
+  }
+
+  /**
+   * The latest readings of every measurement, oldest first. Readings without a timestamp predate it and count as
+   * older than the others.
+   */
+  public static List<SensorData> recent(List<SensorData> data, int limit) {
+    var byTime = data.stream()
+            .sorted(Comparator.comparing(SensorData::timestamp, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .toList();
+    return byTime.subList(Math.max(0, byTime.size() - limit), byTime.size());
+  }
+
+  /**
+   * Splits the window into at most maxPoints buckets of equal length and returns the mean of each
+   * bucket that has readings.
+   */
+  public static Series series(List<SensorData> data, String description, Instant from, Instant to, int maxPoints) {
+    var readings = window(data, description, from, to);
+    long bucketMillis = Math.max(1, (to.toEpochMilli() - from.toEpochMilli() + maxPoints - 1) / maxPoints);
+    var points = new ArrayList<Point>();
+    long bucket = -1;
+    double sum = 0;
+    long count = 0;
+    for (var reading : readings) {
+      var value = reading.numericValue();
+      if (value.isEmpty()) continue;
+      long index = (reading.timestamp().toEpochMilli() - from.toEpochMilli()) / bucketMillis;
+      if (index != bucket && count > 0) {
+        points.add(new Point(from.plusMillis(bucket * bucketMillis), round(sum / count), count));
+        sum = 0;
+        count = 0;
+      }
+      bucket = index;
+      sum += value.getAsDouble();
+      count++;
+    }
+    if (count > 0) points.add(new Point(from.plusMillis(bucket * bucketMillis), round(sum / count), count));
+    return new Series(description, from, to, points);
+  }
+
+  /**
+   * The readings of the measurement in [from, to], oldest first.
+   */
+  private static List<SensorData> window(List<SensorData> data, String description, Instant from, Instant to) {
+    var normalized = normalize(description);
+    return data.stream()
+            .filter(d -> d.timestamp() != null && !d.timestamp().isBefore(from) && !d.timestamp().isAfter(to))
+            .filter(d -> normalize(d.description()).equals(normalized))
+            .sorted(Comparator.comparing(SensorData::timestamp))
+            .toList();
+  }
+
+  /**
+   * "Heart-Rate" and "heart rate" are the same measurement.
+   */
+  private static String normalize(String description) {
+    return description == null ? "" : description.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", " ").trim();
+  }
+
+  private static double round(double value) {
+    return Math.round(value * 10) / 10.0;
+  }
+}
@@ -0,0 +1,114 @@
+package io.akka.health.sync.api;
+
+import akka.Done;
+import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.HttpHeader;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.javasdk.JsonSupport;
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.annotations.http.Post;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.AbstractHttpEndpoint;
+import akka.javasdk.http.HttpResponses;
+import akka.javasdk.timer.TimerScheduler;
+import com.typesafe.config.Config;
+import io.akka.health.common.KeyUtils;
+import io.akka.health.common.Metrics;
+import io.akka.health.fitbit.FitbitSubscriptions;
+import io.akka.health.fitbit.model.SubscriptionNotification;
+import io.akka.health.sync.application.FitbitSyncScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The subscriber endpoint of the Fitbit Subscriptions API, configured as subscriber url in the Fitbit app settings.
+ * <p>
+ * Fitbit expects an answer within a few seconds, so notifications are only checked and queued here: each one
+ * becomes a timer of the {@link FitbitSyncScheduler} that fetches the changed collection of that day. Fitbit
+ * disables subscribers that don't answer in time.
+ */
+@Acl(allow = @Acl.Matcher(principal = Acl.Principal.INTERNET))
+@HttpEndpoint("/fitbit/notifications")
+public class FitbitNotificationEndpoint extends AbstractHttpEndpoint {
+
+  private static final Logger logger = LoggerFactory.getLogger(FitbitNotificationEndpoint.class);
+
+  private final ComponentClient componentClient;
+  private final TimerScheduler timerScheduler;
+  private final String verificationCode;
+  private final String clientSecret;
+
+  public FitbitNotificationEndpoint(ComponentClient componentClient, TimerScheduler timerScheduler, Config config) {
+    this.componentClient = componentClient;
+    this.timerScheduler = timerScheduler;
+    this.verificationCode = config.getString("health.sync.subscriptions.verification-code");
+    this.clientSecret = KeyUtils.hasFitbitKeys() ? KeyUtils.readFitbitClientSecret() : null;
+  }
+
+  /**
+   * The verification handshake: 204 for the verification code of the app, 404 for any other code.
+   */
+  @Get
+  public HttpResponse verify() {
+    var code = requestContext().queryParams().getString("verify").orElse(null);
+    if (FitbitSubscriptions.isVerificationCode(verificationCode, code)) {
+      logger.info("Fitbit verified the subscriber endpoint");
+      return HttpResponses.noContent();
+    }
+    return HttpResponses.notFound();
+  }
+
+  /**
+   * Queues a fetch for every notification about data the service keeps. Notifications with a wrong signature
+   * are answered with 404, as Fitbit asks for. Notifications that can't be queued are answered with 503, so that
+   * Fitbit sends them again.
+   */
+  @Post
+  public CompletionStage<HttpResponse> notify(HttpEntity.Strict body) {
+    var bytes = body.getData().toArray();
+    var signature = requestContext().requestHeader(FitbitSubscriptions.SIGNATURE_HEADER).map(HttpHeader::value).orElse(null);
+    if (!FitbitSubscriptions.hasValidSignature(bytes, signature, clientSecret)) {
+      Metrics.counter("fitbit.notifications.invalid-signature").increment();
+      logger.warn("Ignoring Fitbit notifications with an invalid signature");
+      return CompletableFuture.completedFuture(HttpResponses.notFound());
+    }
+
+    SubscriptionNotification[] notifications;
+    try {
+      notifications = JsonSupport.getObjectMapper().readValue(bytes, SubscriptionNotification[].class);
+    } catch (Exception e) {
+      logger.warn("Ignoring Fitbit notifications that can't be parsed", e);
+      return CompletableFuture.completedFuture(HttpResponses.badRequest("Invalid notifications"));
+    }
+
+    var queued = new ArrayList<CompletableFuture<Done>>();
+    for (var notification : notifications) {
+      var userId = notification.subscriptionId();
+      if (userId == null || !FitbitSubscriptions.isDataChange(notification)) {
+        logger.info("Ignoring Fitbit notification {}", notification);
+        continue;
+      }
+      queued.add(timerScheduler.createSingleTimer(
+          FitbitSyncScheduler.notificationTimerName(userId, notification),
+          Duration.ZERO,
+          componentClient.forTimedAction()
+              .method(FitbitSyncScheduler::syncChanges)
+              .deferred(notification)).toCompletableFuture());
+    }
+    return CompletableFuture.allOf(queued.toArray(CompletableFuture[]::new))
+        .handle((__, error) -> {
+          if (error == null) return HttpResponses.noContent();
+          Metrics.counter("fitbit.notifications.queue-failures").increment();
+          logger.warn("Failed to queue Fitbit notifications, Fitbit will send them again", error);
+          return HttpResponse.create().withStatus(StatusCodes.SERVICE_UNAVAILABLE);
+        });
+  }
+}
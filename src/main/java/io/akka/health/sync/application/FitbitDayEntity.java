@@ -0,0 +1,53 @@
+package io.akka.health.sync.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import akka.javasdk.keyvalueentity.KeyValueEntityContext;
+import io.akka.health.sync.domain.FitbitDay;
+
+/**
+ * Local copy of the Fitbit data of one user on one day. The entity id is {@code <userId>/<date>}, see {@link #entityId}.
+ */
+@ComponentId("fitbit-day")
+public class FitbitDayEntity extends KeyValueEntity<FitbitDay> {
+
+  private final String entityId;
+
+  public FitbitDayEntity(KeyValueEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  public static String entityId(String userId, String date) {
+    return userId + "/" + date;
+  }
+
+  @Override
+  public FitbitDay emptyState() {
+    int i = entityId.lastIndexOf("/");
+    return FitbitDay.empty(entityId.substring(0, i), entityId.substring(i + 1));
+  }
+
+  /**
+   * Stores the synced day. Replies whether its data changed.
+   */
+  public Effect<Boolean> store(FitbitDay day) {
+    boolean changed = !currentState().isSynced() || !currentState().sameData(day);
+    return effects()
+            .updateState(day)
+            .thenReply(changed);
+  }
+
+  /**
+   * Stores the resources of the day that changed, see {@link FitbitDay#merge}. Replies whether its data changed.
+   */
+  public Effect<Boolean> update(FitbitDay changes) {
+    var updated = currentState().merge(changes);
+    return effects()
+            .updateState(updated)
+            .thenReply(!updated.sameData(currentState()));
+  }
+
+  public ReadOnlyEffect<FitbitDay> get() {
+    return effects().reply(currentState());
+  }
+}
@@ -0,0 +1,39 @@
+package io.akka.health.sync.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import akka.javasdk.keyvalueentity.KeyValueEntityContext;
+import io.akka.health.sync.domain.SyncCursor;
+
+import java.time.Instant;
+
+/**
+ * Holds the sync cursor of one user. The entity id is the user id.
+ */
+@ComponentId("fitbit-sync")
+public class FitbitSyncEntity extends KeyValueEntity<SyncCursor> {
+
+  public record Advance(String syncedThrough, Instant lastRun) {}
+
+  private final String entityId;
+
+  public FitbitSyncEntity(KeyValueEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  @Override
+  public SyncCursor emptyState() {
+    return SyncCursor.empty(entityId);
+  }
+
+  public Effect<Done> advance(Advance command) {
+    return effects()
+            .updateState(currentState().advance(command.syncedThrough(), command.lastRun()))
+            .thenReply(Done.getInstance());
+  }
+
+  public ReadOnlyEffect<SyncCursor> getCursor() {
+    return effects().reply(currentState());
+  }
+}
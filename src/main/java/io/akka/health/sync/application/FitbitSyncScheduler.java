@@ -0,0 +1,202 @@
+package io.akka.health.sync.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.timedaction.TimedAction;
+import com.typesafe.config.Config;
+import io.akka.health.agent.application.AnswerCache;
+import io.akka.health.common.Metrics;
+import io.akka.health.fitbit.DateFanOut;
+import io.akka.health.fitbit.FitbitClient;
+import io.akka.health.fitbit.model.HeartRateData;
+import io.akka.health.fitbit.model.SubscriptionNotification;
+import io.akka.health.sync.domain.FitbitDay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Copies the Fitbit data of a user into the {@link FitbitDayEntity}, so that the agent reads past days locally
+ * instead of calling Fitbit, see {@link LocalFitbitData}. Every run schedules the next one.
+ * <p>
+ * A run syncs every day after the cursor up to today. Data of the last two days can still change (the tracker
+ * syncs late, sleep is logged on the day it ends), so the cursor only moves to the day before yesterday and those
+ * days are synced again by the next run. The first run backfills {@code backfillDays} days. The sync uses the
+ * background priority of the {@link FitbitClient}, it doesn't take the quota the agent needs, and it bypasses the
+ * cache of the client, which may still hold the days from before they changed.
+ * <p>
+ * With Fitbit subscriptions, {@link #syncChanges} fetches the data Fitbit reports as changed right away, and the
+ * regular runs only pick up what notifications missed, so their interval can be long.
+ */
+@ComponentId("fitbit-sync-scheduler")
+public class FitbitSyncScheduler extends TimedAction {
+
+  private static final Logger logger = LoggerFactory.getLogger(FitbitSyncScheduler.class);
+
+  private final ComponentClient componentClient;
+  private final FitbitClient fitbitClient;
+  private final AnswerCache answerCache;
+  private final Duration interval;
+  private final int backfillDays;
+  private final int fanOutParallelism;
+
+  public FitbitSyncScheduler(ComponentClient componentClient, FitbitClient fitbitClient, AnswerCache answerCache, Config config) {
+    this.componentClient = componentClient;
+    this.fitbitClient = fitbitClient.background();
+    this.answerCache = answerCache;
+    this.interval = config.getDuration("health.sync.interval");
+    this.backfillDays = config.getInt("health.sync.backfill-days");
+    this.fanOutParallelism = config.getInt("health.fitbit.fan-out-parallelism");
+  }
+
+  public static String timerName(String userId) {
+    return "fitbit-sync-" + userId;
+  }
+
+  /**
+   * One timer per user, collection and day: a burst of notifications about the same data is fetched once.
+   */
+  public static String notificationTimerName(String userId, SubscriptionNotification notification) {
+    return "fitbit-notification-" + userId + "-" + notification.collectionType() + "-" + notification.date();
+  }
+
+  /**
+   * Syncs the days since the cursor and schedules the next run, also after a failed run. Doesn't block while the
+   * background requests wait for the Fitbit quota.
+   */
+  public Effect sync(String userId) {
+    var today = LocalDate.now();
+    var timers = timers();
+    long start = System.nanoTime();
+    var done = componentClient.forKeyValueEntity(userId)
+            .method(FitbitSyncEntity::getCursor)
+            .invokeAsync()
+            .thenCompose(cursor -> {
+              var from = cursor.syncedThrough() == null
+                      ? today.minusDays(backfillDays - 1)
+                      : LocalDate.parse(cursor.syncedThrough()).plusDays(1);
+              return DateFanOut.forEachDay(from, today, fanOutParallelism, date -> syncDay(userId, date));
+            })
+            .thenCompose(changed -> {
+              long changedDays = changed.stream().filter(Boolean::booleanValue).count();
+              Metrics.counter("fitbit.sync.days").add(changed.size());
+              Metrics.counter("fitbit.sync.changed-days").add(changedDays);
+              logger.info("Synced {} days of Fitbit data of user {}, {} changed", changed.size(), userId, changedDays);
+
+              // answers may be based on the data that just changed
+              if (changedDays > 0) answerCache.invalidate(userId);
+
+              return componentClient.forKeyValueEntity(userId)
+                      .method(FitbitSyncEntity::advance)
+                      .invokeAsync(new FitbitSyncEntity.Advance(today.minusDays(2).toString(), Instant.now()));
+            })
+            .handle((__, error) -> {
+              if (error != null) {
+                // the days that were stored are kept, the next run starts again from the cursor
+                Metrics.counter("fitbit.sync.failures").increment();
+                logger.warn("Fitbit sync of user {} failed, retrying in {}", userId, interval, error);
+              }
+              Metrics.histogram("latency.fitbit.sync").record(System.nanoTime() - start);
+              return Done.getInstance();
+            })
+            .thenCompose(__ -> timers.createSingleTimer(
+                    timerName(userId),
+                    interval,
+                    componentClient.forTimedAction()
+                            .method(FitbitSyncScheduler::sync)
+                            .deferred(userId)));
+
+    return effects().asyncDone(done);
+  }
+
+  /**
+   * Fetches only the resources of the collection and day that a Fitbit notification reported as changed, see
+   * {@link io.akka.health.sync.api.FitbitNotificationEndpoint}. The subscription id is the user id. A failed fetch
+   * isn't retried, the next regular sync picks the change up.
+   * <p>
+   * The fetch bypasses the cache and the fetches in flight, which may have started before the change, and the
+   * invalidation drops the cached responses of the ranges that may contain the day.
+   */
+  public Effect syncChanges(SubscriptionNotification notification) {
+    var userId = notification.subscriptionId();
+    var date = LocalDate.parse(notification.date());
+    var fitbitClient = this.fitbitClient.forUser(userId).fresh();
+    // cached responses of the day, and of the ranges that may contain it, are stale now
+    fitbitClient.invalidateFrom(date);
+
+    long start = System.nanoTime();
+    var done = fetchChanges(fitbitClient, userId, date, notification.collectionType())
+            .thenCompose(changes -> componentClient.forKeyValueEntity(FitbitDayEntity.entityId(userId, date.toString()))
+                    .method(FitbitDayEntity::update)
+                    .invokeAsync(changes))
+            .handle((changed, error) -> {
+              if (error != null) {
+                Metrics.counter("fitbit.notifications.failures").increment();
+                logger.warn("Fetching the {} of user {} on {} after a notification failed", notification.collectionType(), userId, date, error);
+              } else {
+                Metrics.counter("fitbit.notifications." + notification.collectionType()).increment();
+                logger.info("Fetched the {} of user {} on {} after a notification, {}", notification.collectionType(), userId, date,
+                        changed ? "changed" : "unchanged");
+                if (changed) answerCache.invalidate(userId);
+              }
+              Metrics.histogram("latency.fitbit.notification").record(System.nanoTime() - start);
+              return Done.getInstance();
+            });
+    return effects().asyncDone(done);
+  }
+
+  /**
+   * The resources of the collection on the day, the others are left unset.
+   */
+  private static CompletionStage<FitbitDay> fetchChanges(FitbitClient fitbitClient, String userId, LocalDate date, String collection) {
+    var now = Instant.now();
+    return switch (collection) {
+      case SubscriptionNotification.ACTIVITIES -> {
+        var heartRate = fitbitClient.getHeartRateByDateAsync(date);
+        var activity = fitbitClient.getDailyActivitySummaryAsync(date);
+        var azm = fitbitClient.getActiveZoneMinutesByDateAsync(date);
+        yield heartRate.thenCompose(hr -> activity.thenCombine(azm, (act, zones) -> new FitbitDay(userId, date.toString(),
+                dailyHeartRate(hr), null, act, zones, null, now)));
+      }
+      case SubscriptionNotification.SLEEP -> fitbitClient.getSleepLogByDateAsync(date)
+              .thenApply(sleep -> new FitbitDay(userId, date.toString(), null, sleep, null, null, null, now));
+      case SubscriptionNotification.BODY -> fitbitClient.getWeightLogByDateAsync(date)
+              .thenApply(weight -> new FitbitDay(userId, date.toString(), null, null, null, null, weight, now));
+      default -> CompletableFuture.failedFuture(new IllegalArgumentException("Fitbit collection " + collection + " isn't synced"));
+    };
+  }
+
+  /**
+   * The daily heart rate summary without the intraday readings. They are too large for the entity, tools that
+   * need them still call Fitbit.
+   */
+  private static HeartRateData dailyHeartRate(HeartRateData heartRate) {
+    return new HeartRateData(heartRate.activitiesHeart(), null);
+  }
+
+  /**
+   * Fetches the resources of the day concurrently and stores them. Completes with whether the data changed.
+   */
+  private CompletionStage<Boolean> syncDay(String userId, LocalDate date) {
+    var fitbitClient = this.fitbitClient.forUser(userId).fresh();
+    // all resources are requested before the first one is waited for
+    var heartRate = fitbitClient.getHeartRateByDateAsync(date);
+    var sleep = fitbitClient.getSleepLogByDateAsync(date);
+    var activity = fitbitClient.getDailyActivitySummaryAsync(date);
+    var azm = fitbitClient.getActiveZoneMinutesByDateAsync(date);
+    var weight = fitbitClient.getWeightLogByDateAsync(date);
+
+    return heartRate
+            .thenCompose(hr -> sleep.thenCompose(sl -> activity.thenCompose(act -> azm.thenCombine(weight, (zones, wt) ->
+                    new FitbitDay(userId, date.toString(), dailyHeartRate(hr), sl, act, zones, wt, Instant.now())))))
+            .thenCompose(day -> componentClient.forKeyValueEntity(FitbitDayEntity.entityId(userId, date.toString()))
+                    .method(FitbitDayEntity::store)
+                    .invokeAsync(day));
+  }
+}
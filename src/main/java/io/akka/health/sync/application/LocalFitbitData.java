@@ -0,0 +1,85 @@
+package io.akka.health.sync.application;
+
+import akka.javasdk.client.ComponentClient;
+import io.akka.health.common.Metrics;
+import io.akka.health.sync.domain.FitbitDay;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Reads the Fitbit data that {@link FitbitSyncScheduler} copied into the {@link FitbitDayEntity}.
+ * <p>
+ * Only completed days are read locally. Data of the current day changes during the day and the local copy can be
+ * up to one sync interval old, so it is left to the live Fitbit calls and their short-lived cache. The current day
+ * is the one in the time zone of the user when it is known, otherwise in the zone of the clock.
+ */
+public class LocalFitbitData {
+
+  static final String HITS = "fitbit.local.hits";
+  static final String MISSES = "fitbit.local.misses";
+
+  private final ComponentClient componentClient;
+  private final Clock clock;
+
+  public LocalFitbitData(ComponentClient componentClient) {
+    this(componentClient, Clock.systemDefaultZone());
+  }
+
+  public LocalFitbitData(ComponentClient componentClient, Clock clock) {
+    this.componentClient = componentClient;
+    this.clock = clock;
+  }
+
+  /**
+   * The synced data of the day, empty for today and for days that weren't synced.
+   *
+   * @param zone the time zone of the user, the zone of the clock when empty
+   */
+  public CompletionStage<Optional<FitbitDay>> day(String userId, LocalDate date, Optional<ZoneId> zone) {
+    if (!isCompleted(date, zone)) return CompletableFuture.completedFuture(Optional.empty());
+    return get(userId, date).thenApply(day -> {
+      count(day.isSynced());
+      return day.isSynced() ? Optional.of(day) : Optional.empty();
+    });
+  }
+
+  /**
+   * The synced data of every day from start to end (both inclusive), empty unless all of them were synced.
+   *
+   * @param zone the time zone of the user, the zone of the clock when empty
+   */
+  public CompletionStage<Optional<List<FitbitDay>>> days(String userId, LocalDate start, LocalDate end, Optional<ZoneId> zone) {
+    if (end.isBefore(start) || !isCompleted(end, zone)) return CompletableFuture.completedFuture(Optional.empty());
+    var reads = start.datesUntil(end.plusDays(1)).map(date -> get(userId, date)).toList();
+    return CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).thenApply(__ -> {
+      var days = reads.stream().map(CompletableFuture::join).toList();
+      boolean complete = days.stream().allMatch(FitbitDay::isSynced);
+      count(complete);
+      return complete ? Optional.of(days) : Optional.empty();
+    });
+  }
+
+  /**
+   * Whether the day is over for the user.
+   */
+  boolean isCompleted(LocalDate date, Optional<ZoneId> zone) {
+    return date.isBefore(LocalDate.now(zone.map(clock::withZone).orElse(clock)));
+  }
+
+  private CompletableFuture<FitbitDay> get(String userId, LocalDate date) {
+    return componentClient.forKeyValueEntity(FitbitDayEntity.entityId(userId, date.toString()))
+            .method(FitbitDayEntity::get)
+            .invokeAsync()
+            .toCompletableFuture();
+  }
+
+  private static void count(boolean hit) {
+    Metrics.counter(hit ? HITS : MISSES).increment();
+  }
+}
@@ -0,0 +1,68 @@
+package io.akka.health.sync.domain;
+
+import io.akka.health.fitbit.model.ActiveZoneMinutesData;
+import io.akka.health.fitbit.model.DailyActivitySummary;
+import io.akka.health.fitbit.model.HeartRateData;
+import io.akka.health.fitbit.model.SleepLogData;
+import io.akka.health.fitbit.model.WeightLogData;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The Fitbit data of one user on one day, as last synced from the Fitbit Web API.
+ *
+ * @param userId            The unique identifier for the user.
+ * @param date              The day, ISO formatted (e.g. "2025-04-27").
+ * @param heartRate         Daily heart rate summary and zones, without the intraday readings.
+ * @param sleep             Sleep logs that ended on the day.
+ * @param activity          Daily activity summary with steps and logged activities.
+ * @param activeZoneMinutes Active Zone Minutes of the day.
+ * @param weight            Weight logs of the day.
+ * @param syncedAt          When the day was last synced, null if it never was.
+ */
+public record FitbitDay(
+        String userId,
+        String date,
+        HeartRateData heartRate,
+        SleepLogData sleep,
+        DailyActivitySummary activity,
+        ActiveZoneMinutesData activeZoneMinutes,
+        WeightLogData weight,
+        Instant syncedAt) {
+
+  public static FitbitDay empty(String userId, String date) {
+    return new FitbitDay(userId, date, null, null, null, null, null, null);
+  }
+
+  public boolean isSynced() {
+    return syncedAt != null;
+  }
+
+  /**
+   * This day with the resources that are set in the changes replaced. A day that was never synced completely stays
+   * unsynced, so that it isn't read locally with resources missing.
+   */
+  public FitbitDay merge(FitbitDay changes) {
+    return new FitbitDay(
+            userId,
+            date,
+            changes.heartRate != null ? changes.heartRate : heartRate,
+            changes.sleep != null ? changes.sleep : sleep,
+            changes.activity != null ? changes.activity : activity,
+            changes.activeZoneMinutes != null ? changes.activeZoneMinutes : activeZoneMinutes,
+            changes.weight != null ? changes.weight : weight,
+            isSynced() ? changes.syncedAt : null);
+  }
+
+  /**
+   * Whether the other day holds the same data, regardless of when it was synced.
+   */
+  public boolean sameData(FitbitDay other) {
+    return Objects.equals(heartRate, other.heartRate)
+            && Objects.equals(sleep, other.sleep)
+            && Objects.equals(activity, other.activity)
+            && Objects.equals(activeZoneMinutes, other.activeZoneMinutes)
+            && Objects.equals(weight, other.weight);
+  }
+}
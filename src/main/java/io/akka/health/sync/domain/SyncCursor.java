@@ -0,0 +1,28 @@
+package io.akka.health.sync.domain;
+
+import java.time.Instant;
+
+/**
+ * Progress of the Fitbit sync of one user.
+ *
+ * @param userId         The unique identifier for the user.
+ * @param syncedThrough  The last day, ISO formatted, whose data is final and doesn't need to be synced again.
+ *                       Null before the first sync.
+ * @param lastRun        When the last sync finished, null before the first sync.
+ */
+public record SyncCursor(String userId, String syncedThrough, Instant lastRun) {
+
+  public static SyncCursor empty(String userId) {
+    return new SyncCursor(userId, null, null);
+  }
+
+  /**
+   * Moves the cursor forward. It never moves back, a late run of an old timer can't undo a newer one.
+   */
+  public SyncCursor advance(String syncedThrough, Instant lastRun) {
+    var through = this.syncedThrough == null || syncedThrough.compareTo(this.syncedThrough) > 0
+            ? syncedThrough
+            : this.syncedThrough;
+    return new SyncCursor(userId, through, lastRun);
+  }
+}
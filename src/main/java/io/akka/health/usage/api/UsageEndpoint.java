@@ -0,0 +1,106 @@
+package io.akka.health.usage.api;
+
+import akka.javasdk.annotations.Acl;
+import akka.javasdk.annotations.http.Get;
+import akka.javasdk.annotations.http.HttpEndpoint;
+import akka.javasdk.client.ComponentClient;
+import akka.javasdk.http.AbstractHttpEndpoint;
+import akka.javasdk.http.HttpException;
+import com.typesafe.config.Config;
+import io.akka.health.usage.application.TokenUsageView;
+import io.akka.health.usage.domain.DailyTokenUsage;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Token usage and estimated model cost per user and day.
+ * <p>
+ * The reports contain the usage of every user, so they are only available to the other services of the project
+ * (e.g. an admin backend), not to the internet.
+ */
+@Acl(allow = @Acl.Matcher(service = "*"))
+@HttpEndpoint("/usage")
+public class UsageEndpoint extends AbstractHttpEndpoint {
+
+  private static final int DEFAULT_DAYS = 30;
+  private static final int MAX_TOP_USERS = 100;
+
+  /**
+   * Prices in USD per million tokens.
+   */
+  public record Prices(double prompt, double completion, double embedding) {}
+
+  public record DayReport(DailyTokenUsage usage, double estimatedCostUsd) {}
+
+  public record UsageReport(List<DayReport> days, long promptTokens, long completionTokens, long embeddingTokens,
+                            double estimatedCostUsd) {}
+
+  private final ComponentClient componentClient;
+  private final Prices prices;
+
+  public UsageEndpoint(ComponentClient componentClient, Config config) {
+    this.componentClient = componentClient;
+    var pricesConfig = config.getConfig("health.usage.price-per-million-tokens");
+    this.prices = new Prices(
+        pricesConfig.getDouble("prompt"),
+        pricesConfig.getDouble("completion"),
+        pricesConfig.getDouble("embedding"));
+  }
+
+  /**
+   * Daily usage of a user, newest first. The range defaults to the last 30 days and can be set with
+   * the {@code from} and {@code to} query parameters (ISO dates, both inclusive).
+   */
+  @Get("/users/{userId}")
+  public CompletionStage<UsageReport> getUsageByUser(String userId) {
+    var params = requestContext().queryParams();
+    var to = params.getString("to").map(UsageEndpoint::parseDate).orElse(LocalDate.now());
+    var from = params.getString("from").map(UsageEndpoint::parseDate).orElse(to.minusDays(DEFAULT_DAYS - 1));
+    if (from.isAfter(to)) throw HttpException.badRequest("from is after to");
+    return componentClient.forView()
+        .method(TokenUsageView::getUsageByUser)
+        .invokeAsync(new TokenUsageView.UserRequest(userId, from.toString(), to.toString()))
+        .thenApply(result -> report(result.days()));
+  }
+
+  /**
+   * The users with the most prompt tokens on a day, today by default.
+   */
+  @Get("/top")
+  public CompletionStage<UsageReport> getTopUsers() {
+    var params = requestContext().queryParams();
+    var date = params.getString("date").map(UsageEndpoint::parseDate).orElse(LocalDate.now()).toString();
+    int limit = Math.min(params.getInteger("limit").orElse(10), MAX_TOP_USERS);
+    return componentClient.forView()
+        .method(TokenUsageView::getTopUsersByDate)
+        .invokeAsync(new TokenUsageView.TopRequest(date, limit))
+        .thenApply(result -> report(result.days()));
+  }
+
+  private static LocalDate parseDate(String date) {
+    try {
+      return LocalDate.parse(date);
+    } catch (DateTimeParseException e) {
+      throw HttpException.badRequest("Invalid date '" + date + "', expected an ISO date like 2025-04-27");
+    }
+  }
+
+  private UsageReport report(List<DailyTokenUsage> days) {
+    var reports = days.stream().map(day -> new DayReport(day, cost(day))).toList();
+    return new UsageReport(
+        reports,
+        days.stream().mapToLong(DailyTokenUsage::promptTokens).sum(),
+        days.stream().mapToLong(DailyTokenUsage::completionTokens).sum(),
+        days.stream().mapToLong(DailyTokenUsage::embeddingTokens).sum(),
+        reports.stream().mapToDouble(DayReport::estimatedCostUsd).sum());
+  }
+
+  private double cost(DailyTokenUsage day) {
+    return (day.promptTokens() * prices.prompt()
+        + day.completionTokens() * prices.completion()
+        + day.embeddingTokens() * prices.embedding()) / 1_000_000;
+  }
+}
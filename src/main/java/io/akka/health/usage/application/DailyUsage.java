@@ -0,0 +1,36 @@
+package io.akka.health.usage.application;
+
+import akka.javasdk.client.ComponentClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Adds tokens to the usage of a user on the current day, see {@link TokenUsageEntity}.
+ */
+public class DailyUsage {
+
+  private static final Logger logger = LoggerFactory.getLogger(DailyUsage.class);
+
+  private final ComponentClient componentClient;
+
+  public DailyUsage(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  /**
+   * Adds the tokens without waiting for the write. A failed write is logged, the tokens are still in the
+   * {@code tokens.<category>} counters.
+   */
+  public void add(String userId, Map<String, Long> tokensByCategory, boolean countsAsRequest) {
+    componentClient.forKeyValueEntity(TokenUsageEntity.entityId(userId, LocalDate.now().toString()))
+            .method(TokenUsageEntity::add)
+            .invokeAsync(new TokenUsageEntity.AddUsage(tokensByCategory, countsAsRequest))
+            .exceptionally(error -> {
+              logger.warn("Could not store the token usage of user {}", userId, error);
+              return null;
+            });
+  }
+}
@@ -0,0 +1,40 @@
+package io.akka.health.usage.application;
+
+import akka.Done;
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.keyvalueentity.KeyValueEntity;
+import akka.javasdk.keyvalueentity.KeyValueEntityContext;
+import io.akka.health.usage.domain.DailyTokenUsage;
+
+import java.util.Map;
+
+/**
+ * Token counters of one user on one day. The entity id is {@code <userId>/<date>}, see {@link #entityId}.
+ */
+@ComponentId("token-usage")
+public class TokenUsageEntity extends KeyValueEntity<DailyTokenUsage> {
+
+  public record AddUsage(Map<String, Long> tokensByCategory, boolean countsAsRequest) {}
+
+  private final String entityId;
+
+  public TokenUsageEntity(KeyValueEntityContext context) {
+    this.entityId = context.entityId();
+  }
+
+  public static String entityId(String userId, String date) {
+    return userId + "/" + date;
+  }
+
+  @Override
+  public DailyTokenUsage emptyState() {
+    int i = entityId.lastIndexOf("/");
+    return DailyTokenUsage.empty(entityId.substring(0, i), entityId.substring(i + 1));
+  }
+
+  public Effect<Done> add(AddUsage command) {
+    return effects()
+            .updateState(currentState().add(command.tokensByCategory(), command.countsAsRequest()))
+            .thenReply(Done.getInstance());
+  }
+}
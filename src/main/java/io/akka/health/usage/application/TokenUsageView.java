@@ -0,0 +1,36 @@
+package io.akka.health.usage.application;
+
+import akka.javasdk.annotations.ComponentId;
+import akka.javasdk.annotations.Consume;
+import akka.javasdk.annotations.Query;
+import akka.javasdk.view.TableUpdater;
+import akka.javasdk.view.View;
+import io.akka.health.usage.domain.DailyTokenUsage;
+
+import java.util.List;
+
+@ComponentId("view_token_usage")
+public class TokenUsageView extends View {
+
+  public record UsageList(List<DailyTokenUsage> days) {}
+
+  public record UserRequest(String userId, String from, String to) {}
+
+  public record TopRequest(String date, int limit) {}
+
+  @Query("SELECT * AS days FROM view_token_usage " +
+      "WHERE userId = :userId AND date >= :from AND date <= :to ORDER BY date DESC")
+  public QueryEffect<UsageList> getUsageByUser(UserRequest request) {
+    return queryResult();
+  }
+
+  @Query("SELECT * AS days FROM view_token_usage " +
+      "WHERE date = :date ORDER BY promptTokens DESC LIMIT :limit")
+  public QueryEffect<UsageList> getTopUsersByDate(TopRequest request) {
+    return queryResult();
+  }
+
+  @Consume.FromKeyValueEntity(TokenUsageEntity.class)
+  public static class TokenUsageUpdater extends TableUpdater<DailyTokenUsage> {
+  }
+}
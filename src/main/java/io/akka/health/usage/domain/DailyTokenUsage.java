@@ -0,0 +1,65 @@
+package io.akka.health.usage.domain;
+
+import io.akka.health.common.RequestUsage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tokens used on behalf of one user on one day.
+ *
+ * @param userId           The unique identifier for the user.
+ * @param date             The day, ISO formatted (e.g. "2025-04-27").
+ * @param requests         Number of agent requests.
+ * @param promptTokens     Tokens sent to the chat model: prompt parts, conversation history, tool results and
+ *                         the conversation summaries.
+ * @param completionTokens Tokens generated by the chat model, for answers and summaries.
+ * @param embeddingTokens  Tokens sent to the embedding model, for retrieval, the answer cache and for indexing
+ *                         medical records.
+ * @param categories       All of the above broken down by category, largest first.
+ */
+public record DailyTokenUsage(
+        String userId,
+        String date,
+        long requests,
+        long promptTokens,
+        long completionTokens,
+        long embeddingTokens,
+        List<CategoryUsage> categories) {
+
+  public record CategoryUsage(String category, long tokens) {}
+
+  public static DailyTokenUsage empty(String userId, String date) {
+    return new DailyTokenUsage(userId, date, 0, 0, 0, 0, List.of());
+  }
+
+  /**
+   * Adds the tokens of one request (or of one indexing run when {@code countsAsRequest} is false).
+   */
+  public DailyTokenUsage add(Map<String, Long> tokensByCategory, boolean countsAsRequest) {
+    long prompt = promptTokens;
+    long completion = completionTokens;
+    long embedding = embeddingTokens;
+    var merged = new ArrayList<>(categories);
+
+    for (var entry : tokensByCategory.entrySet()) {
+      var category = entry.getKey();
+      long tokens = entry.getValue();
+      if (category.startsWith(RequestUsage.PROMPT_PREFIX) || category.startsWith(RequestUsage.TOOL_PREFIX)) prompt += tokens;
+      else if (category.startsWith(RequestUsage.EMBEDDING_PREFIX)) embedding += tokens;
+      else if (category.startsWith(RequestUsage.COMPLETION)) completion += tokens;
+
+      var existing = merged.stream().filter(c -> c.category().equals(category)).findFirst();
+      if (existing.isPresent()) {
+        merged.set(merged.indexOf(existing.get()), new CategoryUsage(category, existing.get().tokens() + tokens));
+      } else {
+        merged.add(new CategoryUsage(category, tokens));
+      }
+    }
+    merged.sort(Comparator.comparingLong(CategoryUsage::tokens).reversed());
+
+    return new DailyTokenUsage(userId, date, requests + (countsAsRequest ? 1 : 0), prompt, completion, embedding, merged);
+  }
+}
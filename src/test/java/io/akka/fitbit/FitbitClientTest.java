@@ -69,6 +69,25 @@ public class FitbitClientTest extends TestKitSupport {
                 "Date should match the requested date");
     }
 
+    @Test
+    public void testGetActiveZoneMinutesByDateRange() {
+        fitbitClient.setTokens(ACCESS_TOKEN, null, 3600);
+
+        // Get Active Zone Minutes data for the week up to the 24th of april 2025
+        LocalDate startDate = LocalDate.of(2025, 4, 18);
+        LocalDate endDate = LocalDate.of(2025, 4, 24);
+        ActiveZoneMinutesData azmData = fitbitClient.getActiveZoneMinutesByDateRange(startDate, endDate);
+
+        // Log the response for debugging
+        System.out.println("[DEBUG_LOG] Active Zone Minutes Range Response: " + azmData);
+
+        // Verify that we got one entry per day of the range
+        Assertions.assertNotNull(azmData.activitiesActiveZoneMinutes(), "Activities active zone minutes should not be null");
+        Assertions.assertEquals(7, azmData.activitiesActiveZoneMinutes().size(), "There should be one entry per day");
+        Assertions.assertEquals(startDate, azmData.activitiesActiveZoneMinutes().getFirst().dateTime(),
+                "First date should match the start of the range");
+    }
+
     @Test
     public void testGetSleepLogByDate() {
         fitbitClient.setTokens(ACCESS_TOKEN, null, 3600);
@@ -0,0 +1,37 @@
+package io.akka.health.account.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+public class FitbitAccountTest {
+
+  private static final Instant NOW = Instant.parse("2025-04-28T10:00:00Z");
+
+  private final FitbitAccount account = FitbitAccount.empty("user-1")
+      .withTokens("access-1", "refresh-1", 1000, 800, NOW);
+
+  @Test
+  public void refreshIsClaimedOnceUntilTheClaimRunsOut() {
+    var claimed = account.withRefreshClaimedUntil(NOW.plusSeconds(30));
+
+    Assertions.assertTrue(account.canClaimRefresh("refresh-1", NOW));
+    Assertions.assertFalse(claimed.canClaimRefresh("refresh-1", NOW));
+    Assertions.assertTrue(claimed.canClaimRefresh("refresh-1", NOW.plusSeconds(30)));
+  }
+
+  @Test
+  public void usedRefreshTokenCanNotBeClaimed() {
+    Assertions.assertFalse(account.canClaimRefresh("refresh-0", NOW));
+    Assertions.assertFalse(FitbitAccount.empty("user-1").canClaimRefresh("refresh-1", NOW));
+  }
+
+  @Test
+  public void newTokensEndTheClaim() {
+    var refreshed = account.withRefreshClaimedUntil(NOW.plusSeconds(30))
+        .withTokens("access-2", "refresh-2", 2000, 1800, NOW);
+
+    Assertions.assertTrue(refreshed.canClaimRefresh("refresh-2", NOW));
+  }
+}
@@ -0,0 +1,30 @@
+package io.akka.health.account.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+public class FitbitAuthorizationTest {
+
+  private static final Instant NOW = Instant.parse("2025-04-28T10:00:00Z");
+
+  private final FitbitAuthorization authorization =
+      new FitbitAuthorization("state-1", "user-1", "verifier-1", NOW.plusSeconds(600));
+
+  @Test
+  public void completedByTheUserWhoStartedIt() {
+    Assertions.assertTrue(authorization.canBeCompletedBy("user-1", NOW));
+    Assertions.assertFalse(authorization.canBeCompletedBy("user-2", NOW));
+  }
+
+  @Test
+  public void notCompletedOnceExpired() {
+    Assertions.assertFalse(authorization.canBeCompletedBy("user-1", NOW.plusSeconds(600)));
+  }
+
+  @Test
+  public void unknownStateIsNotCompleted() {
+    Assertions.assertFalse(FitbitAuthorization.empty("state-2").canBeCompletedBy("user-1", NOW));
+  }
+}
@@ -0,0 +1,175 @@
+package io.akka.health.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.akka.health.common.Metrics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives many concurrent chat sessions against {@code POST /agent/ask} and reports throughput and latency percentiles.
+ * Not a JUnit test, it runs against a service that is already running.
+ * <p>
+ * Before the sessions start, it ingests a medical record for each load test user, so that questions on the full
+ * route have records to retrieve.
+ * <p>
+ * It starts a stub of the Fitbit Web API that answers every request with the same data after a fixed delay.
+ * The service has to run with the mock models (see {@code health.mock} in application.conf) and with the
+ * Fitbit base URL pointing at the stub:
+ * <pre>
+ * FITBIT_ACCESS_TOKEN=mock mvn compile exec:java -Dhealth.mock.enabled=true -Dhealth.fitbit.base-url=http://localhost:9100
+ * </pre>
+ * Then run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.akka.health.agent.AgentLoadGenerator}
+ * <p>
+ * Settings (system properties): {@code target} (http://localhost:9000), {@code sessions} (50), {@code requests}
+ * per session (10), {@code fitbit-port} (9100) and {@code fitbit-latency-ms} (50).
+ */
+public class AgentLoadGenerator {
+
+  private static final String[] QUESTIONS = {
+      "How many steps did I take yesterday?",
+      "How many hours did I sleep last night?",
+      "What was my resting heart rate yesterday?",
+      "How much REM sleep did I get yesterday?",
+      "Give me a short summary of my health."};
+
+  private static final int USERS = 10;
+
+  private static final Pattern FITBIT_PATH = Pattern.compile(".*/date/(\\d{4}-\\d{2}-\\d{2}).*");
+
+  public static void main(String[] args) throws Exception {
+    var target = System.getProperty("target", "http://localhost:9000");
+    int sessions = Integer.getInteger("sessions", 50);
+    int requestsPerSession = Integer.getInteger("requests", 10);
+    int fitbitPort = Integer.getInteger("fitbit-port", 9100);
+    var fitbitLatency = Duration.ofMillis(Integer.getInteger("fitbit-latency-ms", 50));
+
+    var fitbit = startFitbitStub(fitbitPort, fitbitLatency);
+    var client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+    var latency = Metrics.histogram("loadtest.ask");
+    var ok = new AtomicInteger();
+    Map<String, Integer> failures = new ConcurrentHashMap<>();
+
+    for (int u = 0; u < USERS; u++) {
+      ingestMedicalRecord(client, target, "load-user-" + u);
+    }
+
+    System.out.printf("%d sessions x %d requests against %s%n", sessions, requestsPerSession, target);
+    long start = System.nanoTime();
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int s = 0; s < sessions; s++) {
+        var userId = "load-user-" + (s % USERS);
+        var sessionId = "load-session-" + s;
+        int offset = s;
+        executor.execute(() -> {
+          for (int r = 0; r < requestsPerSession; r++) {
+            var question = QUESTIONS[(offset + r) % QUESTIONS.length];
+            var body = "{\"userId\":\"%s\",\"sessionId\":\"%s\",\"question\":\"%s\"}".formatted(userId, sessionId, question);
+            var request = HttpRequest.newBuilder(URI.create(target + "/agent/ask"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+            long requestStart = System.nanoTime();
+            try {
+              var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+              latency.record(System.nanoTime() - requestStart);
+              if (response.statusCode() == 200) ok.incrementAndGet();
+              else failures.merge("HTTP " + response.statusCode(), 1, Integer::sum);
+            } catch (Exception e) {
+              failures.merge(e.getClass().getSimpleName(), 1, Integer::sum);
+            }
+          }
+        });
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    fitbit.stop(0);
+
+    var snapshot = latency.snapshot();
+    System.out.printf("duration      %10.1f s%n", seconds);
+    System.out.printf("throughput    %10.1f req/s%n", snapshot.count() / seconds);
+    System.out.printf("ok / failed   %10d / %d %s%n", ok.get(), snapshot.count() - ok.get(), new TreeMap<>(failures));
+    System.out.printf("latency (ms)  mean %.0f  p50 %.0f  p90 %.0f  p95 %.0f  p99 %.0f  max %.0f%n",
+        snapshot.meanMs(), snapshot.p50Ms(), snapshot.p90Ms(), snapshot.p95Ms(), snapshot.p99Ms(), snapshot.maxMs());
+  }
+
+  private static void ingestMedicalRecord(HttpClient client, String target, String userId) throws Exception {
+    var body = """
+        {"userId":"%s","data":{"patientId":"%s","reasonForVisit":"Lower back pain","diagnosis":"Pinched nerve",
+        "prescribedMedication":"Ibuprofen","notes":"Office job, sits for long hours."}}""".formatted(userId, userId);
+    var request = HttpRequest.newBuilder(URI.create(target + "/ingest/medical-record"))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 202) {
+      throw new IllegalStateException("Could not ingest the medical record of " + userId + ": HTTP " + response.statusCode());
+    }
+  }
+
+  /**
+   * Answers the Fitbit endpoints used by FitbitClient with the same data for every date.
+   */
+  private static HttpServer startFitbitStub(int port, Duration latency) throws IOException {
+    var server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/", exchange -> {
+      Matcher matcher = FITBIT_PATH.matcher(exchange.getRequestURI().getPath());
+      var date = matcher.matches() ? matcher.group(1) : "2025-01-01";
+      try {
+        Thread.sleep(latency);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      respond(exchange, fitbitResponse(exchange.getRequestURI().getPath(), date));
+    });
+    server.start();
+    return server;
+  }
+
+  private static String fitbitResponse(String path, String date) {
+    if (path.contains("/activities/heart/")) {
+      return """
+          {"activities-heart":[{"dateTime":"%s","value":{"restingHeartRate":58,"heartRateZones":[]}}]}""".formatted(date);
+    } else if (path.contains("/active-zone-minutes/")) {
+      return """
+          {"activities-active-zone-minutes":[{"dateTime":"%s","value":{"activeZoneMinutes":34}}]}""".formatted(date);
+    } else if (path.contains("/activities/steps/")) {
+      return """
+          {"activities-steps":[{"dateTime":"%s","value":"9120"}]}""".formatted(date);
+    } else if (path.contains("/sleep/")) {
+      return """
+          {"sleep":[],"summary":{"stages":{"deep":70,"light":230,"rem":95,"wake":40},
+          "totalMinutesAsleep":395,"totalSleepRecords":1,"totalTimeInBed":435}}""";
+    } else if (path.contains("/weight/")) {
+      return """
+          {"weight":[]}""";
+    } else {
+      return """
+          {"activities":[],"summary":{"steps":9120,"restingHeartRate":58,"fairlyActiveMinutes":20,"veryActiveMinutes":14}}""";
+    }
+  }
+
+  private static void respond(HttpExchange exchange, String json) throws IOException {
+    var bytes = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (var body = exchange.getResponseBody()) {
+      body.write(bytes);
+    }
+  }
+}
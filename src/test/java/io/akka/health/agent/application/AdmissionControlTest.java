@@ -0,0 +1,105 @@
+package io.akka.health.agent.application;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControlTest {
+
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+  private static AdmissionControl.Permit await(CompletionStage<AdmissionControl.Permit> permit) throws Exception {
+    return permit.toCompletableFuture().get(1, TimeUnit.SECONDS);
+  }
+
+  private static AdmissionControl.Rejected.Reason rejection(CompletionStage<AdmissionControl.Permit> permit) throws Exception {
+    return rejected(permit).reason();
+  }
+
+  private static AdmissionControl.Rejected rejected(CompletionStage<AdmissionControl.Permit> permit) throws Exception {
+    try {
+      await(permit);
+      return Assertions.fail("Expected a rejection");
+    } catch (ExecutionException e) {
+      return (AdmissionControl.Rejected) e.getCause();
+    }
+  }
+
+  @Test
+  public void limitsRequestsPerUserAndServesUsersInTurn() throws Exception {
+    var admission = new AdmissionControl(new AdmissionControl.Settings(2, 1, 10, 2, Duration.ofSeconds(5)), EXECUTOR);
+
+    var first = await(admission.acquire("a"));
+    var secondOfA = admission.acquire("a").toCompletableFuture();
+    var thirdOfA = admission.acquire("a").toCompletableFuture();
+    Assertions.assertEquals(AdmissionControl.Rejected.Reason.USER_LIMIT, rejection(admission.acquire("a")));
+
+    // b doesn't have to wait for the queued requests of a
+    var firstOfB = await(admission.acquire("b"));
+    Assertions.assertFalse(secondOfA.isDone());
+
+    first.release();
+    // releasing twice doesn't free a second slot
+    first.release();
+    var second = await(secondOfA);
+    Assertions.assertFalse(thirdOfA.isDone());
+
+    second.release();
+    firstOfB.release();
+    await(thirdOfA).release();
+  }
+
+  @Test
+  public void shedsRequestsWhenOverloadedOrTooLate() throws Exception {
+    var admission = new AdmissionControl(new AdmissionControl.Settings(1, 1, 1, 1, Duration.ofMillis(100)), EXECUTOR);
+
+    var running = await(admission.acquire("a"));
+    CompletableFuture<AdmissionControl.Permit> queued = admission.acquire("b").toCompletableFuture();
+    Assertions.assertEquals(AdmissionControl.Rejected.Reason.OVERLOADED, rejection(admission.acquire("c")));
+    Assertions.assertEquals(AdmissionControl.Rejected.Reason.DEADLINE, rejection(queued));
+
+    running.release();
+    await(admission.acquire("c")).release();
+  }
+
+  private static Duration retryAfterWithQueued(int queued) throws Exception {
+    var admission = new AdmissionControl(new AdmissionControl.Settings(1, 1, queued, queued, Duration.ofMinutes(1)), EXECUTOR);
+    await(admission.acquire("a"));
+    for (int i = 0; i < queued; i++) admission.acquire("b");
+    var rejected = rejected(admission.acquire("c"));
+    Assertions.assertEquals(AdmissionControl.Rejected.Reason.OVERLOADED, rejected.reason());
+    return rejected.retryAfter();
+  }
+
+  @Test
+  public void retryAfterGrowsWithTheQueue() throws Exception {
+    var shortQueue = retryAfterWithQueued(1);
+    var longQueue = retryAfterWithQueued(3);
+
+    Assertions.assertTrue(shortQueue.compareTo(Duration.ofSeconds(1)) >= 0, shortQueue.toString());
+    Assertions.assertTrue(longQueue.compareTo(shortQueue) > 0, shortQueue + " < " + longQueue);
+    Assertions.assertTrue(longQueue.compareTo(Duration.ofMinutes(1)) <= 0, longQueue.toString());
+  }
+
+  @Test
+  public void releasesPermitsThatAreNeverClaimed() throws Exception {
+    var admission = new AdmissionControl(new AdmissionControl.Settings(1, 1, 1, 1, Duration.ofMillis(100)), EXECUTOR);
+
+    var unclaimed = await(admission.acquire("a")).releaseUnlessClaimed();
+    var next = await(admission.acquire("b"));
+    Assertions.assertFalse(unclaimed.claim());
+
+    var claimed = next.releaseUnlessClaimed();
+    Assertions.assertTrue(claimed.claim());
+    // a claimed permit is kept past the timeout
+    Assertions.assertEquals(AdmissionControl.Rejected.Reason.DEADLINE, rejection(admission.acquire("c")));
+    claimed.release();
+  }
+}
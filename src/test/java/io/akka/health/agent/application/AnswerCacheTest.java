@@ -0,0 +1,122 @@
+package io.akka.health.agent.application;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+
+public class AnswerCacheTest {
+
+  private static final AnswerCache.Settings SETTINGS =
+      new AnswerCache.Settings(true, Duration.ofMinutes(5), 0.95, 2, 4);
+
+  private static final String STEPS = "how many steps did I walk yesterday";
+  private static final String STEPS_REPHRASED = "how many steps have I walked yesterday";
+  private static final String SLEEP = "how long did I sleep last night";
+  private static final String HEART_RATE = "what was my resting heart rate yesterday";
+
+  // rephrasings point in almost the same direction, different questions don't
+  private static final Map<String, float[]> EMBEDDINGS = Map.of(
+      AnswerCache.normalize(STEPS), new float[]{1f, 0f},
+      AnswerCache.normalize(STEPS_REPHRASED), new float[]{0.99f, 0.05f},
+      AnswerCache.normalize(SLEEP), new float[]{0f, 1f},
+      AnswerCache.normalize(HEART_RATE), new float[]{-1f, 0f});
+
+  private static class MutableClock extends Clock {
+    private Instant now = Instant.parse("2025-04-28T12:00:00Z");
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private final MutableClock clock = new MutableClock();
+  private final AnswerCache cache = new AnswerCache(SETTINGS, (userId, question) -> Embedding.from(EMBEDDINGS.get(question)),
+      Runnable::run, clock);
+
+  private Optional<String> lookup(String question) {
+    return cache.lookup("user-1", question).toCompletableFuture().join().answer();
+  }
+
+  private void answer(String question, String answer) {
+    cache.lookup("user-1", question).toCompletableFuture().join().store(answer);
+  }
+
+  @Test
+  public void testSameAndSimilarQuestionsGetTheCachedAnswer() {
+    Assertions.assertEquals(Optional.empty(), lookup(STEPS));
+    answer(STEPS, "8000 steps");
+
+    Assertions.assertEquals(Optional.of("8000 steps"), lookup("How many steps did I walk yesterday?"));
+    Assertions.assertEquals(Optional.of("8000 steps"), lookup(STEPS_REPHRASED));
+    Assertions.assertEquals(Optional.empty(), lookup(SLEEP));
+    Assertions.assertEquals(Optional.empty(), cache.lookup("user-2", STEPS).toCompletableFuture().join().answer());
+  }
+
+  @Test
+  public void testShortFollowUpsAreNeverCached() {
+    answer("and today?", "5000 steps");
+    Assertions.assertEquals(Optional.empty(), lookup("and today?"));
+  }
+
+  @Test
+  public void testAnswerGeneratedWhileDataArrivedIsNotStored() {
+    var lookup = cache.lookup("user-1", STEPS).toCompletableFuture().join();
+    clock.advance(Duration.ofSeconds(1));
+    cache.invalidate("user-1");
+    lookup.store("8000 steps");
+
+    Assertions.assertEquals(Optional.empty(), lookup(STEPS));
+
+    // questions asked after the new data are cached again
+    clock.advance(Duration.ofSeconds(1));
+    answer(STEPS, "9000 steps");
+    Assertions.assertEquals(Optional.of("9000 steps"), lookup(STEPS));
+  }
+
+  @Test
+  public void testExpiredAnswersAndUsersArePruned() {
+    answer(STEPS, "8000 steps");
+    cache.lookup("user-2", SLEEP).toCompletableFuture().join().store("7 hours");
+    Assertions.assertEquals(2, cache.users());
+
+    clock.advance(Duration.ofMinutes(6));
+    Assertions.assertEquals(Optional.empty(), lookup(STEPS));
+
+    // the next write prunes the users whose answers have all expired
+    answer(SLEEP, "6 hours");
+    Assertions.assertEquals(1, cache.users());
+  }
+
+  @Test
+  public void testKeepsTheLatestAnswersPerUser() {
+    answer(STEPS, "8000 steps");
+    answer(SLEEP, "7 hours");
+    answer(HEART_RATE, "60 bpm");
+
+    Assertions.assertEquals(Optional.empty(), lookup(STEPS));
+    Assertions.assertEquals(Optional.of("7 hours"), lookup(SLEEP));
+  }
+}
@@ -0,0 +1,102 @@
+package io.akka.health.agent.application;
+
+import akka.javasdk.agent.SessionMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+public class ConversationMemoryTest {
+
+  // one token per word keeps the budgets readable
+  private static final ToIntFunction<String> WORDS = text -> text.isBlank() ? 0 : text.trim().split("\\s+").length;
+  private static final ConversationMemory.Settings SETTINGS = new ConversationMemory.Settings(10, 20, 8);
+  private static final Instant NOW = Instant.parse("2025-04-28T12:00:00Z");
+
+  private static SessionMessage user(String text) {
+    return new SessionMessage.UserMessage(NOW, text, "health-agent");
+  }
+
+  private static SessionMessage ai(String text) {
+    return new SessionMessage.AiMessage(NOW, text, "health-agent");
+  }
+
+  private static SessionSummaryEntity.State summary(int summarizedMessages) {
+    return new SessionSummaryEntity.State(summarizedMessages == 0 ? "" : "earlier", summarizedMessages);
+  }
+
+  // four turns of 2 + 3 tokens
+  private static final List<SessionMessage> HISTORY = List.of(
+      user("steps yesterday?"), ai("you walked 8000"),
+      user("and today?"), ai("so far 3000"),
+      user("sleep tonight?"), ai("seven hours ten"),
+      user("resting pulse?"), ai("it was 58"));
+
+  @Test
+  public void testRecentWindowStartsAtAUserMessageWithinTheBudget() {
+    Assertions.assertEquals(6, ConversationMemory.recentWindowStart(HISTORY, WORDS, 5));
+    Assertions.assertEquals(4, ConversationMemory.recentWindowStart(HISTORY, WORDS, 10));
+    // a budget that ends inside a turn doesn't cut it
+    Assertions.assertEquals(6, ConversationMemory.recentWindowStart(HISTORY, WORDS, 9));
+    Assertions.assertEquals(0, ConversationMemory.recentWindowStart(HISTORY, WORDS, 100));
+    // not even the latest turn fits
+    Assertions.assertEquals(HISTORY.size(), ConversationMemory.recentWindowStart(HISTORY, WORDS, 2));
+  }
+
+  @Test
+  public void testRecentWindowNeverSeparatesAToolCallFromItsResponse() {
+    var history = List.<SessionMessage>of(
+        user("steps yesterday?"), ai(""), ai("you walked 8000"),
+        user("and today?"), ai("so far 3000"));
+
+    Assertions.assertEquals(3, ConversationMemory.recentWindowStart(history, WORDS, 6));
+    Assertions.assertEquals(0, ConversationMemory.recentWindowStart(history, WORDS, 10));
+  }
+
+  @Test
+  public void testRecentMessagesFollowTheSummary() {
+    // nothing is summarized yet, the turns outside the window are still sent
+    Assertions.assertEquals(HISTORY, ConversationMemory.recentMessages(HISTORY, summary(0)));
+    Assertions.assertEquals(HISTORY.subList(6, 8), ConversationMemory.recentMessages(HISTORY, summary(6)));
+    // a summary that is ahead of the history, e.g. of a session that was reset, sends nothing twice
+    Assertions.assertEquals(List.of(), ConversationMemory.recentMessages(HISTORY, summary(10)));
+  }
+
+  @Test
+  public void testTurnJustOutsideTheWindowStillReachesThePrompt() {
+    var longer = new ArrayList<>(HISTORY);
+    longer.addAll(List.of(user("weight?"), ai("72 kg")));
+
+    // the first unsummarized turn fell out of the window, but is too small for a batch and isn't summarized yet
+    Assertions.assertEquals(2, ConversationMemory.recentWindowStart(longer.subList(4, 10), WORDS, SETTINGS.recentTokenBudget()));
+    Assertions.assertEquals(List.of(), ConversationMemory.overflow(longer, summary(4), WORDS, SETTINGS));
+    Assertions.assertEquals(longer.subList(4, 10), ConversationMemory.recentMessages(longer, summary(4)));
+  }
+
+  @Test
+  public void testOverflowIsSummarizedInBatches() {
+    // two turns (10 tokens) are outside the window, enough for a batch
+    Assertions.assertEquals(HISTORY.subList(0, 4), ConversationMemory.overflow(HISTORY, summary(0), WORDS, SETTINGS));
+    // after they are summarized, the overflow is empty
+    Assertions.assertEquals(List.of(), ConversationMemory.overflow(HISTORY, summary(4), WORDS, SETTINGS));
+
+    // one turn (5 tokens) outside the window waits for the next one
+    var longer = new ArrayList<>(HISTORY);
+    longer.addAll(List.of(user("weight?"), ai("72 kg")));
+    Assertions.assertEquals(List.of(), ConversationMemory.overflow(longer, summary(4), WORDS, SETTINGS));
+    longer.addAll(List.of(user("steps today?"), ai("4000 steps")));
+    Assertions.assertEquals(longer.subList(4, 8), ConversationMemory.overflow(longer, summary(4), WORDS, SETTINGS));
+  }
+
+  @Test
+  public void testSummaryCountsTheFoldedMessages() {
+    var overflow = ConversationMemory.overflow(HISTORY, summary(0), WORDS, SETTINGS);
+    var state = ConversationMemory.summarized(summary(0), "user walked 8000 steps yesterday", overflow);
+
+    Assertions.assertEquals(new SessionSummaryEntity.State("user walked 8000 steps yesterday", 4), state);
+    Assertions.assertEquals(HISTORY.subList(4, 8), ConversationMemory.recentMessages(HISTORY, state));
+  }
+}
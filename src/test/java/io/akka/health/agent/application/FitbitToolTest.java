@@ -0,0 +1,37 @@
+package io.akka.health.agent.application;
+
+import io.akka.health.fitbit.FitbitParser;
+import io.akka.health.fitbit.model.ActivityLogList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class FitbitToolTest {
+
+  private final FitbitParser parser = new FitbitParser();
+
+  @Test
+  public void testAllLoggedExercisesAreSportActivities() throws Exception {
+    var json = """
+        {"activities":[
+          {"activityName":"Run","activityTypeId":90009,"logId":1,"logType":"auto_detected",
+           "startTime":"2025-04-21T07:02:00.000+02:00","duration":1860000,"averageHeartRate":151},
+          {"activityName":"Walk","activityTypeId":90013,"logId":2,"logType":"auto_detected",
+           "startTime":"2025-04-22T12:30:00.000+02:00","duration":1200000},
+          {"activityName":"Weights","activityTypeId":2131,"logId":3,"logType":"manual",
+           "startTime":"2025-04-24T18:00:00.000+02:00","duration":3600000}
+        ],"pagination":{"limit":100,"offset":0,"next":""}}""";
+
+    var exercises = FitbitTool.exercises(parser.parseActivityLogList(json));
+
+    Assertions.assertEquals(List.of("Run", "Walk", "Weights"),
+        exercises.stream().map(ActivityLogList.ActivityLog::activityName).toList());
+    Assertions.assertEquals(151, exercises.getFirst().averageHeartRate());
+  }
+
+  @Test
+  public void testNoActivities() {
+    Assertions.assertEquals(List.of(), FitbitTool.exercises(new ActivityLogList(null, null)));
+  }
+}
@@ -0,0 +1,80 @@
+package io.akka.health.agent.application;
+
+import io.akka.health.agent.application.MetricFastPath.Intent;
+import io.akka.health.agent.application.MetricFastPath.Metric;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+public class MetricFastPathTest {
+
+  private static final LocalDate TODAY = LocalDate.of(2025, 4, 28);
+
+  private static Optional<Intent> match(String question) {
+    return MetricFastPath.match(question, TODAY);
+  }
+
+  @Test
+  public void matchesSingleMetricOfSingleDay() {
+    Assertions.assertEquals(Optional.of(new Intent(Metric.STEPS, TODAY.minusDays(1))),
+        match("How many steps did I walk yesterday?"));
+    Assertions.assertEquals(Optional.of(new Intent(Metric.SLEEP_HOURS, TODAY)),
+        match("How long did I sleep last night?"));
+    Assertions.assertEquals(Optional.of(new Intent(Metric.REM_SLEEP, LocalDate.of(2025, 4, 26))),
+        match("How much REM sleep did I get on 2025-04-26?"));
+    Assertions.assertEquals(Optional.of(new Intent(Metric.RESTING_HEART_RATE, TODAY.minusDays(2))),
+        match("What was my resting heart rate the day before yesterday?"));
+  }
+
+  @Test
+  public void leavesEverythingElseToTheAgent() {
+    // no day
+    Assertions.assertTrue(match("How many steps do I usually walk?").isEmpty());
+    // two metrics
+    Assertions.assertTrue(match("Steps and sleep yesterday?").isEmpty());
+    // two days
+    Assertions.assertTrue(match("Steps on 2025-04-20 or 2025-04-21?").isEmpty());
+    // asks for reasoning
+    Assertions.assertTrue(match("Why did I sleep so badly last night?").isEmpty());
+    Assertions.assertTrue(match("Did I walk more steps yesterday than usual?").isEmpty());
+    // no metric
+    Assertions.assertTrue(match("What did the doctor say yesterday?").isEmpty());
+  }
+
+  @Test
+  public void dayWithoutFitbitDataIsLeftToTheAgent() {
+    var noData = new FitbitTool(null) {
+      @Override
+      Optional<Integer> recordedSteps(LocalDate date) {
+        return Optional.empty();
+      }
+    };
+    var steps = new FitbitTool(null) {
+      @Override
+      Optional<Integer> recordedSteps(LocalDate date) {
+        return Optional.of(8042);
+      }
+    };
+
+    Assertions.assertEquals(Optional.empty(), MetricFastPath.answer(noData, new Intent(Metric.STEPS, TODAY)));
+    Assertions.assertEquals(Optional.of("On April 28, 2025 you walked 8,042 steps."),
+        MetricFastPath.answer(steps, new Intent(Metric.STEPS, TODAY)));
+  }
+
+  @Test
+  public void todayIsTheDayOfTheUser() {
+    // late evening of April 27 in California, already April 28 in UTC and Berlin
+    var clock = Clock.fixed(Instant.parse("2025-04-28T05:00:00Z"), ZoneOffset.UTC);
+    var fastPath = new MetricFastPath(true, null, Runnable::run, clock);
+
+    Assertions.assertEquals(TODAY.minusDays(1), fastPath.today(Optional.of(ZoneId.of("America/Los_Angeles"))));
+    Assertions.assertEquals(TODAY, fastPath.today(Optional.of(ZoneId.of("Europe/Berlin"))));
+    Assertions.assertEquals(TODAY, fastPath.today(Optional.empty()));
+  }
+}
@@ -0,0 +1,57 @@
+package io.akka.health.agent.application;
+
+import io.akka.health.agent.model.HealthAgentRequest.Route;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class QuestionRouterTest {
+
+  private static final QuestionRouter.Settings SETTINGS = new QuestionRouter.Settings(
+      true,
+      12,
+      List.of("steps", "sleep*", "heart rate", "rem"),
+      List.of("diagnos*", "pain", "why"));
+
+  private final QuestionRouter router = new QuestionRouter(SETTINGS, null, null);
+
+  private Route route(String question) {
+    return router.route(question).route();
+  }
+
+  @Test
+  public void testShortLookupsGoToTheSimpleModel() {
+    Assertions.assertEquals(Route.SIMPLE, route("How many steps did I take yesterday?"));
+    Assertions.assertEquals(Route.SIMPLE, route("How much REM did I get last night?"));
+    Assertions.assertEquals(Route.SIMPLE, route("How long was I sleeping?"));
+    Assertions.assertEquals(Route.SIMPLE, route("What was my heart rate today?"));
+  }
+
+  @Test
+  public void testKeywordsMatchWholeWords() {
+    // "rem" is not a lookup in remember or remind
+    Assertions.assertEquals(Route.FULL, route("Can you remember what I told you?"));
+    Assertions.assertEquals(Route.FULL, route("Remind me to stretch"));
+    // "pain" is not a medical topic in Spain
+    Assertions.assertEquals(Route.SIMPLE, route("How many steps did I walk in Spain?"));
+    Assertions.assertEquals(Route.FULL, route("How many steps with this pain?"));
+  }
+
+  @Test
+  public void testKeywordsWithAStarMatchWordPrefixes() {
+    var decision = router.route("What was my diagnosis, and my steps?");
+
+    Assertions.assertEquals(Route.FULL, decision.route());
+    Assertions.assertEquals("mentions 'diagnos*'", decision.reason());
+    Assertions.assertEquals(Route.FULL, route("Was I diagnosed with it? Steps?"));
+  }
+
+  @Test
+  public void testLongQuestionsAndDisabledRoutingGoToTheFullModel() {
+    Assertions.assertEquals(Route.FULL, route("How many steps did I take yesterday compared to all of the other days before it?"));
+
+    var disabled = new QuestionRouter(new QuestionRouter.Settings(false, 12, List.of("steps"), List.of()), null, null);
+    Assertions.assertEquals(Route.FULL, disabled.route("steps?").route());
+  }
+}
@@ -0,0 +1,49 @@
+package io.akka.health.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class MetricsTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    var snapshot = new Metrics.Histogram().snapshot();
+
+    Assertions.assertEquals(0, snapshot.count());
+    Assertions.assertEquals(0, snapshot.p99Ms());
+  }
+
+  @Test
+  public void testHistogramPercentiles() {
+    var histogram = new Metrics.Histogram();
+    // 90 fast requests of 10 ms, 10 slow ones of 1 s
+    for (int i = 0; i < 90; i++) histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+    for (int i = 0; i < 10; i++) histogram.record(TimeUnit.SECONDS.toNanos(1));
+
+    var snapshot = histogram.snapshot();
+
+    Assertions.assertEquals(100, snapshot.count());
+    Assertions.assertEquals(109, snapshot.meanMs(), 0.001);
+    Assertions.assertEquals(1000, snapshot.maxMs(), 0.001);
+    // the buckets are a quarter power of two wide, so a percentile is at most ~19% above the recorded value
+    Assertions.assertTrue(snapshot.p50Ms() >= 10 && snapshot.p50Ms() <= 10 * 1.19, "p50 " + snapshot.p50Ms());
+    Assertions.assertTrue(snapshot.p90Ms() >= 10 && snapshot.p90Ms() <= 10 * 1.19, "p90 " + snapshot.p90Ms());
+    Assertions.assertEquals(1000, snapshot.p95Ms(), 0.001);
+    Assertions.assertEquals(1000, snapshot.p99Ms(), 0.001);
+  }
+
+  @Test
+  public void testHistogramKeepsValuesOutOfRange() {
+    var histogram = new Metrics.Histogram();
+    histogram.record(0);
+    histogram.record(TimeUnit.DAYS.toNanos(1));
+
+    var snapshot = histogram.snapshot();
+
+    Assertions.assertEquals(2, snapshot.count());
+    Assertions.assertEquals(TimeUnit.DAYS.toMillis(1), snapshot.maxMs(), 0.001);
+    Assertions.assertEquals(TimeUnit.DAYS.toMillis(1), snapshot.p99Ms(), 0.001);
+  }
+}
@@ -0,0 +1,22 @@
+package io.akka.health.common;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+public class RequestUsageTest {
+
+  @Test
+  public void testConcurrentRequestsOfOneSessionAreKeptApart() {
+    RequestUsage.begin("request-1");
+    RequestUsage.begin("request-2");
+    RequestUsage.record("request-1", "prompt.question", 3);
+    RequestUsage.record("request-2", "prompt.question", 5);
+    RequestUsage.record("request-1", "completion", 7);
+
+    Assertions.assertEquals(Map.of("completion", 7L, "prompt.question", 3L), RequestUsage.end("request-1"));
+    Assertions.assertEquals(Map.of("prompt.question", 5L), RequestUsage.end("request-2"));
+    Assertions.assertEquals(Map.of(), RequestUsage.end("request-1"));
+  }
+}
@@ -0,0 +1,74 @@
+package io.akka.health.digest.application;
+
+import io.akka.health.fitbit.model.ActiveZoneMinutesData;
+import io.akka.health.fitbit.model.DailyActivitySummary;
+import io.akka.health.fitbit.model.SleepLogData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class DailyDigestSchedulerTest {
+
+  private static final LocalDate DAY = LocalDate.of(2025, 4, 27);
+
+  private static DailyActivitySummary activity(Integer steps, Integer restingHeartRate, DailyActivitySummary.Activity... activities) {
+    var summary = new DailyActivitySummary.Summary(null, null, null, null, null, null, null, null, null, null, null,
+        restingHeartRate, null, steps, null);
+    return new DailyActivitySummary(List.of(activities), null, summary);
+  }
+
+  private static DailyActivitySummary.Activity workout(String name, long minutes) {
+    return new DailyActivitySummary.Activity(null, null, null, null, null, minutes * 60000, null, null, null, null,
+        null, name, DAY, null, null);
+  }
+
+  private static SleepLogData.Sleep sleep(int remMinutes) {
+    var rem = new SleepLogData.SleepLevelSummaryItem(null, remMinutes, null);
+    var levels = new SleepLogData.SleepLevels(null, null, new SleepLogData.SleepLevelSummary(null, null, rem, null));
+    return new SleepLogData.Sleep(DAY.plusDays(1), null, null, null, null, true, levels, null, null, null, null, null,
+        null, null, "stages");
+  }
+
+  private static SleepLogData nightSleep(int minutesAsleep, SleepLogData.Sleep... sleeps) {
+    return new SleepLogData(List.of(sleeps), new SleepLogData.SleepSummary(null, minutesAsleep, sleeps.length, null));
+  }
+
+  private static ActiveZoneMinutesData azm(int minutes) {
+    var value = new ActiveZoneMinutesData.ActiveZoneMinutesValue(minutes, null, null, null);
+    return new ActiveZoneMinutesData(List.of(new ActiveZoneMinutesData.DailyActiveZoneMinutes(DAY, value)), null);
+  }
+
+  @Test
+  public void testSummarizesTheDayWithTheFollowingNight() {
+    var day = DailyDigestScheduler.summarize(DAY,
+        activity(9500, 58, workout("Run", 32), workout("Weights", 45)),
+        nightSleep(430, sleep(80), sleep(15)),
+        azm(41));
+
+    Assertions.assertEquals(DAY, day.date());
+    Assertions.assertEquals(9500, day.steps());
+    Assertions.assertEquals(58, day.restingHeartRate());
+    Assertions.assertEquals(List.of("Run (32 min)", "Weights (45 min)"), day.workouts());
+    Assertions.assertEquals(430, day.sleepMinutes());
+    Assertions.assertEquals(95, day.remSleepMinutes());
+    Assertions.assertEquals(41, day.activeZoneMinutes());
+  }
+
+  @Test
+  public void testMissingDataIsZeroOrUnknown() {
+    var day = DailyDigestScheduler.summarize(DAY,
+        new DailyActivitySummary(null, null, null),
+        new SleepLogData(null, null),
+        new ActiveZoneMinutesData(List.of(), null));
+
+    Assertions.assertEquals(0, day.steps());
+    Assertions.assertEquals(-1, day.restingHeartRate());
+    Assertions.assertEquals(List.of(), day.workouts());
+    Assertions.assertEquals(0, day.sleepMinutes());
+    Assertions.assertEquals(0, day.remSleepMinutes());
+    Assertions.assertEquals(0, day.activeZoneMinutes());
+    Assertions.assertTrue(day.toPromptLine().contains("resting HR unknown"));
+  }
+}
@@ -0,0 +1,45 @@
+package io.akka.health.digest.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class DailyDigestTest {
+
+  private static final LocalDate DAY = LocalDate.of(2025, 4, 27);
+
+  private static DailyDigest.Day day(LocalDate date, int steps) {
+    return new DailyDigest.Day(date, steps, 420, 90, 60, 30, List.of());
+  }
+
+  @Test
+  public void testResummarizedDaysReplaceTheOldOnes() {
+    var digest = DailyDigest.empty("user-1")
+        .withDays(List.of(day(DAY.minusDays(1), 8000), day(DAY, 100)), 30)
+        .withDays(List.of(day(DAY, 9500), day(DAY.plusDays(1), 7000)), 30);
+
+    Assertions.assertEquals(List.of(day(DAY.minusDays(1), 8000), day(DAY, 9500), day(DAY.plusDays(1), 7000)), digest.days());
+    Assertions.assertEquals(DAY.plusDays(1), digest.lastDay());
+  }
+
+  @Test
+  public void testKeepsTheMostRecentDays() {
+    var digest = DailyDigest.empty("user-1")
+        .withDays(List.of(day(DAY, 1), day(DAY.minusDays(2), 2), day(DAY.minusDays(1), 3)), 2);
+
+    Assertions.assertEquals(List.of(DAY.minusDays(1), DAY), digest.days().stream().map(DailyDigest.Day::date).toList());
+  }
+
+  @Test
+  public void testPromptHasOneLinePerDay() {
+    var digest = DailyDigest.empty("user-1")
+        .withDays(List.of(day(DAY.minusDays(2), 1), day(DAY.minusDays(1), 2), day(DAY, 3)), 30);
+
+    var prompt = digest.toPrompt(2);
+    Assertions.assertEquals(2, prompt.lines().count());
+    Assertions.assertTrue(prompt.startsWith(DAY.minusDays(1) + ": steps 2, sleep the following night 7.0h (REM 90 min)"));
+    Assertions.assertEquals("No daily digest available.", DailyDigest.empty("user-1").toPrompt(7));
+  }
+}
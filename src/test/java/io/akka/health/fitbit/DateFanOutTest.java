@@ -0,0 +1,71 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DateFanOutTest {
+
+  private static final LocalDate START = LocalDate.of(2025, 4, 21);
+
+  @Test
+  public void returnsResultsInDateOrder() {
+    var pending = new ArrayList<CompletableFuture<LocalDate>>();
+    var result = DateFanOut.forEachDay(START, START.plusDays(6), 7, date -> {
+      var future = new CompletableFuture<LocalDate>();
+      pending.add(future);
+      return future;
+    }).toCompletableFuture();
+
+    Assertions.assertEquals(7, pending.size());
+    // complete in reverse order
+    for (int i = pending.size() - 1; i >= 0; i--) {
+      pending.get(i).complete(START.plusDays(i));
+    }
+    Assertions.assertEquals(START.datesUntil(START.plusDays(7)).toList(), result.join());
+  }
+
+  @Test
+  public void keepsAtMostParallelismFetchesInFlight() {
+    var inFlight = new AtomicInteger();
+    var maxInFlight = new AtomicInteger();
+    List<CompletableFuture<Integer>> pending = new ArrayList<>();
+
+    var result = DateFanOut.forEachDay(START, START.plusDays(9), 3, date -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      var future = new CompletableFuture<Integer>();
+      pending.add(future);
+      return future.whenComplete((value, error) -> inFlight.decrementAndGet());
+    }).toCompletableFuture();
+
+    Assertions.assertEquals(3, pending.size());
+    for (int i = 0; i < pending.size(); i++) {
+      pending.get(i).complete(i);
+    }
+    Assertions.assertEquals(10, result.join().size());
+    Assertions.assertEquals(3, maxInFlight.get());
+  }
+
+  @Test
+  public void failsWithTheFirstFailure() {
+    var result = DateFanOut.forEachDay(START, START.plusDays(3), 2, date ->
+        date.equals(START.plusDays(1))
+            ? CompletableFuture.failedFuture(new IllegalStateException("rate limited"))
+            : CompletableFuture.completedFuture(date)).toCompletableFuture();
+
+    var error = Assertions.assertThrows(CompletionException.class, result::join);
+    Assertions.assertInstanceOf(IllegalStateException.class, error.getCause());
+  }
+
+  @Test
+  public void emptyRange() {
+    var result = DateFanOut.forEachDay(START, START.minusDays(1), 4, CompletableFuture::completedFuture);
+    Assertions.assertEquals(List.of(), result.toCompletableFuture().join());
+  }
+}
@@ -0,0 +1,176 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FitbitCacheTest {
+
+  private static final ZoneId ZONE = ZoneOffset.UTC;
+  private static final LocalDate TODAY = LocalDate.of(2025, 4, 28);
+
+  private static class MutableClock extends Clock {
+    private Instant now = TODAY.atTime(12, 0).toInstant(ZoneOffset.UTC);
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZONE;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private static void get(FitbitCache cache, LocalDate date, AtomicInteger fetches) {
+    cache.getOrFetchAsync("sleep", date, () -> CompletableFuture.completedFuture(fetches.incrementAndGet()))
+        .toCompletableFuture().join();
+  }
+
+  @Test
+  public void testPastDaysAreKept() {
+    var clock = new MutableClock();
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), clock);
+    var fetches = new AtomicInteger();
+
+    get(cache, TODAY.minusDays(2), fetches);
+    clock.advance(Duration.ofHours(6));
+    get(cache, TODAY.minusDays(2), fetches);
+
+    Assertions.assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void testRecentDaysExpireInEveryTimeZone() {
+    var clock = new MutableClock();
+    // 23:00 UTC, the day is already over east of UTC, but not yet west of it
+    clock.advance(Duration.ofHours(11));
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), clock);
+    var fetches = new AtomicInteger();
+
+    get(cache, TODAY, fetches);
+    get(cache, TODAY.minusDays(1), fetches);
+    clock.advance(Duration.ofMinutes(6));
+    get(cache, TODAY, fetches);
+    get(cache, TODAY.minusDays(1), fetches);
+
+    Assertions.assertEquals(4, fetches.get());
+  }
+
+  @Test
+  public void testTodayExpires() {
+    var clock = new MutableClock();
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), clock);
+    var fetches = new AtomicInteger();
+
+    get(cache, TODAY, fetches);
+    get(cache, TODAY, fetches);
+    Assertions.assertEquals(1, fetches.get());
+
+    clock.advance(Duration.ofMinutes(6));
+    get(cache, TODAY, fetches);
+    Assertions.assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    var cache = new FitbitCache(new FitbitCache.Settings(2, Duration.ofMinutes(5)), new MutableClock());
+    var fetches = new AtomicInteger();
+
+    get(cache, TODAY.minusDays(1), fetches);
+    get(cache, TODAY.minusDays(2), fetches);
+    // touch the first entry, so the second one is the least recently used
+    get(cache, TODAY.minusDays(1), fetches);
+    get(cache, TODAY.minusDays(3), fetches);
+
+    Assertions.assertEquals(2, cache.size());
+    Assertions.assertEquals(3, fetches.get());
+    get(cache, TODAY.minusDays(1), fetches);
+    Assertions.assertEquals(3, fetches.get());
+    get(cache, TODAY.minusDays(2), fetches);
+    Assertions.assertEquals(4, fetches.get());
+  }
+
+  @Test
+  public void testAsyncFetchIsCachedOnlyOnSuccess() {
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), new MutableClock());
+    var fetches = new AtomicInteger();
+
+    var failed = cache.getOrFetchAsync("sleep", TODAY.minusDays(1), () -> {
+      fetches.incrementAndGet();
+      return CompletableFuture.failedFuture(new RuntimeException("Failed to get sleep log data"));
+    });
+    Assertions.assertTrue(failed.toCompletableFuture().isCompletedExceptionally());
+    Assertions.assertEquals(0, cache.size());
+
+    cache.getOrFetchAsync("sleep", TODAY.minusDays(1), () -> CompletableFuture.completedFuture(fetches.incrementAndGet()));
+    var cached = cache.getOrFetchAsync("sleep", TODAY.minusDays(1), () -> CompletableFuture.completedFuture(fetches.incrementAndGet()));
+
+    Assertions.assertEquals(2, cached.toCompletableFuture().join());
+    Assertions.assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void testRefreshReplacesTheCachedValue() {
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), new MutableClock());
+    var fetches = new AtomicInteger();
+
+    cache.getOrFetchAsync("sleep", TODAY.minusDays(1), () -> CompletableFuture.completedFuture(fetches.incrementAndGet()));
+    var refreshed = cache.refreshAsync("sleep", TODAY.minusDays(1), () -> CompletableFuture.completedFuture(fetches.incrementAndGet()));
+    var cached = cache.getOrFetchAsync("sleep", TODAY.minusDays(1), () -> CompletableFuture.completedFuture(fetches.incrementAndGet()));
+
+    Assertions.assertEquals(2, refreshed.toCompletableFuture().join());
+    Assertions.assertEquals(2, cached.toCompletableFuture().join());
+    Assertions.assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void testInvalidationRemovesTheDateAndLaterOnes() {
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), new MutableClock());
+    var fetches = new AtomicInteger();
+
+    get(cache, TODAY.minusDays(3), fetches);
+    get(cache, TODAY.minusDays(2), fetches);
+    cache.invalidateFrom("sleep", TODAY.minusDays(2));
+    get(cache, TODAY.minusDays(3), fetches);
+    get(cache, TODAY.minusDays(2), fetches);
+
+    Assertions.assertEquals(3, fetches.get());
+  }
+
+  @Test
+  public void testFetchInFlightDuringInvalidationIsNotCached() {
+    var cache = new FitbitCache(new FitbitCache.Settings(10, Duration.ofMinutes(5)), new MutableClock());
+    var stale = new CompletableFuture<String>();
+
+    var fetched = cache.getOrFetchAsync("user-1/sleep", TODAY.minusDays(3), () -> stale);
+    var otherUser = cache.getOrFetchAsync("user-2/sleep", TODAY.minusDays(3), () -> CompletableFuture.completedFuture("user-2"));
+    cache.invalidateFrom("user-1/", TODAY.minusDays(3));
+    stale.complete("before the change");
+
+    Assertions.assertEquals("before the change", fetched.toCompletableFuture().join());
+    Assertions.assertEquals("user-2", otherUser.toCompletableFuture().join());
+    Assertions.assertEquals(1, cache.size());
+    var refetched = cache.getOrFetchAsync("user-1/sleep", TODAY.minusDays(3), () -> CompletableFuture.completedFuture("after the change"));
+    Assertions.assertEquals("after the change", refetched.toCompletableFuture().join());
+    Assertions.assertEquals(2, cache.size());
+  }
+}
@@ -0,0 +1,49 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public class FitbitParserTest {
+
+  private final FitbitParser parser = new FitbitParser();
+
+  @Test
+  public void testHeartRateSeriesMatchesRecords() throws Exception {
+    var json = HeartRateParsingBenchmark.response(60);
+
+    var records = parser.parseHeartRateData(json);
+    var series = parser.parseHeartRateSeries(json);
+
+    var dataset = records.activitiesHeartIntraday().dataset();
+    Assertions.assertEquals(LocalDate.of(2025, 4, 24), series.date());
+    Assertions.assertEquals(60, series.restingHeartRate());
+    Assertions.assertEquals(dataset.size(), series.size());
+    for (int i = 0; i < dataset.size(); i++) {
+      Assertions.assertEquals(LocalTime.parse(dataset.get(i).time()).toSecondOfDay(), series.secondsOfDay()[i]);
+      Assertions.assertEquals(dataset.get(i).value(), (int) series.bpm()[i]);
+    }
+  }
+
+  @Test
+  public void testHeartRateSeriesWithoutIntradayData() throws Exception {
+    var series = parser.parseHeartRateSeries("""
+        {"activities-heart":[{"dateTime":"2025-04-24","value":{"heartRateZones":[],"restingHeartRate":58}}]}""");
+
+    Assertions.assertEquals(58, series.restingHeartRate());
+    Assertions.assertEquals(0, series.size());
+  }
+
+  @Test
+  public void testHeartRateSeriesIgnoresFieldOrderAndUnknownFields() throws Exception {
+    var series = parser.parseHeartRateSeries("""
+        {"activities-heart-intraday":{"datasetInterval":1,"dataset":[{"value":71,"extra":{"a":[1]},"time":"23:59:59"}]},
+         "activities-heart":[{"value":{"restingHeartRate":null},"dateTime":"2025-04-24"}]}""");
+
+    Assertions.assertNull(series.restingHeartRate());
+    Assertions.assertEquals(86399, series.secondsOfDay()[0]);
+    Assertions.assertEquals(71, series.bpm()[0]);
+  }
+}
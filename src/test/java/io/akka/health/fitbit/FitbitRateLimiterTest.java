@@ -0,0 +1,71 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static io.akka.health.fitbit.FitbitRateLimiter.Priority.BACKGROUND;
+import static io.akka.health.fitbit.FitbitRateLimiter.Priority.INTERACTIVE;
+
+public class FitbitRateLimiterTest {
+
+  private static final String USER = "-";
+
+  private static FitbitRateLimiter limiter(int quota, int reserve, Duration interactiveMaxDelay, Duration backgroundMaxDelay) {
+    return new FitbitRateLimiter(new FitbitRateLimiter.Settings(quota, reserve, interactiveMaxDelay, backgroundMaxDelay));
+  }
+
+  @Test
+  public void testBackgroundLeavesTheReserveToInteractive() {
+    var limiter = limiter(150, 30, Duration.ZERO, Duration.ZERO);
+    limiter.acquire(USER, INTERACTIVE).toCompletableFuture().join();
+    limiter.completed(USER, 200, Optional.of("30"), Optional.of("1800"));
+
+    var background = limiter.acquire(USER, BACKGROUND).toCompletableFuture();
+    var error = Assertions.assertThrows(CompletionException.class, background::join);
+    Assertions.assertInstanceOf(FitbitRateLimiter.RateLimited.class, error.getCause());
+
+    Assertions.assertTrue(limiter.acquire(USER, INTERACTIVE).toCompletableFuture().isDone());
+  }
+
+  @Test
+  public void testRequestsInFlightCountAgainstTheQuota() {
+    var limiter = limiter(150, 0, Duration.ZERO, Duration.ZERO);
+    limiter.acquire(USER, INTERACTIVE).toCompletableFuture().join();
+    limiter.completed(USER, 200, Optional.of("2"), Optional.of("1800"));
+
+    Assertions.assertFalse(limiter.acquire(USER, INTERACTIVE).toCompletableFuture().isCompletedExceptionally());
+    Assertions.assertFalse(limiter.acquire(USER, INTERACTIVE).toCompletableFuture().isCompletedExceptionally());
+    Assertions.assertTrue(limiter.acquire(USER, INTERACTIVE).toCompletableFuture().isCompletedExceptionally());
+  }
+
+  @Test
+  public void testTooManyRequestsExhaustsTheQuota() {
+    var limiter = limiter(150, 0, Duration.ZERO, Duration.ZERO);
+    limiter.acquire(USER, INTERACTIVE).toCompletableFuture().join();
+    limiter.completed(USER, 429, Optional.empty(), Optional.of("600"));
+
+    var error = Assertions.assertThrows(CompletionException.class, limiter.acquire(USER, INTERACTIVE).toCompletableFuture()::join);
+    var rateLimited = (FitbitRateLimiter.RateLimited) error.getCause();
+    Assertions.assertTrue(rateLimited.retryAfter().toSeconds() > 590);
+  }
+
+  @Test
+  public void testWaitsForTheResetWithinTheMaxDelay() throws Exception {
+    var limiter = limiter(150, 0, Duration.ofSeconds(5), Duration.ofSeconds(5));
+    limiter.acquire(USER, INTERACTIVE).toCompletableFuture().join();
+    limiter.completed(USER, 200, Optional.of("0"), Optional.of("1"));
+
+    var background = limiter.acquire(USER, BACKGROUND).toCompletableFuture();
+    var interactive = limiter.acquire(USER, INTERACTIVE).toCompletableFuture();
+    Assertions.assertFalse(interactive.isDone());
+    Assertions.assertFalse(background.isDone());
+
+    interactive.get(3, TimeUnit.SECONDS);
+    background.get(3, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,50 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.fitbit.model.SubscriptionNotification;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class FitbitSubscriptionsTest {
+
+  private static final String SECRET = "client-secret";
+  private static final byte[] BODY = """
+      [{"collectionType":"sleep","date":"2025-04-24","ownerId":"ABC123","ownerType":"user","subscriptionId":"user-1"}]"""
+      .getBytes(StandardCharsets.UTF_8);
+
+  private static SubscriptionNotification notification(String collectionType, String date) {
+    return new SubscriptionNotification(collectionType, date, "ABC123", "user", "user-1");
+  }
+
+  @Test
+  public void testSignatureIsCheckedWithTheClientSecret() {
+    var signature = FitbitSubscriptions.sign(BODY, SECRET);
+
+    Assertions.assertTrue(FitbitSubscriptions.hasValidSignature(BODY, signature, SECRET));
+    Assertions.assertFalse(FitbitSubscriptions.hasValidSignature(BODY, signature, "other-secret"));
+    Assertions.assertFalse(FitbitSubscriptions.hasValidSignature("[]".getBytes(StandardCharsets.UTF_8), signature, SECRET));
+    Assertions.assertFalse(FitbitSubscriptions.hasValidSignature(BODY, null, SECRET));
+    Assertions.assertFalse(FitbitSubscriptions.hasValidSignature(BODY, signature, null));
+  }
+
+  @Test
+  public void testVerificationCodeMustMatch() {
+    Assertions.assertTrue(FitbitSubscriptions.isVerificationCode("code", "code"));
+    Assertions.assertFalse(FitbitSubscriptions.isVerificationCode("code", "other"));
+    Assertions.assertFalse(FitbitSubscriptions.isVerificationCode("code", null));
+    // an unconfigured code verifies nothing
+    Assertions.assertFalse(FitbitSubscriptions.isVerificationCode("", ""));
+  }
+
+  @Test
+  public void testOnlyChangesOfSyncedCollectionsAreFetched() {
+    Assertions.assertTrue(FitbitSubscriptions.isDataChange(notification("activities", "2025-04-24")));
+    Assertions.assertTrue(FitbitSubscriptions.isDataChange(notification("sleep", "2025-04-24")));
+    Assertions.assertTrue(FitbitSubscriptions.isDataChange(notification("body", "2025-04-24")));
+    Assertions.assertFalse(FitbitSubscriptions.isDataChange(notification("foods", "2025-04-24")));
+    Assertions.assertFalse(FitbitSubscriptions.isDataChange(notification("userRevokedAccess", "2025-04-24")));
+    Assertions.assertFalse(FitbitSubscriptions.isDataChange(notification("sleep", "yesterday")));
+    Assertions.assertFalse(FitbitSubscriptions.isDataChange(notification(null, "2025-04-24")));
+  }
+}
@@ -0,0 +1,154 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FitbitTokenRefresherTest {
+
+  private static final String USER = "user-1";
+  private static final long NOW = 1_000_000;
+
+  private final Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+  private final FitbitTokenStore tokens = FitbitTokenStore.inMemory();
+  private final AtomicInteger refreshes = new AtomicInteger();
+  private final CompletableFuture<Void> tokenEndpoint = new CompletableFuture<>();
+
+  // answers once tokenEndpoint completes, with a token that is valid for an hour
+  private final FitbitTokenRefresher refresher = new FitbitTokenRefresher(tokens, token -> {
+    int n = refreshes.incrementAndGet();
+    return tokenEndpoint.thenApply(__ -> {
+      var refreshed = new FitbitTokenStore.Token(USER, "access-" + n, "refresh-" + n, NOW + 3_600_000,
+              FitbitTokenRefresher.refreshAt(NOW, 3600));
+      tokens.put(refreshed);
+      return refreshed;
+    });
+  }, clock);
+
+  private static FitbitTokenStore.Token token(long expiresAt, long refreshAt) {
+    return new FitbitTokenStore.Token(USER, "access-0", "refresh-0", expiresAt, refreshAt);
+  }
+
+  @Test
+  public void testConcurrentRequestsWithAnExpiredTokenShareOneRefresh() {
+    tokens.put(token(NOW - 1, NOW - 1000));
+
+    var first = refresher.validToken(USER).toCompletableFuture();
+    var second = refresher.validToken(USER).toCompletableFuture();
+    Assertions.assertFalse(first.isDone());
+    tokenEndpoint.complete(null);
+
+    Assertions.assertEquals("access-1", first.join().accessToken());
+    Assertions.assertEquals("access-1", second.join().accessToken());
+    Assertions.assertEquals(1, refreshes.get());
+  }
+
+  @Test
+  public void testTokenDueForRefreshIsUsedWhileItIsRefreshedInTheBackground() {
+    tokens.put(token(NOW + 60_000, NOW - 1));
+
+    var token = refresher.validToken(USER).toCompletableFuture();
+    Assertions.assertEquals("access-0", token.join().accessToken());
+    Assertions.assertEquals(1, refreshes.get());
+
+    tokenEndpoint.complete(null);
+    Assertions.assertEquals("access-1", refresher.validToken(USER).toCompletableFuture().join().accessToken());
+    Assertions.assertEquals(1, refreshes.get());
+  }
+
+  @Test
+  public void testStaleCallerDoesNotRefreshAgain() {
+    var stale = token(NOW - 1, NOW - 1000);
+    tokens.put(stale);
+    tokenEndpoint.complete(null);
+    refresher.refresh(stale).toCompletableFuture().join();
+
+    Assertions.assertEquals("access-1", refresher.refresh(stale).toCompletableFuture().join().accessToken());
+    Assertions.assertEquals(1, refreshes.get());
+  }
+
+  /**
+   * The store of this node, with the token stored by another node and its claim on the refresh.
+   */
+  private static class OtherNode implements FitbitTokenStore.Persistence {
+    volatile FitbitTokenStore.Token stored;
+    volatile boolean claimed;
+
+    @Override
+    public CompletionStage<Optional<FitbitTokenStore.Token>> load(String userId) {
+      return CompletableFuture.completedFuture(Optional.ofNullable(stored));
+    }
+
+    @Override
+    public CompletionStage<Void> save(FitbitTokenStore.Token token) {
+      stored = token;
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletionStage<Boolean> claimRefresh(FitbitTokenStore.Token token, Duration lease) {
+      return CompletableFuture.completedFuture(!claimed && stored.refreshToken().equals(token.refreshToken()));
+    }
+  }
+
+  private static FitbitTokenStore.Token refreshedElsewhere() {
+    return new FitbitTokenStore.Token(USER, "access-other", "refresh-other", NOW + 3_600_000,
+            FitbitTokenRefresher.refreshAt(NOW, 3600));
+  }
+
+  @Test
+  public void testTheStoredTokenIsRefreshedInsteadOfTheOneInMemory() {
+    var otherNode = new OtherNode();
+    var tokens = new FitbitTokenStore(otherNode, __ -> false, Duration.ofMinutes(1));
+    var stale = token(NOW - 1, NOW - 1000);
+    tokens.put(stale);
+    otherNode.stored = refreshedElsewhere();
+    var refresher = new FitbitTokenRefresher(tokens, token -> CompletableFuture.failedFuture(new AssertionError("refreshed")), clock);
+
+    Assertions.assertEquals("access-other", refresher.refresh(stale).toCompletableFuture().join().accessToken());
+  }
+
+  @Test
+  public void testWaitsForTheRefreshOfTheNodeThatClaimedIt() {
+    var otherNode = new OtherNode();
+    var tokens = new FitbitTokenStore(otherNode, __ -> false, Duration.ofMinutes(1));
+    var stale = token(NOW - 1, NOW - 1000);
+    tokens.put(stale);
+    otherNode.claimed = true;
+    var refresher = new FitbitTokenRefresher(tokens, token -> CompletableFuture.failedFuture(new AssertionError("refreshed")), clock);
+
+    var refreshed = refresher.refresh(stale).toCompletableFuture();
+    Assertions.assertFalse(refreshed.isDone());
+    otherNode.stored = refreshedElsewhere();
+
+    Assertions.assertEquals("access-other", refreshed.join().accessToken());
+  }
+
+  @Test
+  public void testFailedRefreshLooksForTheTokenOfAnotherNode() {
+    var otherNode = new OtherNode();
+    var tokens = new FitbitTokenStore(otherNode, __ -> false, Duration.ofMinutes(1));
+    var stale = token(NOW - 1, NOW - 1000);
+    tokens.put(stale);
+    var refresher = new FitbitTokenRefresher(tokens, token -> {
+      // the other node used the refresh token first
+      otherNode.stored = refreshedElsewhere();
+      return CompletableFuture.failedFuture(new RuntimeException("invalid_grant"));
+    }, clock);
+
+    Assertions.assertEquals("access-other", refresher.refresh(stale).toCompletableFuture().join().accessToken());
+  }
+
+  @Test
+  public void testRefreshIsDueAfterEightyPercentOfTheLifetime() {
+    Assertions.assertEquals(NOW + 2_880_000, FitbitTokenRefresher.refreshAt(NOW, 3600));
+  }
+}
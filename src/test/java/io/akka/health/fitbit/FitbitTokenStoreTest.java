@@ -0,0 +1,160 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FitbitTokenStoreTest {
+
+  private static class MapPersistence implements FitbitTokenStore.Persistence {
+    final Map<String, FitbitTokenStore.Token> saved = new ConcurrentHashMap<>();
+    final AtomicInteger loads = new AtomicInteger();
+    final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+    @Override
+    public CompletionStage<Optional<FitbitTokenStore.Token>> load(String userId) {
+      loads.incrementAndGet();
+      return loaded.thenApply(__ -> Optional.ofNullable(saved.get(userId)));
+    }
+
+    @Override
+    public CompletionStage<Void> save(FitbitTokenStore.Token token) {
+      saved.put(token.userId(), token);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletionStage<Boolean> claimRefresh(FitbitTokenStore.Token token, Duration lease) {
+      return CompletableFuture.completedFuture(true);
+    }
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now = Instant.parse("2025-04-28T12:00:00Z");
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private static FitbitTokenStore store(FitbitTokenStore.Persistence persistence, Clock clock) {
+    return new FitbitTokenStore(persistence, Set.of("user-1")::contains, Duration.ofMinutes(1), clock);
+  }
+
+  private static FitbitTokenStore.Token token(String userId, String accessToken) {
+    return new FitbitTokenStore.Token(userId, accessToken, "refresh-" + accessToken, 1000, 800);
+  }
+
+  @Test
+  public void testConcurrentFirstUsesShareOneLoad() {
+    var persistence = new MapPersistence();
+    persistence.saved.put("user-1", token("user-1", "a"));
+    var store = store(persistence, Clock.systemUTC());
+
+    var first = store.get("user-1").toCompletableFuture();
+    var second = store.get("user-1").toCompletableFuture();
+    persistence.loaded.complete(null);
+
+    Assertions.assertEquals("a", first.join().orElseThrow().accessToken());
+    Assertions.assertEquals("a", second.join().orElseThrow().accessToken());
+    Assertions.assertEquals(1, persistence.loads.get());
+  }
+
+  @Test
+  public void testTokensAreKeptPerUserAndPersisted() {
+    var persistence = new MapPersistence();
+    persistence.loaded.complete(null);
+    var store = store(persistence, Clock.systemUTC());
+
+    store.put(token("user-1", "a"));
+    store.put(token("user-2", "b"));
+
+    Assertions.assertEquals("a", store.get("user-1").toCompletableFuture().join().orElseThrow().accessToken());
+    Assertions.assertEquals("b", store.get("user-2").toCompletableFuture().join().orElseThrow().accessToken());
+    Assertions.assertEquals("b", persistence.saved.get("user-2").accessToken());
+  }
+
+  @Test
+  public void testUsersWithoutATokenUseTheSharedToken() {
+    var store = FitbitTokenStore.inMemory();
+    Assertions.assertTrue(store.get("user-1").toCompletableFuture().join().isEmpty());
+
+    store.setSharedToken("shared", "", 1000);
+    store.put(token("user-2", "own"));
+
+    var shared = store.get("user-1").toCompletableFuture().join().orElseThrow();
+    Assertions.assertEquals(FitbitTokenStore.SHARED_USER, shared.userId());
+    Assertions.assertFalse(shared.canRefresh());
+    Assertions.assertEquals("own", store.get("user-2").toCompletableFuture().join().orElseThrow().accessToken());
+  }
+
+  @Test
+  public void testMissingTokensAreLoadedAgain() {
+    var persistence = new MapPersistence();
+    persistence.loaded.complete(null);
+    var store = store(persistence, Clock.systemUTC());
+
+    Assertions.assertTrue(store.get("user-2").toCompletableFuture().join().isEmpty());
+    // connected on another node
+    persistence.saved.put("user-2", token("user-2", "a"));
+
+    Assertions.assertEquals("a", store.get("user-2").toCompletableFuture().join().orElseThrow().accessToken());
+    Assertions.assertEquals(2, persistence.loads.get());
+  }
+
+  @Test
+  public void testTokensAreLoadedAgainAfterReloadAfter() {
+    var persistence = new MapPersistence();
+    persistence.loaded.complete(null);
+    var clock = new MutableClock();
+    var store = store(persistence, clock);
+    persistence.saved.put("user-2", token("user-2", "a"));
+
+    Assertions.assertEquals("a", store.get("user-2").toCompletableFuture().join().orElseThrow().accessToken());
+    // refreshed on another node
+    persistence.saved.put("user-2", token("user-2", "b"));
+    Assertions.assertEquals("a", store.get("user-2").toCompletableFuture().join().orElseThrow().accessToken());
+    clock.advance(Duration.ofMinutes(1));
+
+    Assertions.assertEquals("b", store.get("user-2").toCompletableFuture().join().orElseThrow().accessToken());
+    Assertions.assertEquals(2, persistence.loads.get());
+  }
+
+  @Test
+  public void testOnlyConfiguredUsersUseTheSharedToken() {
+    var persistence = new MapPersistence();
+    persistence.loaded.complete(null);
+    var store = store(persistence, Clock.systemUTC());
+    store.setSharedToken("shared", "", 1000);
+
+    Assertions.assertEquals("shared", store.get("user-1").toCompletableFuture().join().orElseThrow().accessToken());
+    Assertions.assertTrue(store.get("user-2").toCompletableFuture().join().isEmpty());
+  }
+}
@@ -0,0 +1,111 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.fitbit.model.HeartRateData;
+import io.akka.health.fitbit.model.HeartRateSeries;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+public class HeartRateAnalyticsTest {
+
+  private static final LocalDate DATE = LocalDate.of(2025, 4, 24);
+  private static final List<HeartRateData.HeartRateZone> ZONES = List.of(
+      new HeartRateData.HeartRateZone(null, 97, 30, null, "Out of Range"),
+      new HeartRateData.HeartRateZone(null, 135, 97, null, "Fat Burn"),
+      new HeartRateData.HeartRateZone(null, 164, 135, null, "Cardio"),
+      new HeartRateData.HeartRateZone(null, 220, 164, null, "Peak"));
+
+  /**
+   * One reading per minute from 08:00: an hour at 60 bpm, 10 minutes at 170 bpm, then 62, 150, 120 and 90 bpm
+   * in the minutes of the recovery and another hour at 60 bpm.
+   */
+  private static HeartRateSeries workoutMorning() {
+    int[] values = new int[134];
+    for (int i = 0; i < 60; i++) values[i] = 60;
+    for (int i = 60; i < 70; i++) values[i] = 170;
+    values[70] = 150;
+    values[71] = 120;
+    values[72] = 90;
+    values[73] = 62;
+    for (int i = 74; i < 134; i++) values[i] = 60;
+
+    int[] seconds = new int[values.length];
+    short[] bpm = new short[values.length];
+    for (int i = 0; i < values.length; i++) {
+      seconds[i] = 8 * 3600 + i * 60;
+      bpm[i] = (short) values[i];
+    }
+    return new HeartRateSeries(DATE, 58, ZONES, seconds, bpm);
+  }
+
+  @Test
+  public void testDistribution() {
+    var summary = HeartRateAnalytics.analyze(workoutMorning(), HeartRateAnalytics.Settings.defaults());
+
+    Assertions.assertEquals(134, summary.readings());
+    Assertions.assertEquals(134, summary.minutesCovered());
+    Assertions.assertEquals(60, summary.min());
+    Assertions.assertEquals(170, summary.max());
+    Assertions.assertEquals(60, summary.percentiles().p50());
+    Assertions.assertEquals(170, summary.percentiles().p95());
+  }
+
+  @Test
+  public void testTimeInZone() {
+    var summary = HeartRateAnalytics.analyze(workoutMorning(), HeartRateAnalytics.Settings.defaults());
+
+    var minutes = summary.zones().stream().mapToInt(HeartRateAnalytics.ZoneTime::minutes).toArray();
+    Assertions.assertArrayEquals(new int[]{122, 1, 1, 10}, minutes);
+  }
+
+  @Test
+  public void testRollingAverages() {
+    var summary = HeartRateAnalytics.analyze(workoutMorning(), HeartRateAnalytics.Settings.defaults());
+
+    Assertions.assertEquals(170.0, summary.highestRollingAverage().averageBpm());
+    Assertions.assertEquals(LocalTime.of(9, 0), summary.highestRollingAverage().start());
+    Assertions.assertEquals(60.0, summary.lowestRollingAverage().averageBpm());
+  }
+
+  @Test
+  public void testRecoveryAfterThePeak() {
+    var summary = HeartRateAnalytics.analyze(workoutMorning(), HeartRateAnalytics.Settings.defaults());
+
+    // the first reading at 170 bpm is the peak, the workout goes on for 9 more minutes
+    Assertions.assertEquals(LocalTime.of(9, 0), summary.recovery().peakTime());
+    Assertions.assertEquals(170, summary.recovery().bpmAfterTwoMinutes());
+  }
+
+  @Test
+  public void testOutsideRangeWindows() {
+    var settings = HeartRateAnalytics.Settings.defaults().withThresholds(55, 140);
+    var outside = HeartRateAnalytics.analyze(workoutMorning(), settings).outsideRange();
+
+    Assertions.assertEquals(1, outside.windows());
+    Assertions.assertEquals(11, outside.minutes());
+    var window = outside.longestWindows().getFirst();
+    Assertions.assertEquals(LocalTime.of(9, 0), window.start());
+    Assertions.assertEquals(LocalTime.of(9, 11), window.end());
+    Assertions.assertEquals(170, window.extremeBpm());
+  }
+
+  @Test
+  public void testGapsAreNotCounted() {
+    int[] seconds = {0, 60, 120, 7200, 7260};
+    short[] bpm = {50, 50, 50, 50, 50};
+    var summary = HeartRateAnalytics.analyze(new HeartRateSeries(DATE, null, List.of(), seconds, bpm),
+        HeartRateAnalytics.Settings.defaults());
+
+    // four minutes of readings plus the 5 minutes the last reading before the gap may stand for
+    Assertions.assertEquals(9, summary.minutesCovered());
+  }
+
+  @Test
+  public void testEmptySeries() {
+    var series = new HeartRateSeries(DATE, null, List.of(), new int[0], new short[0]);
+    Assertions.assertNull(HeartRateAnalytics.analyze(series, HeartRateAnalytics.Settings.defaults()));
+  }
+}
@@ -0,0 +1,112 @@
+package io.akka.health.fitbit;
+
+import io.akka.health.fitbit.model.HeartRateData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the record based heart rate parsing ({@link FitbitParser#parseHeartRateData(String)}) with the streaming
+ * parser into primitive arrays ({@link FitbitParser#parseHeartRateSeries(String)}), both followed by the scan of
+ * {@code isHeartRateOutsideSafeRange}.
+ * <p>
+ * The responses are synthetic days at one minute (1440 readings) and one second (86400 readings) resolution.
+ * The GC profiler reports the allocation per parse as {@code gc.alloc.rate.norm}.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.akka.health.fitbit.HeartRateParsingBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeartRateParsingBenchmark {
+
+  private static final int MIN_THRESHOLD = 45;
+  private static final int MAX_THRESHOLD = 160;
+
+  @Param({"60", "1"})
+  public int intervalSeconds;
+
+  private final FitbitParser parser = new FitbitParser();
+  private String json;
+
+  @Setup
+  public void setup() {
+    json = response(intervalSeconds);
+  }
+
+  @Benchmark
+  public int records() throws Exception {
+    var data = parser.parseHeartRateData(json);
+    int mostExtreme = 0;
+    int maxDeviation = 0;
+    for (HeartRateData.HeartRateDataPoint point : data.activitiesHeartIntraday().dataset()) {
+      int value = point.value();
+      int deviation = value < MIN_THRESHOLD ? MIN_THRESHOLD - value : value > MAX_THRESHOLD ? value - MAX_THRESHOLD : 0;
+      if (deviation > maxDeviation) {
+        maxDeviation = deviation;
+        mostExtreme = value;
+      }
+    }
+    return mostExtreme;
+  }
+
+  @Benchmark
+  public int streaming() throws Exception {
+    short[] bpm = parser.parseHeartRateSeries(json).bpm();
+    int mostExtreme = 0;
+    int maxDeviation = 0;
+    for (short reading : bpm) {
+      int value = reading;
+      int deviation = value < MIN_THRESHOLD ? MIN_THRESHOLD - value : value > MAX_THRESHOLD ? value - MAX_THRESHOLD : 0;
+      if (deviation > maxDeviation) {
+        maxDeviation = deviation;
+        mostExtreme = value;
+      }
+    }
+    return mostExtreme;
+  }
+
+  /**
+   * A heart rate response of one day with a reading every intervalSeconds, shaped like the Fitbit Web API response.
+   */
+  static String response(int intervalSeconds) {
+    var random = new Random(42);
+    var json = new StringBuilder("""
+        {"activities-heart":[{"dateTime":"2025-04-24","value":{"customHeartRateZones":[],"heartRateZones":[\
+        {"caloriesOut":1200.5,"max":97,"min":30,"minutes":1100,"name":"Out of Range"},\
+        {"caloriesOut":900.1,"max":135,"min":97,"minutes":240,"name":"Fat Burn"}],"restingHeartRate":60}}],\
+        "activities-heart-intraday":{"dataset":[""");
+    for (int second = 0; second < 86400; second += intervalSeconds) {
+      if (second > 0) json.append(',');
+      int bpm = 55 + random.nextInt(40) + (second / 3600 == 18 ? 70 : 0);
+      json.append("{\"time\":\"").append(LocalTime.ofSecondOfDay(second)).append(second % 60 == 0 ? ":00" : "")
+          .append("\",\"value\":").append(bpm).append('}');
+    }
+    return json.append("],\"datasetInterval\":").append(intervalSeconds).append(",\"datasetType\":\"").append(intervalSeconds == 1 ? "second" : "minute").append("\"}}").toString();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(HeartRateParsingBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+}
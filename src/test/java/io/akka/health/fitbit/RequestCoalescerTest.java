@@ -0,0 +1,74 @@
+package io.akka.health.fitbit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+
+  private final RequestCoalescer coalescer = new RequestCoalescer("test.coalesced");
+  private final AtomicInteger calls = new AtomicInteger();
+
+  private CompletableFuture<String> call(CompletableFuture<String> response) {
+    calls.incrementAndGet();
+    return response;
+  }
+
+  @Test
+  public void testConcurrentCallersShareOneCall() {
+    var response = new CompletableFuture<String>();
+    var first = coalescer.coalesce("sleep/2025-04-24", () -> call(response)).toCompletableFuture();
+    var second = coalescer.coalesce("sleep/2025-04-24", () -> call(response)).toCompletableFuture();
+    Assertions.assertEquals(1, coalescer.size());
+
+    response.complete("sleep");
+
+    Assertions.assertEquals("sleep", first.join());
+    Assertions.assertEquals("sleep", second.join());
+    Assertions.assertEquals(1, calls.get());
+    Assertions.assertEquals(0, coalescer.size());
+  }
+
+  @Test
+  public void testDifferentKeysAreNotShared() {
+    coalescer.coalesce("sleep/2025-04-24", () -> call(new CompletableFuture<>()));
+    coalescer.coalesce("sleep/2025-04-25", () -> call(new CompletableFuture<>()));
+
+    Assertions.assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testCompletedCallIsNotReused() {
+    coalescer.coalesce("sleep/2025-04-24", () -> call(CompletableFuture.completedFuture("first"))).toCompletableFuture().join();
+    var second = coalescer.coalesce("sleep/2025-04-24", () -> call(CompletableFuture.completedFuture("second")));
+
+    Assertions.assertEquals("second", second.toCompletableFuture().join());
+    Assertions.assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testFailureIsSharedAndNotKept() {
+    var response = new CompletableFuture<String>();
+    var first = coalescer.coalesce("sleep/2025-04-24", () -> call(response)).toCompletableFuture();
+    var second = coalescer.coalesce("sleep/2025-04-24", () -> call(response)).toCompletableFuture();
+    response.completeExceptionally(new IllegalStateException("Fitbit is down"));
+
+    Assertions.assertThrows(CompletionException.class, first::join);
+    Assertions.assertThrows(CompletionException.class, second::join);
+    Assertions.assertEquals(0, coalescer.size());
+  }
+
+  @Test
+  public void testCallerCannotCancelTheSharedCall() {
+    var response = new CompletableFuture<String>();
+    coalescer.coalesce("sleep/2025-04-24", () -> call(response)).toCompletableFuture().cancel(true);
+    var second = coalescer.coalesce("sleep/2025-04-24", () -> call(response)).toCompletableFuture();
+    response.complete("sleep");
+
+    Assertions.assertEquals("sleep", second.join());
+    Assertions.assertEquals(1, calls.get());
+  }
+}
@@ -0,0 +1,170 @@
+package io.akka.health.ingest;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.akka.health.common.OpenAiUtils;
+import io.akka.health.ingest.domain.MedicalRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares shortened text-embedding-3-small vectors against the full 1536 dimensions
+ * over a synthetic medical record corpus.
+ * <p>
+ * For every dimension it reports the raw vector storage of the index, the mean query latency of an exact
+ * vector search and two quality numbers:
+ * <ul>
+ *   <li>recall@k: overlap of the top k results with the top k results of the 1536 dimensional index</li>
+ *   <li>hit@k: how often the record a question was generated from is in the top k results</li>
+ * </ul>
+ * The corpus and the questions are embedded with the OpenAI API, so OPENAI_API_KEY must be set.
+ * The search runs against an in-memory store to measure the cost of the vector size itself
+ * and not the network round trip to MongoDB Atlas.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.akka.health.ingest.EmbeddingDimensionBenchmark}
+ */
+public class EmbeddingDimensionBenchmark {
+
+  private static final int[] DIMENSIONS = {256, 512, 1024, 1536};
+  private static final int CORPUS_SIZE = 500;
+  private static final int QUERIES = 50;
+  private static final int TOP_K = 10;
+  private static final int LATENCY_ROUNDS = 20;
+  // Atlas stores vectors as BSON doubles
+  private static final int BYTES_PER_COMPONENT = 8;
+
+  private static final String[] REASONS = {
+          "Severe lower back pain", "Persistent headache", "Chest tightness during exercise", "Shortness of breath",
+          "Knee pain after running", "Trouble sleeping", "Dizziness when standing up", "Skin rash on forearm",
+          "Sore throat and fever", "Annual check-up", "Stomach pain after meals", "Swollen ankle"};
+  private static final String[] DIAGNOSES = {
+          "Pinched nerve", "Migraine", "Exercise induced asthma", "Seasonal allergy", "Patellar tendinitis",
+          "Insomnia", "Orthostatic hypotension", "Contact dermatitis", "Strep throat", "No findings",
+          "Gastritis", "Sprained ankle"};
+  private static final String[] MEDICATIONS = {
+          "Ibuprofen and massage therapy", "Sumatriptan", "Salbutamol inhaler", "Cetirizine", "Physiotherapy",
+          "Melatonin", "Increased fluid intake", "Hydrocortisone cream", "Amoxicillin", "None",
+          "Omeprazole", "Rest, ice and compression"};
+  private static final String[] NOTES = {
+          "Has an office job. Sits for long hours.", "Runs three times a week.", "Drinks a lot of coffee.",
+          "Works night shifts.", "Recently started going to the gym.", "Smoker for ten years.",
+          "Travels frequently for work.", "Vegetarian diet.", "History of high blood pressure in the family.",
+          "Plays football on weekends."};
+
+  public static void main(String[] args) {
+    var random = new Random(42);
+    var corpus = syntheticCorpus(random);
+    var questions = new ArrayList<String>();
+    var sourceRecords = new ArrayList<Integer>();
+    for (int i = 0; i < QUERIES; i++) {
+      int recordIndex = random.nextInt(corpus.size());
+      var record = corpus.get(recordIndex);
+      questions.add("Why did I visit the doctor with " + record.reasonForVisit().toLowerCase() +
+              " and what was prescribed for " + record.diagnosis().toLowerCase() + "?");
+      sourceRecords.add(recordIndex);
+    }
+
+    var segments = corpus.stream().map(r -> TextSegment.from(r.toString())).toList();
+    var querySegments = questions.stream().map(TextSegment::from).toList();
+
+    Map<Integer, List<List<Integer>>> resultsByDimension = new HashMap<>();
+    System.out.printf("%-6s %14s %14s %10s %10s%n", "dims", "index bytes", "latency (us)", "recall@" + TOP_K, "hit@" + TOP_K);
+
+    // 1536 first, it is the reference for recall
+    var ordered = new int[DIMENSIONS.length];
+    ordered[0] = DIMENSIONS[DIMENSIONS.length - 1];
+    System.arraycopy(DIMENSIONS, 0, ordered, 1, DIMENSIONS.length - 1);
+
+    for (int dimensions : ordered) {
+      var model = OpenAiUtils.embeddingModel(dimensions);
+      List<Embedding> corpusEmbeddings = model.embedAll(segments).content();
+      List<Embedding> queryEmbeddings = model.embedAll(querySegments).content();
+
+      var store = new InMemoryEmbeddingStore<TextSegment>();
+      List<String> ids = store.addAll(corpusEmbeddings, segments);
+      Map<String, Integer> recordIndexById = new HashMap<>();
+      for (int i = 0; i < ids.size(); i++) {
+        recordIndexById.put(ids.get(i), i);
+      }
+
+      List<List<Integer>> results = new ArrayList<>();
+      for (Embedding query : queryEmbeddings) {
+        results.add(search(store, query, recordIndexById));
+      }
+      resultsByDimension.put(dimensions, results);
+
+      // warm up, then measure
+      for (Embedding query : queryEmbeddings) search(store, query, recordIndexById);
+      long start = System.nanoTime();
+      for (int round = 0; round < LATENCY_ROUNDS; round++) {
+        for (Embedding query : queryEmbeddings) search(store, query, recordIndexById);
+      }
+      double latencyMicros = (System.nanoTime() - start) / 1000.0 / (LATENCY_ROUNDS * queryEmbeddings.size());
+
+      long indexBytes = (long) corpus.size() * dimensions * BYTES_PER_COMPONENT;
+      double recall = recall(results, resultsByDimension.get(ordered[0]));
+      double hit = hitRate(results, sourceRecords);
+
+      System.out.printf("%-6d %14d %14.1f %10.3f %10.3f%n", dimensions, indexBytes, latencyMicros, recall, hit);
+    }
+  }
+
+  private static List<Integer> search(InMemoryEmbeddingStore<TextSegment> store, Embedding query, Map<String, Integer> recordIndexById) {
+    var request = EmbeddingSearchRequest.builder()
+            .queryEmbedding(query)
+            .maxResults(TOP_K)
+            .build();
+    return store.search(request).matches().stream()
+            .map(EmbeddingMatch::embeddingId)
+            .map(recordIndexById::get)
+            .toList();
+  }
+
+  private static double recall(List<List<Integer>> results, List<List<Integer>> reference) {
+    double sum = 0;
+    for (int i = 0; i < results.size(); i++) {
+      Set<Integer> expected = new HashSet<>(reference.get(i));
+      long found = results.get(i).stream().filter(expected::contains).count();
+      sum += (double) found / expected.size();
+    }
+    return sum / results.size();
+  }
+
+  private static double hitRate(List<List<Integer>> results, List<Integer> sourceRecords) {
+    int hits = 0;
+    for (int i = 0; i < results.size(); i++) {
+      if (results.get(i).contains(sourceRecords.get(i))) hits++;
+    }
+    return (double) hits / results.size();
+  }
+
+  private static List<MedicalRecord> syntheticCorpus(Random random) {
+    var records = new ArrayList<MedicalRecord>(CORPUS_SIZE);
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      int condition = random.nextInt(REASONS.length);
+      // mostly consistent records, with some noise so that neighbours are not trivially separable
+      int diagnosis = random.nextInt(5) == 0 ? random.nextInt(DIAGNOSES.length) : condition;
+      int medication = random.nextInt(5) == 0 ? random.nextInt(MEDICATIONS.length) : diagnosis;
+      String notes = String.join(" ", Arrays.asList(
+              NOTES[random.nextInt(NOTES.length)],
+              NOTES[random.nextInt(NOTES.length)]));
+      records.add(new MedicalRecord(
+              "patient-" + (i % 50),
+              REASONS[condition],
+              DIAGNOSES[diagnosis],
+              MEDICATIONS[medication],
+              notes));
+    }
+    return records;
+  }
+}
@@ -5,8 +5,10 @@ import akka.http.javadsl.model.HttpResponse;
 import akka.javasdk.http.HttpResponses;
 import akka.javasdk.http.StrictResponse;
 import com.mongodb.client.MongoClients;
+import io.akka.health.common.BlockingIo;
 import io.akka.health.common.KeyUtils;
 import io.akka.health.common.MongoDbUtils;
+import io.akka.health.common.OpenAiUtils;
 import io.akka.health.ingest.api.IngestionEndpoint;
 import io.akka.health.ingest.application.SensorEntity;
 import io.akka.health.ingest.application.SensorView;
@@ -152,8 +154,9 @@ public class IntegrationTest extends TestKitSupport {
             MongoClients.create(KeyUtils.readMongoDbUri()),
             "health",
             "medicalrecord",
-            "medicalrecord-ingest");
-    Index index = new Index(mongoDbconfig);
+            "medicalrecord-ingest",
+            OpenAiUtils.DEFAULT_EMBEDDING_DIMENSIONS);
+    Index index = new Index(mongoDbconfig, BlockingIo.executor(2));
 
     MedicalRecord medicalRecord = new MedicalRecord(
             "user-1",
@@ -0,0 +1,68 @@
+package io.akka.health.ingest.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+public class SensorStatsTest {
+
+  private static final Instant START = Instant.parse("2025-04-28T00:00:00Z");
+
+  private static SensorData reading(String description, String value, int minute) {
+    return new SensorData("user-1", "smartwatch", description, value, START.plus(minute, ChronoUnit.MINUTES));
+  }
+
+  private final List<SensorData> data = List.of(
+      reading("heart rate", "70 bpm", 0),
+      reading("Heart-Rate", "80 bpm", 10),
+      reading("heart rate", "90 bpm", 20),
+      reading("blood pressure", "120/80 mmHg", 30),
+      reading("heart rate", "100 bpm", 40),
+      new SensorData("user-1", "smartwatch", "heart rate", "60 bpm"));
+
+  @Test
+  public void aggregatesOneMeasurementInTheWindow() {
+    var aggregate = SensorStats.aggregate(data, "heart rate", START, START.plus(30, ChronoUnit.MINUTES));
+
+    Assertions.assertEquals(3, aggregate.count());
+    Assertions.assertEquals(70.0, aggregate.min());
+    Assertions.assertEquals(90.0, aggregate.max());
+    Assertions.assertEquals(80.0, aggregate.mean());
+    Assertions.assertEquals("90 bpm", aggregate.last());
+  }
+
+  @Test
+  public void downsamplesToAtMostMaxPoints() {
+    var series = SensorStats.series(data, "heart rate", START, START.plus(60, ChronoUnit.MINUTES), 2);
+
+    Assertions.assertEquals(List.of(
+        new SensorStats.Point(START, 80.0, 3),
+        new SensorStats.Point(START.plus(30, ChronoUnit.MINUTES), 100.0, 1)), series.points());
+  }
+
+  @Test
+  public void listsMeasurementsWithTimestamps() {
+    var measurements = SensorStats.measurements(data);
+
+    Assertions.assertEquals(2, measurements.size());
+    Assertions.assertEquals("blood pressure", measurements.get(0).description());
+    Assertions.assertEquals(4, measurements.get(1).readings());
+  }
+
+  @Test
+  public void picksTheLatestReadingsByTimestamp() {
+    var unordered = List.of(
+        reading("heart rate", "100 bpm", 40),
+        new SensorData("user-1", "smartwatch", "heart rate", "60 bpm"),
+        reading("heart rate", "70 bpm", 0),
+        reading("blood pressure", "120/80 mmHg", 30));
+
+    var recent = SensorStats.recent(unordered, 2);
+
+    Assertions.assertEquals(List.of("120/80 mmHg", "100 bpm"), recent.stream().map(SensorData::value).toList());
+    Assertions.assertEquals(4, SensorStats.recent(unordered, 5).size());
+  }
+}
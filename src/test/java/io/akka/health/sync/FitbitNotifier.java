@@ -0,0 +1,79 @@
+package io.akka.health.sync;
+
+import io.akka.health.common.KeyUtils;
+import io.akka.health.fitbit.FitbitSubscriptions;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Stands in for the Fitbit Subscriptions API against a locally running service: it goes through the verification
+ * handshake and posts signed notifications to {@code /fitbit/notifications}, like Fitbit does after a device sync.
+ * <p>
+ * The service and the notifier need the same {@code FITBIT_CLIENT_SECRET} (the notifications are signed with it)
+ * and {@code FITBIT_SUBSCRIBER_VERIFICATION_CODE}. Start the service with subscriptions enabled:
+ * <pre>
+ * mvn compile exec:java -Dhealth.sync.subscriptions.enabled=true
+ * </pre>
+ * Then run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.akka.health.sync.FitbitNotifier}
+ * <p>
+ * Settings (system properties): {@code target} (http://localhost:9000), {@code user} (user-1), {@code collections}
+ * (activities,sleep,body) and {@code date} (yesterday).
+ */
+public class FitbitNotifier {
+
+  public static void main(String[] args) throws Exception {
+    var target = System.getProperty("target", "http://localhost:9000") + "/fitbit/notifications";
+    var user = System.getProperty("user", "user-1");
+    var collections = System.getProperty("collections", "activities,sleep,body").split(",");
+    var date = System.getProperty("date", LocalDate.now().minusDays(1).toString());
+    var verificationCode = System.getenv("FITBIT_SUBSCRIBER_VERIFICATION_CODE");
+    var clientSecret = KeyUtils.readFitbitClientSecret();
+    var client = HttpClient.newHttpClient();
+
+    expect(204, "verification with the right code", client.send(
+        HttpRequest.newBuilder(URI.create(target + "?verify=" + verificationCode)).GET().build(),
+        HttpResponse.BodyHandlers.discarding()));
+    expect(404, "verification with a wrong code", client.send(
+        HttpRequest.newBuilder(URI.create(target + "?verify=wrong-" + verificationCode)).GET().build(),
+        HttpResponse.BodyHandlers.discarding()));
+
+    var body = notifications(user, date, collections).getBytes(StandardCharsets.UTF_8);
+    expect(404, "notifications with a wrong signature", client.send(notify(target, body, "wrong"),
+        HttpResponse.BodyHandlers.discarding()));
+    expect(204, "notifications", client.send(notify(target, body, FitbitSubscriptions.sign(body, clientSecret)),
+        HttpResponse.BodyHandlers.discarding()));
+
+    System.out.printf("Notified changes of %s on %s for user %s, see the log of the service%n",
+        String.join(", ", collections), date, user);
+  }
+
+  private static String notifications(String user, String date, String[] collections) {
+    return Arrays.stream(collections)
+        .map(collection -> """
+            {"collectionType":"%s","date":"%s","ownerId":"ABC123","ownerType":"user","subscriptionId":"%s"}"""
+            .formatted(collection.trim(), date, user))
+        .collect(Collectors.joining(",", "[", "]"));
+  }
+
+  private static HttpRequest notify(String target, byte[] body, String signature) {
+    return HttpRequest.newBuilder(URI.create(target))
+        .header("Content-Type", "application/json")
+        .header(FitbitSubscriptions.SIGNATURE_HEADER, signature)
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+        .build();
+  }
+
+  private static void expect(int status, String what, HttpResponse<?> response) {
+    if (response.statusCode() != status) {
+      throw new IllegalStateException("Expected " + status + " for the " + what + ", got " + response.statusCode());
+    }
+    System.out.printf("%-45s %d%n", what, response.statusCode());
+  }
+}
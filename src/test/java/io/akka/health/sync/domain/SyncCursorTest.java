@@ -0,0 +1,29 @@
+package io.akka.health.sync.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+public class SyncCursorTest {
+
+  private static final Instant NOW = Instant.parse("2025-04-28T10:00:00Z");
+
+  @Test
+  public void advancesFromEmpty() {
+    var cursor = SyncCursor.empty("user-1").advance("2025-04-26", NOW);
+
+    Assertions.assertEquals("2025-04-26", cursor.syncedThrough());
+    Assertions.assertEquals(NOW, cursor.lastRun());
+  }
+
+  @Test
+  public void neverMovesBack() {
+    var cursor = SyncCursor.empty("user-1")
+        .advance("2025-04-26", NOW)
+        .advance("2025-04-20", NOW.plusSeconds(60));
+
+    Assertions.assertEquals("2025-04-26", cursor.syncedThrough());
+    Assertions.assertEquals(NOW.plusSeconds(60), cursor.lastRun());
+  }
+}
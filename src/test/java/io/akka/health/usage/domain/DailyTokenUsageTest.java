@@ -0,0 +1,50 @@
+package io.akka.health.usage.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class DailyTokenUsageTest {
+
+  @Test
+  public void testTokensAreSummedByKind() {
+    var usage = DailyTokenUsage.empty("user-1", "2025-04-27")
+        .add(Map.of(
+            "prompt.question", 10L,
+            "tool.getStepsForDay", 40L,
+            "embedding.rag", 8L,
+            "completion", 25L), true)
+        .add(Map.of(
+            "prompt.summary", 300L,
+            "completion.summary", 60L), false);
+
+    Assertions.assertEquals(1, usage.requests());
+    Assertions.assertEquals(350, usage.promptTokens());
+    Assertions.assertEquals(85, usage.completionTokens());
+    Assertions.assertEquals(8, usage.embeddingTokens());
+  }
+
+  @Test
+  public void testCategoriesAreMergedLargestFirst() {
+    var usage = DailyTokenUsage.empty("user-1", "2025-04-27")
+        .add(Map.of("prompt.question", 10L, "completion", 25L), true)
+        .add(Map.of("prompt.question", 30L), true)
+        .add(Map.of("embedding.index", 500L), false);
+
+    Assertions.assertEquals(2, usage.requests());
+    Assertions.assertEquals(List.of(
+        new DailyTokenUsage.CategoryUsage("embedding.index", 500),
+        new DailyTokenUsage.CategoryUsage("prompt.question", 40),
+        new DailyTokenUsage.CategoryUsage("completion", 25)), usage.categories());
+  }
+
+  @Test
+  public void testAddingDoesNotChangeTheOriginal() {
+    var empty = DailyTokenUsage.empty("user-1", "2025-04-27");
+    empty.add(Map.of("completion", 25L), true);
+
+    Assertions.assertEquals(DailyTokenUsage.empty("user-1", "2025-04-27"), empty);
+  }
+}